@@ -108,6 +108,7 @@ import org.apache.activemq.store.PersistenceAdapter;
 import org.apache.activemq.store.PersistenceAdapterFactory;
 import org.apache.activemq.store.memory.MemoryPersistenceAdapter;
 import org.apache.activemq.thread.Scheduler;
+import org.apache.activemq.thread.TimingWheel;
 import org.apache.activemq.thread.TaskRunnerFactory;
 import org.apache.activemq.transport.TransportFactorySupport;
 import org.apache.activemq.transport.TransportServer;
@@ -144,6 +145,7 @@ public class BrokerService implements Service {
     public static final int DEFAULT_MAX_FILE_LENGTH = 1024 * 1024 * 32;
     public static final long DEFAULT_START_TIMEOUT = 600000L;
     public static final int MAX_SCHEDULER_REPEAT_ALLOWED = 1000;
+    public static final long EXPIRY_WHEEL_TICK = 100;
 
     private static final Logger LOG = LoggerFactory.getLogger(BrokerService.class);
 
@@ -243,6 +245,7 @@ public class BrokerService implements Service {
     private int maxSchedulerRepeatAllowed = MAX_SCHEDULER_REPEAT_ALLOWED;
     private File schedulerDirectoryFile;
     private Scheduler scheduler;
+    private TimingWheel expiryWheel;
     private ThreadPoolExecutor executor;
     private int schedulePeriodForDestinationPurge= 0;
     private int maxPurgedDestinationsPerSweep = 0;
@@ -849,6 +852,10 @@ public class BrokerService implements Service {
             this.scheduler.stop();
             this.scheduler = null;
         }
+        if (this.expiryWheel != null) {
+            this.expiryWheel.stop();
+            this.expiryWheel = null;
+        }
         if (services != null) {
             for (Service service : services) {
                 stopper.stop(service);
@@ -2892,6 +2899,22 @@ public class BrokerService implements Service {
         return this.scheduler;
     }
 
+    /**
+     * @return the timing wheel that expires the messages queues have paged in,
+     *         shared by all destinations of the broker
+     */
+    public synchronized TimingWheel getExpiryWheel() {
+        if (this.expiryWheel == null) {
+            this.expiryWheel = new TimingWheel("ActiveMQ Broker["+getBrokerName()+"] Expiry Wheel", EXPIRY_WHEEL_TICK);
+            try {
+                this.expiryWheel.start();
+            } catch (Exception e) {
+               LOG.error("Failed to start Expiry Wheel", e);
+            }
+        }
+        return this.expiryWheel;
+    }
+
     public Broker getRegionBroker() {
         return regionBroker;
     }
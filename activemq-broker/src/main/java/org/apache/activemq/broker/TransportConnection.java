@@ -98,6 +98,7 @@ import org.apache.activemq.transport.ResponseCorrelator;
 import org.apache.activemq.transport.TransmitCallback;
 import org.apache.activemq.transport.Transport;
 import org.apache.activemq.transport.TransportDisposedIOException;
+import org.apache.activemq.transport.tcp.TcpTransport;
 import org.apache.activemq.util.IntrospectionSupport;
 import org.apache.activemq.util.MarshallingSupport;
 import org.apache.activemq.util.NetworkBridgeUtils;
@@ -110,6 +111,8 @@ public class TransportConnection implements Connection, Task, CommandVisitor {
     private static final Logger LOG = LoggerFactory.getLogger(TransportConnection.class);
     private static final Logger TRANSPORTLOG = LoggerFactory.getLogger(TransportConnection.class.getName() + ".Transport");
     private static final Logger SERVICELOG = LoggerFactory.getLogger(TransportConnection.class.getName() + ".Service");
+    // most commands taken off the dispatch queue and written with one flush
+    private static final int DISPATCH_BATCH_SIZE = 100;
     // Keeps track of the broker and connector that created this connection.
     protected final Broker broker;
     protected final BrokerService brokerService;
@@ -1002,6 +1005,34 @@ public class TransportConnection implements Connection, Task, CommandVisitor {
         }
     }
 
+    /**
+     * Dispatches a batch taken off the dispatch queue, leaving all but the last
+     * write unflushed when the transport is TCP so the batch reaches the socket
+     * in as few writes as possible. When a dispatch fails the commands left go
+     * back on the queue, to be cleaned up with it when the connection stops.
+     */
+    private void processDispatch(LinkedList<Command> commands) throws IOException {
+        TcpTransport tcpTransport = commands.size() > 1 ? transport.narrow(TcpTransport.class) : null;
+        try {
+            while (!commands.isEmpty()) {
+                Command command = commands.removeFirst();
+                if (tcpTransport != null) {
+                    tcpTransport.deferFlush(!commands.isEmpty());
+                }
+                processDispatch(command);
+            }
+        } finally {
+            if (tcpTransport != null) {
+                tcpTransport.deferFlush(false);
+            }
+            if (!commands.isEmpty()) {
+                synchronized (dispatchQueue) {
+                    dispatchQueue.addAll(0, commands);
+                }
+            }
+        }
+    }
+
     @Override
     public boolean iterate() {
         try {
@@ -1018,14 +1049,16 @@ public class TransportConnection implements Connection, Task, CommandVisitor {
                 return false;
             }
             if (!dispatchStopped.get()) {
-                Command command = null;
+                LinkedList<Command> commands = new LinkedList<>();
                 synchronized (dispatchQueue) {
                     if (dispatchQueue.isEmpty()) {
                         return false;
                     }
-                    command = dispatchQueue.remove(0);
+                    while (!dispatchQueue.isEmpty() && commands.size() < DISPATCH_BATCH_SIZE) {
+                        commands.add(dispatchQueue.remove(0));
+                    }
                 }
-                processDispatch(command);
+                processDispatch(commands);
                 return true;
             }
             return false;
@@ -17,12 +17,14 @@
 package org.apache.activemq.broker.jmx;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.activemq.management.HistogramStatisticImpl;
 import org.apache.activemq.management.TimeStatisticImpl;
 import org.apache.activemq.store.PersistenceAdapter;
 import org.apache.activemq.store.PersistenceAdapterStatistics;
 
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.Callable;
 
@@ -95,6 +97,8 @@ public class PersistenceAdapterView implements PersistenceAdapterViewMBean {
                 Map<String, Object> result = new HashMap<String, Object>();
                 result.put("writeTime", getTimeStatisticAsMap(persistenceAdapterStatistics.getWriteTime()));
                 result.put("readTime", getTimeStatisticAsMap(persistenceAdapterStatistics.getReadTime()));
+                result.put("journalWriteBatchSize", getHistogramStatisticAsMap(persistenceAdapterStatistics.getJournalWriteBatchSize()));
+                result.put("journalSyncTime", getHistogramStatisticAsMap(persistenceAdapterStatistics.getJournalSyncTime()));
                 return mapper.writeValueAsString(result);
             } catch (IOException e) {
                 return e.toString();
@@ -119,6 +123,29 @@ public class PersistenceAdapterView implements PersistenceAdapterViewMBean {
         return result;
     }
 
+    private Map<String, Object> getHistogramStatisticAsMap(final HistogramStatisticImpl histogramStatistic) {
+        Map<String, Object> result = new HashMap<String, Object>();
+
+        result.put("count", histogramStatistic.getCount());
+        result.put("maxValue", histogramStatistic.getMaxValue());
+        result.put("averageValue", histogramStatistic.getAverageValue());
+        result.put("p50", histogramStatistic.getPercentile(0.50));
+        result.put("p99", histogramStatistic.getPercentile(0.99));
+
+        // keyed by the inclusive upper bound of each non empty bucket
+        Map<String, Long> buckets = new LinkedHashMap<String, Long>();
+        long[] counts = histogramStatistic.getBucketCounts();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                long bound = histogramStatistic.getBucketUpperBound(i);
+                buckets.put(bound == Long.MAX_VALUE ? "max" : Long.toString(bound), counts[i]);
+            }
+        }
+        result.put("buckets", buckets);
+
+        return result;
+    }
+
     public void setDataViewCallable(Callable<String> dataViewCallable) {
         this.dataViewCallable = dataViewCallable;
     }
@@ -46,6 +46,7 @@ import org.apache.activemq.command.MessagePull;
 import org.apache.activemq.command.ProducerInfo;
 import org.apache.activemq.command.RemoveSubscriptionInfo;
 import org.apache.activemq.command.Response;
+import org.apache.activemq.filter.ConcurrentDestinationMap;
 import org.apache.activemq.filter.DestinationFilter;
 import org.apache.activemq.filter.DestinationMap;
 import org.apache.activemq.security.SecurityContext;
@@ -62,7 +63,7 @@ public abstract class AbstractRegion implements Region {
     private static final Logger LOG = LoggerFactory.getLogger(AbstractRegion.class);
 
     protected final Map<ActiveMQDestination, Destination> destinations = new ConcurrentHashMap<ActiveMQDestination, Destination>();
-    protected final DestinationMap destinationMap = new DestinationMap();
+    protected final DestinationMap destinationMap = new ConcurrentDestinationMap();
     protected final Map<ConsumerId, Subscription> subscriptions = new ConcurrentHashMap<ConsumerId, Subscription>();
     protected final SystemUsage usageManager;
     protected final DestinationFactory destinationFactory;
@@ -315,19 +316,15 @@ public abstract class AbstractRegion implements Region {
     }
 
     /**
-     * Provide an exact or wildcard lookup of destinations in the region
+     * Provide an exact or wildcard lookup of destinations in the region, the
+     * matches are cached so the lookup takes no lock.
      *
-     * @return a set of matching destination objects.
+     * @return a set of matching destination objects, which cannot be modified.
      */
     @Override
     @SuppressWarnings("unchecked")
     public Set<Destination> getDestinations(ActiveMQDestination destination) {
-        destinationsLock.readLock().lock();
-        try{
-            return destinationMap.unsynchronizedGet(destination);
-        } finally {
-            destinationsLock.readLock().unlock();
-        }
+        return destinationMap.get(destination);
     }
 
     @Override
@@ -0,0 +1,300 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.activemq.command.ConsumerId;
+import org.apache.activemq.command.Message;
+import org.apache.activemq.usage.MemoryUsage;
+import org.apache.activemq.util.ByteSequence;
+import org.apache.activemq.wireformat.WireFormat;
+
+/**
+ * A paged in queue message that keeps the headers dispatch needs in fields of
+ * its own and the message itself only in marshalled form, on or off the heap.
+ * The message is unmarshalled when something asks for it, a selector or a
+ * dispatch, and dropped again by {@link #compact()} once no subscription
+ * holds it.
+ *
+ * The reference takes over the only reference count of the message it is
+ * created from, which releases the charge of that message, and charges the
+ * memory usage of the destination with the size of the marshalled form while
+ * compact, and with the size of the message while it is unmarshalled.
+ */
+public class CompactMessageReference extends IndirectMessageReference {
+
+    private final WireFormat wireFormat;
+    private final Message.MessageDestination regionDestination;
+    private final MemoryUsage memoryUsage;
+    private final String groupId;
+    private final int groupSequence;
+    private final ConsumerId targetConsumerId;
+    private final long expiration;
+    private final int size;
+    private final byte priority;
+    private final boolean persistent;
+    private final boolean advisory;
+    private final ByteBuffer form;
+    private final AtomicBoolean processAsExpired = new AtomicBoolean(false);
+
+    // guarded by this
+    private Message message;
+    private int redeliveryCounter;
+    private int referenceCount;
+    private int charged;
+
+    /**
+     * @param message a message with a single reference count, which the
+     *        reference takes over
+     * @param wireFormat marshals and unmarshals the message, shared by the
+     *        references of a destination
+     * @param offHeap to keep the marshalled form in a direct buffer
+     */
+    public CompactMessageReference(Message message, WireFormat wireFormat, boolean offHeap) throws IOException {
+        super(message.getMessageId().copy());
+        this.wireFormat = wireFormat;
+        this.regionDestination = message.getRegionDestination();
+        this.memoryUsage = message.getMemoryUsage();
+        this.groupId = message.getGroupID();
+        this.groupSequence = message.getGroupSequence();
+        this.targetConsumerId = message.getTargetConsumerId();
+        this.expiration = message.getExpiration();
+        this.size = message.getSize();
+        this.priority = message.getPriority();
+        this.persistent = message.isPersistent();
+        this.advisory = message.isAdvisory();
+        this.redeliveryCounter = message.getRedeliveryCounter();
+
+        // the wire format reuses its buffer, so the form is always copied
+        ByteSequence sequence = wireFormat.marshal(message);
+        ByteBuffer buffer = offHeap ? ByteBuffer.allocateDirect(sequence.getLength()) : ByteBuffer.allocate(sequence.getLength());
+        buffer.put(sequence.getData(), sequence.getOffset(), sequence.getLength());
+        buffer.flip();
+        this.form = buffer;
+
+        incrementReferenceCount();
+        message.decrementReferenceCount();
+    }
+
+    @Override
+    public Message getMessageHardRef() {
+        return getMessage();
+    }
+
+    @Override
+    public Message getMessage() {
+        long delta;
+        Message answer;
+        synchronized (this) {
+            if (message != null) {
+                return message;
+            }
+            try {
+                answer = inflate();
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to unmarshal message " + getMessageId(), e);
+            }
+            message = answer;
+            delta = recharge();
+        }
+        adjustUsage(delta);
+        return answer;
+    }
+
+    /**
+     * Drops the unmarshalled message unless a subscription holds it.
+     *
+     * @return true if the reference is compact
+     */
+    public boolean compact() {
+        long delta;
+        synchronized (this) {
+            if (message == null) {
+                return true;
+            }
+            if (getLockOwner() != null || isDropped()) {
+                return false;
+            }
+            redeliveryCounter = message.getRedeliveryCounter();
+            message = null;
+            delta = recharge();
+        }
+        adjustUsage(delta);
+        return true;
+    }
+
+    public synchronized boolean isCompact() {
+        return message == null;
+    }
+
+    /**
+     * @return the size of the marshalled form
+     */
+    public int getCompactSize() {
+        return form.capacity();
+    }
+
+    public byte getPriority() {
+        return priority;
+    }
+
+    @Override
+    public synchronized int getReferenceCount() {
+        return referenceCount;
+    }
+
+    @Override
+    public int incrementReferenceCount() {
+        int rc;
+        long delta = 0;
+        synchronized (this) {
+            rc = ++referenceCount;
+            if (rc == 1) {
+                delta = recharge();
+            }
+        }
+        adjustUsage(delta);
+        return rc;
+    }
+
+    @Override
+    public int decrementReferenceCount() {
+        int rc;
+        long delta = 0;
+        synchronized (this) {
+            rc = --referenceCount;
+            if (rc == 0) {
+                delta = recharge();
+            }
+        }
+        adjustUsage(delta);
+        return rc;
+    }
+
+    @Override
+    public synchronized void incrementRedeliveryCounter() {
+        redeliveryCounter++;
+        if (message != null) {
+            message.incrementRedeliveryCounter();
+        }
+    }
+
+    @Override
+    public synchronized int getRedeliveryCounter() {
+        return message != null ? message.getRedeliveryCounter() : redeliveryCounter;
+    }
+
+    @Override
+    public Message.MessageDestination getRegionDestination() {
+        return regionDestination;
+    }
+
+    @Override
+    public boolean isPersistent() {
+        return persistent;
+    }
+
+    @Override
+    public String getGroupID() {
+        return groupId;
+    }
+
+    @Override
+    public int getGroupSequence() {
+        return groupSequence;
+    }
+
+    @Override
+    public ConsumerId getTargetConsumerId() {
+        return targetConsumerId;
+    }
+
+    @Override
+    public long getExpiration() {
+        return expiration;
+    }
+
+    @Override
+    public boolean isExpired() {
+        return expiration > 0 && System.currentTimeMillis() > expiration;
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public boolean isAdvisory() {
+        return advisory;
+    }
+
+    @Override
+    public boolean canProcessAsExpired() {
+        return processAsExpired.compareAndSet(false, true);
+    }
+
+    // called with the lock held
+    private Message inflate() throws IOException {
+        ByteSequence sequence;
+        if (form.hasArray()) {
+            sequence = new ByteSequence(form.array(), form.arrayOffset(), form.capacity());
+        } else {
+            byte[] data = new byte[form.capacity()];
+            form.duplicate().get(data);
+            sequence = new ByteSequence(data);
+        }
+        Object command = wireFormat.unmarshal(sequence);
+        if (!(command instanceof Message)) {
+            throw new IOException("Not a message: " + command);
+        }
+        Message answer = (Message) command;
+        if (regionDestination != null) {
+            answer.setRegionDestination(regionDestination);
+        }
+        // the usage is accounted for here, not by the message
+        answer.setMemoryUsage(null);
+        answer.setRedeliveryCounter(redeliveryCounter);
+        return answer;
+    }
+
+    /**
+     * Called with the lock held, works out what the reference should now be
+     * charged with.
+     *
+     * @return the change to apply to the memory usage
+     */
+    private long recharge() {
+        int target = referenceCount > 0 ? (message != null ? size : form.capacity()) : 0;
+        long delta = target - charged;
+        charged = target;
+        return delta;
+    }
+
+    private void adjustUsage(long delta) {
+        if (memoryUsage != null) {
+            if (delta > 0) {
+                memoryUsage.increaseUsage(delta);
+            } else if (delta < 0) {
+                memoryUsage.decreaseUsage(-delta);
+            }
+        }
+    }
+}
@@ -19,6 +19,7 @@ package org.apache.activemq.broker.region;
 import org.apache.activemq.command.ConsumerId;
 import org.apache.activemq.command.Message;
 import org.apache.activemq.command.MessageId;
+import org.apache.activemq.thread.TimingWheel;
 
 /**
  * Keeps track of a message that is flowing through the Broker. This object may
@@ -38,6 +39,8 @@ public class IndirectMessageReference implements QueueMessageReference {
     /** Direct reference to the message */
     private final Message message;
     private final MessageId messageId;
+    /** The expiry of the message on the broker's expiry wheel, if any */
+    private TimingWheel.Timeout expiryTimeout;
 
     /**
      * @param message
@@ -50,6 +53,15 @@ public class IndirectMessageReference implements QueueMessageReference {
         message.getGroupSequence();
     }
 
+    /**
+     * For subclasses that keep the message in another form and override the
+     * methods that read from it.
+     */
+    protected IndirectMessageReference(final MessageId messageId) {
+        this.message = null;
+        this.messageId = messageId;
+    }
+
     @Override
     public Message getMessageHardRef() {
         return message;
@@ -77,7 +89,7 @@ public class IndirectMessageReference implements QueueMessageReference {
 
     @Override
     public String toString() {
-        return "Message " + message.getMessageId() + " dropped=" + dropped + " acked=" + acked + " locked=" + (lockOwner != null);
+        return "Message " + messageId + " dropped=" + dropped + " acked=" + acked + " locked=" + (lockOwner != null);
     }
 
     @Override
@@ -94,7 +106,7 @@ public class IndirectMessageReference implements QueueMessageReference {
     public synchronized void drop() {
         dropped = true;
         lockOwner = null;
-        message.decrementReferenceCount();
+        decrementReferenceCount();
     }
 
     /**
@@ -209,4 +221,12 @@ public class IndirectMessageReference implements QueueMessageReference {
     public boolean canProcessAsExpired() {
         return message.canProcessAsExpired();
     }
+
+    TimingWheel.Timeout getExpiryTimeout() {
+        return expiryTimeout;
+    }
+
+    void setExpiryTimeout(TimingWheel.Timeout expiryTimeout) {
+        this.expiryTimeout = expiryTimeout;
+    }
 }
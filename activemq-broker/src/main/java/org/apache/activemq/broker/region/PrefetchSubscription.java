@@ -18,6 +18,7 @@ package org.apache.activemq.broker.region;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -30,6 +31,7 @@ import org.apache.activemq.broker.Broker;
 import org.apache.activemq.broker.ConnectionContext;
 import org.apache.activemq.broker.region.cursors.PendingMessageCursor;
 import org.apache.activemq.broker.region.cursors.VMPendingMessageCursor;
+import org.apache.activemq.broker.region.policy.AdaptivePrefetchPolicy;
 import org.apache.activemq.command.ConsumerControl;
 import org.apache.activemq.command.ConsumerInfo;
 import org.apache.activemq.command.Message;
@@ -62,6 +64,9 @@ public abstract class PrefetchSubscription extends AbstractSubscription {
     protected final Object pendingLock = new Object();
     protected final Object dispatchLock = new Object();
     private final CountDownLatch okForAckAsDispatchDone = new CountDownLatch(1);
+    private volatile AdaptivePrefetchPolicy.Window prefetchWindow;
+    // the window the consumer was last told about, 0 for its own prefetch
+    private int announcedPrefetchWindow;
 
     public PrefetchSubscription(Broker broker, SystemUsage usageManager, ConnectionContext context, ConsumerInfo info, PendingMessageCursor cursor) throws JMSException {
         super(broker,context, info);
@@ -240,6 +245,7 @@ public abstract class PrefetchSubscription extends AbstractSubscription {
                     dispatched.remove(node);
                     decrementPrefetchCounter(node);
                 }
+                adaptPrefetchWindow(removeList);
                 // this only happens after a reconnect - get an ack which is not
                 // valid
                 if (!callDispatchMatched) {
@@ -257,6 +263,7 @@ public abstract class PrefetchSubscription extends AbstractSubscription {
                             dispatched.remove(node);
                             decrementPrefetchCounter(node);
                             contractPrefetchExtension(1);
+                            adaptPrefetchWindow(Collections.singletonList(node));
                         } else {
                             registerRemoveSync(context, node);
                             expandPrefetchExtension(1);
@@ -495,7 +502,7 @@ public abstract class PrefetchSubscription extends AbstractSubscription {
      */
     @Override
     public boolean isFull() {
-        return getPrefetchSize() == 0 ? prefetchExtension.get() == 0 : dispatched.size() - prefetchExtension.get() >= info.getPrefetchSize();
+        return getPrefetchSize() == 0 ? prefetchExtension.get() == 0 : dispatched.size() - prefetchExtension.get() >= getPrefetchWindow();
     }
 
     /**
@@ -503,7 +510,7 @@ public abstract class PrefetchSubscription extends AbstractSubscription {
      */
     @Override
     public boolean isLowWaterMark() {
-        return (dispatched.size() - prefetchExtension.get()) <= (info.getPrefetchSize() * .4);
+        return (dispatched.size() - prefetchExtension.get()) <= (getPrefetchWindow() * .4);
     }
 
     /**
@@ -511,12 +518,55 @@ public abstract class PrefetchSubscription extends AbstractSubscription {
      */
     @Override
     public boolean isHighWaterMark() {
-        return (dispatched.size() - prefetchExtension.get()) >= (info.getPrefetchSize() * .9);
+        return (dispatched.size() - prefetchExtension.get()) >= (getPrefetchWindow() * .9);
     }
 
     @Override
     public int countBeforeFull() {
-        return getPrefetchSize() == 0 ? prefetchExtension.get() : info.getPrefetchSize() + prefetchExtension.get() - dispatched.size();
+        return getPrefetchSize() == 0 ? prefetchExtension.get() : getPrefetchWindow() + prefetchExtension.get() - dispatched.size();
+    }
+
+    /**
+     * @return the number of messages that may be in flight to the consumer,
+     *         its prefetch unless an adaptive prefetch policy sizes it
+     */
+    public int getPrefetchWindow() {
+        AdaptivePrefetchPolicy.Window window = prefetchWindow;
+        int prefetchSize = info.getPrefetchSize();
+        return window == null || prefetchSize == 0 ? prefetchSize : window.getSize(prefetchSize);
+    }
+
+    public void setAdaptivePrefetchPolicy(AdaptivePrefetchPolicy adaptivePrefetchPolicy) {
+        this.prefetchWindow = adaptivePrefetchPolicy != null ? adaptivePrefetchPolicy.createWindow() : null;
+    }
+
+    // called with dispatchLock held
+    private void adaptPrefetchWindow(List<MessageReference> acked) {
+        AdaptivePrefetchPolicy.Window window = prefetchWindow;
+        if (window == null || acked.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long inflightTime = 0;
+        int timed = 0;
+        for (MessageReference node : acked) {
+            Message message = node.getMessage();
+            if (message != null && message.getBrokerOutTime() > 0) {
+                inflightTime += Math.max(0, now - message.getBrokerOutTime());
+                timed++;
+            }
+        }
+        window.acknowledged(acked.size(), inflightTime, timed, dispatched.size(), now);
+
+        // the consumer sizes its delivered acks from its prefetch, so it has
+        // to be told the window or it may wait on messages the broker holds
+        // back until it acks the ones it has
+        int size = getPrefetchWindow();
+        int announced = announcedPrefetchWindow == 0 ? info.getPrefetchSize() : announcedPrefetchWindow;
+        if (size != announced) {
+            announcedPrefetchWindow = size;
+            updateConsumerPrefetch(size);
+        }
     }
 
     @Override
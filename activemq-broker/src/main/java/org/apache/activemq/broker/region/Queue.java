@@ -21,10 +21,11 @@ import static org.apache.activemq.transaction.Transaction.IN_USE_STATE;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -83,6 +84,7 @@ import org.apache.activemq.command.Response;
 import org.apache.activemq.filter.BooleanExpression;
 import org.apache.activemq.filter.MessageEvaluationContext;
 import org.apache.activemq.filter.NonCachedMessageEvaluationContext;
+import org.apache.activemq.openwire.OpenWireFormat;
 import org.apache.activemq.selector.SelectorParser;
 import org.apache.activemq.state.ProducerState;
 import org.apache.activemq.store.IndexListener;
@@ -92,11 +94,13 @@ import org.apache.activemq.store.MessageStore;
 import org.apache.activemq.thread.Task;
 import org.apache.activemq.thread.TaskRunner;
 import org.apache.activemq.thread.TaskRunnerFactory;
+import org.apache.activemq.thread.TimingWheel;
 import org.apache.activemq.transaction.Synchronization;
 import org.apache.activemq.usage.Usage;
 import org.apache.activemq.usage.UsageListener;
 import org.apache.activemq.util.BrokerSupport;
 import org.apache.activemq.util.ThreadPoolUtils;
+import org.apache.activemq.wireformat.WireFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
@@ -111,6 +115,9 @@ public class Queue extends BaseDestination implements Task, UsageListener, Index
     protected TaskRunner taskRunner;
     private final ReentrantReadWriteLock consumersLock = new ReentrantReadWriteLock();
     protected final List<Subscription> consumers = new ArrayList<Subscription>(50);
+    // the consumers that messages are dispatched to, rebuilt when the consumers change
+    private ConsumerRing consumerRing = new ConsumerRing(Collections.<Subscription>emptyList(), null);
+    private boolean consumerRingStale;
     private final ReentrantReadWriteLock messagesLock = new ReentrantReadWriteLock();
     protected PendingMessageCursor messages;
     private final ReentrantReadWriteLock pagedInMessagesLock = new ReentrantReadWriteLock();
@@ -136,6 +143,14 @@ public class Queue extends BaseDestination implements Task, UsageListener, Index
     private CountDownLatch consumersBeforeStartsLatch;
     private final AtomicLong pendingWakeups = new AtomicLong();
     private boolean allConsumersExclusiveByDefault = false;
+    private int dispatchWorkers = 0;
+    private DispatchWorker[] dispatchWorkerTasks;
+    private int nextDispatchWorker;
+    // guarded by pagedInPendingDispatchLock
+    private final Map<Subscription, SubscriptionHandoffs> subscriptionHandoffs = new HashMap<Subscription, SubscriptionHandoffs>();
+    // handed off messages a worker could not add, picked up again on the next dispatch
+    private final ConcurrentLinkedQueue<MessageReference> returnedHandoffs = new ConcurrentLinkedQueue<MessageReference>();
+    private final AtomicBoolean handoffsBackedUp = new AtomicBoolean();
 
     private volatile boolean resetNeeded;
 
@@ -163,6 +178,29 @@ public class Queue extends BaseDestination implements Task, UsageListener, Index
         }
     };
 
+    private boolean compactPagedInMessages = false;
+    private boolean compactMessagesOffHeap = false;
+    // marshals the messages of compact references, see setCompactPagedInMessages
+    private final WireFormat compactWireFormat = new OpenWireFormat();
+
+    private boolean useExpiryWheel = false;
+    private TimingWheel expiryWheel;
+    // paged in messages whose expiry fired on the wheel
+    private final ConcurrentLinkedQueue<QueueMessageReference> wheelExpired = new ConcurrentLinkedQueue<QueueMessageReference>();
+    private final AtomicBoolean wheelExpiryInProgress = new AtomicBoolean(false);
+    private final Runnable wheelExpiryWork = new Runnable() {
+        @Override
+        public void run() {
+            do {
+                QueueMessageReference ref;
+                while ((ref = wheelExpired.poll()) != null) {
+                    expireFromWheel(ref);
+                }
+                wheelExpiryInProgress.set(false);
+            } while (!wheelExpired.isEmpty() && wheelExpiryInProgress.compareAndSet(false, true));
+        }
+    };
+
     private final Object iteratingMutex = new Object();
 
     // gate on enabling cursor cache to ensure no outstanding sync
@@ -394,6 +432,12 @@ public class Queue extends BaseDestination implements Task, UsageListener, Index
         }
 
         this.taskRunner = taskFactory.createTaskRunner(this, "Queue:" + destination.getPhysicalName());
+        if (dispatchWorkers > 0) {
+            dispatchWorkerTasks = new DispatchWorker[dispatchWorkers];
+            for (int i = 0; i < dispatchWorkers; i++) {
+                dispatchWorkerTasks[i] = new DispatchWorker("Queue:" + destination.getPhysicalName() + ":Dispatch-" + i);
+            }
+        }
 
         super.initialize();
         if (store != null) {
@@ -456,6 +500,7 @@ public class Queue extends BaseDestination implements Task, UsageListener, Index
                 }
 
                 addToConsumerList(sub);
+                dispatchSelector.addSubscription(sub);
                 if (sub.getConsumerInfo().isExclusive() || isAllConsumersExclusiveByDefault()) {
                     Subscription exclusiveConsumer = dispatchSelector.getExclusiveConsumer();
                     if (exclusiveConsumer == null) {
@@ -495,6 +540,20 @@ public class Queue extends BaseDestination implements Task, UsageListener, Index
     public void removeSubscription(ConnectionContext context, Subscription sub, long lastDeliveredSequenceId)
             throws Exception {
         super.removeSubscription(context, sub, lastDeliveredSequenceId);
+        // stop the dispatch workers adding to the sub before collecting what it holds, waiting
+        // for an add in progress without the dispatch lock as that add may need it
+        List<MessageReference> undispatched = null;
+        if (dispatchWorkerTasks != null) {
+            SubscriptionHandoffs handoffs;
+            pagedInPendingDispatchLock.writeLock().lock();
+            try {
+                handoffs = getSubscriptionHandoffs(sub);
+                handoffs.close();
+            } finally {
+                pagedInPendingDispatchLock.writeLock().unlock();
+            }
+            undispatched = handoffs.cancel();
+        }
         // synchronize with dispatch method so that no new messages are sent
         // while removing up a subscription.
         pagedInPendingDispatchLock.writeLock().lock();
@@ -511,6 +570,7 @@ public class Queue extends BaseDestination implements Task, UsageListener, Index
             consumersLock.writeLock().lock();
             try {
                 removeFromConsumerList(sub);
+                dispatchSelector.removeSubscription(sub);
                 if (sub.getConsumerInfo().isExclusive()) {
                     Subscription exclusiveConsumer = dispatchSelector.getExclusiveConsumer();
                     if (exclusiveConsumer == sub) {
@@ -539,11 +599,18 @@ public class Queue extends BaseDestination implements Task, UsageListener, Index
                 ConsumerId consumerId = sub.getConsumerInfo().getConsumerId();
                 getMessageGroupOwners().removeConsumer(consumerId);
 
+                subscriptionHandoffs.remove(sub);
+
                 // redeliver inflight messages
 
                 boolean markAsRedelivered = false;
                 MessageReference lastDeliveredRef = null;
                 List<MessageReference> unAckedMessages = sub.remove(context, this);
+                if (undispatched != null && !undispatched.isEmpty()) {
+                    // handed off after everything the sub already holds
+                    unAckedMessages = new ArrayList<MessageReference>(unAckedMessages);
+                    unAckedMessages.addAll(undispatched);
+                }
 
                 // locate last redelivered in unconsumed list (list in delivery rather than seq order)
                 if (lastDeliveredSequenceId > RemoveInfo.LAST_DELIVERED_UNSET) {
@@ -1024,6 +1091,9 @@ public class Queue extends BaseDestination implements Task, UsageListener, Index
             }
             systemUsage.getMemoryUsage().addUsageListener(this);
             messages.start();
+            if (isUseExpiryWheel()) {
+                expiryWheel = brokerService.getExpiryWheel();
+            }
             if (getExpireMessagesPeriod() > 0) {
                 scheduler.executePeriodically(expireMessagesTask, getExpireMessagesPeriod());
             }
@@ -1037,6 +1107,11 @@ public class Queue extends BaseDestination implements Task, UsageListener, Index
             if (taskRunner != null) {
                 taskRunner.shutdown();
             }
+            if (dispatchWorkerTasks != null) {
+                for (DispatchWorker worker : dispatchWorkerTasks) {
+                    worker.shutdown();
+                }
+            }
             if (this.executor != null) {
                 ThreadPoolUtils.shutdownNow(executor);
                 executor = null;
@@ -1053,6 +1128,7 @@ public class Queue extends BaseDestination implements Task, UsageListener, Index
             }
 
             for (MessageReference messageReference : pagedInMessages.values()) {
+                cancelExpiry(messageReference);
                 messageReference.decrementReferenceCount();
             }
             pagedInMessages.clear();
@@ -1133,6 +1209,76 @@ public class Queue extends BaseDestination implements Task, UsageListener, Index
         this.optimizedDispatch = optimizedDispatch;
     }
 
+    public boolean isConcurrentDispatchPendingList() {
+        return dispatchPendingList.isConcurrent();
+    }
+
+    /**
+     * Keeps the messages waiting for dispatch in lists that need no lock, so
+     * acks and the page in size check do not wait for a dispatch in progress.
+     * Has no effect with prioritized messages.
+     */
+    public void setConcurrentDispatchPendingList(boolean concurrentDispatchPendingList) {
+        dispatchPendingList.setConcurrent(concurrentDispatchPendingList);
+    }
+
+    public boolean isCompactPagedInMessages() {
+        return compactPagedInMessages;
+    }
+
+    /**
+     * Keeps the messages the queue pages in as {@link CompactMessageReference}s,
+     * which hold the headers dispatch looks at and the message in marshalled
+     * form, and charge the memory usage with the size of that form. A message
+     * is unmarshalled when a selector or a dispatch needs it, and marshalled
+     * form is all that is kept again once it goes back to waiting for dispatch.
+     */
+    public void setCompactPagedInMessages(boolean compactPagedInMessages) {
+        this.compactPagedInMessages = compactPagedInMessages;
+    }
+
+    public boolean isCompactMessagesOffHeap() {
+        return compactMessagesOffHeap;
+    }
+
+    /**
+     * Keeps the marshalled form of compact paged in messages in direct buffers,
+     * off the heap.
+     */
+    public void setCompactMessagesOffHeap(boolean compactMessagesOffHeap) {
+        this.compactMessagesOffHeap = compactMessagesOffHeap;
+    }
+
+    public boolean isUseExpiryWheel() {
+        return useExpiryWheel;
+    }
+
+    /**
+     * Expires the messages the queue has paged in from the broker's expiry
+     * wheel when their time to live runs out, rather than waiting for the
+     * periodic expiry scan, which still runs as a fallback for messages that
+     * are not paged in. Only has an effect when set before the queue starts.
+     */
+    public void setUseExpiryWheel(boolean useExpiryWheel) {
+        this.useExpiryWheel = useExpiryWheel;
+    }
+
+    public int getDispatchWorkers() {
+        return dispatchWorkers;
+    }
+
+    /**
+     * Sets the number of tasks that add messages to the subscriptions once the
+     * queue task has picked a subscription for them, so the queue task can go on
+     * paging in and selecting while they run. Each subscription, and so each
+     * message group it owns, is served by a single worker which keeps the order
+     * within a group. 0, the default, dispatches on the queue task itself. Only
+     * has an effect when set before the queue is initialized.
+     */
+    public void setDispatchWorkers(int dispatchWorkers) {
+        this.dispatchWorkers = dispatchWorkers;
+    }
+
     public int getTimeBeforeDispatchStarts() {
         return timeBeforeDispatchStarts;
     }
@@ -1168,6 +1314,19 @@ public class Queue extends BaseDestination implements Task, UsageListener, Index
         return result;
     }
 
+    private QueueMessageReference createPagedInMessageReference(Message message) {
+        // only worth it when the reference takes over the last count of the message, a store
+        // that keeps messages in memory holds one of its own and would keep the message charged
+        if (compactPagedInMessages && message.getReferenceCount() == 1) {
+            try {
+                return new CompactMessageReference(message, compactWireFormat, compactMessagesOffHeap);
+            } catch (IOException e) {
+                LOG.warn("{} failed to compact message {}, keeping it as is", this, message.getMessageId(), e);
+            }
+        }
+        return createMessageReference(message);
+    }
+
     @Override
     public Message[] browse() {
         List<Message> browseList = new ArrayList<Message>();
@@ -1706,11 +1865,15 @@ public class Queue extends BaseDestination implements Task, UsageListener, Index
                 messagesLock.readLock().unlock();
             }
 
-            pagedInPendingDispatchLock.readLock().lock();
-            try {
+            if (dispatchPendingList.isConcurrent()) {
                 pageInMoreMessages |= !dispatchPendingList.isEmpty();
-            } finally {
-                pagedInPendingDispatchLock.readLock().unlock();
+            } else {
+                pagedInPendingDispatchLock.readLock().lock();
+                try {
+                    pageInMoreMessages |= !dispatchPendingList.isEmpty();
+                } finally {
+                    pagedInPendingDispatchLock.readLock().unlock();
+                }
             }
 
             boolean hasBrowsers = !browserSubscriptions.isEmpty();
@@ -1832,6 +1995,11 @@ public class Queue extends BaseDestination implements Task, UsageListener, Index
 
     protected void removeMessage(ConnectionContext c, QueueMessageReference r) throws IOException {
         removeMessage(c, null, r);
+        if (dispatchPendingList.isConcurrent()) {
+            // no need to wait for a dispatch in progress, it skips acked messages
+            dispatchPendingList.remove(r);
+            return;
+        }
         pagedInPendingDispatchLock.writeLock().lock();
         try {
             dispatchPendingList.remove(r);
@@ -1899,12 +2067,58 @@ public class Queue extends BaseDestination implements Task, UsageListener, Index
             pagedInMessagesLock.writeLock().lock();
             try {
                 pagedInMessages.remove(reference);
+                cancelExpiry(reference);
             } finally {
                 pagedInMessagesLock.writeLock().unlock();
             }
         }
     }
 
+    /**
+     * Puts the expiry of a message that was paged in on the broker's expiry
+     * wheel. Call with the pagedInMessagesLock write lock held.
+     */
+    private void scheduleExpiry(QueueMessageReference ref) {
+        if (expiryWheel != null && ref.getExpiration() > 0 && ref instanceof IndirectMessageReference) {
+            final IndirectMessageReference reference = (IndirectMessageReference) ref;
+            reference.setExpiryTimeout(expiryWheel.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    wheelExpired.add(reference);
+                    if (wheelExpiryInProgress.compareAndSet(false, true)) {
+                        taskFactory.execute(wheelExpiryWork);
+                    }
+                }
+            }, ref.getExpiration()));
+        }
+    }
+
+    /**
+     * Call with the pagedInMessagesLock write lock held, or once the queue is
+     * stopped.
+     */
+    private void cancelExpiry(MessageReference ref) {
+        if (ref instanceof IndirectMessageReference) {
+            IndirectMessageReference reference = (IndirectMessageReference) ref;
+            TimingWheel.Timeout timeout = reference.getExpiryTimeout();
+            if (timeout != null) {
+                timeout.cancel();
+                reference.setExpiryTimeout(null);
+            }
+        }
+    }
+
+    private void expireFromWheel(QueueMessageReference ref) {
+        if (!started.get() || ref.isDropped() || ref.isAcked() || ref.getLockOwner() != null) {
+            // consumed meanwhile, or in flight where the subscription sees to it
+            return;
+        }
+        if (ref.isExpired() && broker.isExpired(ref)) {
+            LOG.debug("expiring from the expiry wheel: {}", ref);
+            messageExpired(createConnectionContext(), ref);
+        }
+    }
+
     public void messageExpired(ConnectionContext context, MessageReference reference) {
         messageExpired(context, null, reference);
     }
@@ -2017,11 +2231,15 @@ public class Queue extends BaseDestination implements Task, UsageListener, Index
             messagesLock.readLock().unlock();
         }
         int pagedInPendingSize = 0;
-        pagedInPendingDispatchLock.readLock().lock();
-        try {
+        if (dispatchPendingList.isConcurrent()) {
             pagedInPendingSize = dispatchPendingList.size();
-        } finally {
-            pagedInPendingDispatchLock.readLock().unlock();
+        } else {
+            pagedInPendingDispatchLock.readLock().lock();
+            try {
+                pagedInPendingSize = dispatchPendingList.size();
+            } finally {
+                pagedInPendingDispatchLock.readLock().unlock();
+            }
         }
         if (isLazyDispatch() && !force) {
             // Only page in the minimum number of messages which can be
@@ -2055,7 +2273,7 @@ public class Queue extends BaseDestination implements Task, UsageListener, Index
                         MessageReference node = messages.next();
                         messages.remove();
 
-                        QueueMessageReference ref = createMessageReference(node.getMessage());
+                        QueueMessageReference ref = createPagedInMessageReference(node.getMessage());
                         if (processExpired && ref.isExpired()) {
                             if (broker.isExpired(ref)) {
                                 messageExpired(createConnectionContext(), ref);
@@ -2088,6 +2306,7 @@ public class Queue extends BaseDestination implements Task, UsageListener, Index
                         if (!pagedInMessages.contains(ref)) {
                             pagedInMessages.addMessageLast(ref);
                             resultList.addMessageLast(ref);
+                            scheduleExpiry(ref);
                         } else {
                             ref.decrementReferenceCount();
                             // store should have trapped duplicate in it's index, or cursor audit trapped insert
@@ -2130,6 +2349,15 @@ public class Queue extends BaseDestination implements Task, UsageListener, Index
 
         pagedInPendingDispatchLock.writeLock().lock();
         try {
+            if (!returnedHandoffs.isEmpty()) {
+                List<MessageReference> returned = new ArrayList<MessageReference>();
+                MessageReference ref;
+                while ((ref = returnedHandoffs.poll()) != null) {
+                    returned.add(ref);
+                }
+                dispatchPendingList.addForRedelivery(returned, false);
+            }
+
             if (isPrioritizedMessages() && !dispatchPendingList.isEmpty() && list != null && !list.isEmpty()) {
                 // merge all to select priority order
                 for (MessageReference qmr : list) {
@@ -2170,76 +2398,344 @@ public class Queue extends BaseDestination implements Task, UsageListener, Index
      *         were not full.
      */
     private PendingList doActualDispatch(PendingList list) throws Exception {
-        List<Subscription> consumers;
+        ConsumerRing ring;
         consumersLock.readLock().lock();
-
         try {
-            if (this.consumers.isEmpty()) {
-                // slave dispatch happens in processDispatchNotification
-                return list;
+            if (consumerRingStale) {
+                // message group assignments changed the preferred consumer order
+                consumerRing = new ConsumerRing(consumers, useConsumerPriority ? orderedCompare : null);
+                consumerRingStale = false;
             }
-            consumers = new ArrayList<Subscription>(this.consumers);
+            ring = consumerRing;
         } finally {
             consumersLock.readLock().unlock();
         }
 
-        Set<Subscription> fullConsumers = new HashSet<Subscription>(this.consumers.size());
+        if (ring.size() == 0) {
+            // slave dispatch happens in processDispatchNotification
+            return list;
+        }
+
+        ring.clearFull();
 
         for (Iterator<MessageReference> iterator = list.iterator(); iterator.hasNext();) {
 
             MessageReference node = iterator.next();
-            Subscription target = null;
-            for (Subscription s : consumers) {
-                if (s instanceof QueueBrowserSubscription) {
-                    continue;
-                }
-                if (!fullConsumers.contains(s)) {
-                    if (!s.isFull()) {
+            int target = -1;
+            for (int band = 0; band < ring.bands() && target == -1; band++) {
+                int start = ring.bandStart(band);
+                int size = ring.bandStart(band + 1) - start;
+                for (int i = 0; i < size; i++) {
+                    int index = start + (ring.cursor(band) + i) % size;
+                    if (ring.isFull(index)) {
+                        continue;
+                    }
+                    Subscription s = ring.get(index);
+                    SubscriptionHandoffs handoffs = dispatchWorkerTasks != null ? getSubscriptionHandoffs(s) : null;
+                    if (!s.isFull() && (handoffs == null || handoffs.hasRoom())) {
                         if (dispatchSelector.canSelect(s, node) && assignMessageGroup(s, (QueueMessageReference)node) && !((QueueMessageReference) node).isAcked() ) {
                             // Dispatch it.
-                            s.add(node);
+                            if (handoffs != null) {
+                                handoffs.handOff(node);
+                            } else {
+                                s.add(node);
+                            }
                             LOG.trace("assigned {} to consumer {}", node.getMessageId(), s.getConsumerInfo().getConsumerId());
                             iterator.remove();
-                            target = s;
+                            target = index;
                             break;
                         }
                     } else {
                         // no further dispatch of list to a full consumer to
                         // avoid out of order message receipt
-                        fullConsumers.add(s);
+                        ring.setFull(index);
                         LOG.trace("Subscription full {}", s);
                     }
                 }
             }
 
-            if (target == null && node.isDropped()) {
-                iterator.remove();
+            if (target == -1) {
+                if (node.isDropped()) {
+                    iterator.remove();
+                } else if (node instanceof CompactMessageReference) {
+                    // back to waiting, a selector may have unmarshalled it
+                    ((CompactMessageReference) node).compact();
+                }
             }
 
             // return if there are no consumers or all consumers are full
-            if (target == null && consumers.size() == fullConsumers.size()) {
+            if (target == -1 && ring.allFull()) {
                 return list;
             }
 
-            // If it got dispatched, rotate the consumer list to get round robin
+            // If it got dispatched, move the cursor past the target to get round robin
             // distribution.
-            if (target != null && !strictOrderDispatch && consumers.size() > 1
-                    && !dispatchSelector.isExclusiveConsumer(target)) {
-                consumersLock.writeLock().lock();
-                try {
-                    if (removeFromConsumerList(target)) {
-                        addToConsumerList(target);
-                        consumers = new ArrayList<Subscription>(this.consumers);
-                    }
-                } finally {
-                    consumersLock.writeLock().unlock();
-                }
+            if (target != -1 && !strictOrderDispatch && ring.size() > 1
+                    && !dispatchSelector.isExclusiveConsumer(ring.get(target))) {
+                ring.advance(target);
             }
         }
 
         return list;
     }
 
+    private SubscriptionHandoffs getSubscriptionHandoffs(Subscription sub) {
+        SubscriptionHandoffs handoffs = subscriptionHandoffs.get(sub);
+        if (handoffs == null) {
+            handoffs = new SubscriptionHandoffs(sub, dispatchWorkerTasks[nextDispatchWorker]);
+            nextDispatchWorker = (nextDispatchWorker + 1) % dispatchWorkerTasks.length;
+            subscriptionHandoffs.put(sub, handoffs);
+        }
+        return handoffs;
+    }
+
+    /**
+     * Adds messages to subscriptions on behalf of the queue task, see
+     * {@link #setDispatchWorkers(int)}.
+     */
+    private final class DispatchWorker implements Task {
+
+        private final ConcurrentLinkedQueue<Handoff> handoffs = new ConcurrentLinkedQueue<Handoff>();
+        private final TaskRunner runner;
+
+        DispatchWorker(String name) {
+            runner = taskFactory.createTaskRunner(this, name);
+        }
+
+        void handOff(Handoff handoff) {
+            handoffs.add(handoff);
+            try {
+                runner.wakeup();
+            } catch (InterruptedException e) {
+                LOG.warn("Dispatch worker failed to wakeup ", e);
+            }
+        }
+
+        void shutdown() throws InterruptedException {
+            runner.shutdown();
+        }
+
+        @Override
+        public boolean iterate() {
+            MDC.put("activemq.destination", getName());
+            int maxPageSize = getMaxPageSize();
+            Handoff handoff;
+            for (int i = 0; i < maxPageSize && (handoff = handoffs.poll()) != null; i++) {
+                handoff.owner.dispatch(handoff.node);
+            }
+            // the queue task held back messages because of what was still queued here
+            if (handoffsBackedUp.compareAndSet(true, false)) {
+                asyncWakeup();
+            }
+            MDC.remove("activemq.destination");
+            return !handoffs.isEmpty();
+        }
+    }
+
+    private static final class Handoff {
+        final SubscriptionHandoffs owner;
+        final MessageReference node;
+
+        Handoff(SubscriptionHandoffs owner, MessageReference node) {
+            this.owner = owner;
+            this.node = node;
+        }
+    }
+
+    /**
+     * The messages handed to a dispatch worker for one subscription. They count
+     * against its prefetch until the worker has added them.
+     */
+    private final class SubscriptionHandoffs {
+
+        private final Subscription subscription;
+        private final DispatchWorker worker;
+        private final AtomicInteger queued = new AtomicInteger();
+        private boolean dispatching;
+        private volatile boolean cancelled;
+
+        SubscriptionHandoffs(Subscription subscription, DispatchWorker worker) {
+            this.subscription = subscription;
+            this.worker = worker;
+        }
+
+        boolean hasRoom() {
+            if (cancelled) {
+                return false;
+            }
+            if (subscription.countBeforeFull() > queued.get()) {
+                return true;
+            }
+            // flag before looking again so a worker draining meanwhile wakes us up
+            handoffsBackedUp.set(true);
+            return subscription.countBeforeFull() > queued.get();
+        }
+
+        void handOff(MessageReference node) {
+            queued.incrementAndGet();
+            worker.handOff(new Handoff(this, node));
+        }
+
+        void dispatch(MessageReference node) {
+            synchronized (this) {
+                if (cancelled) {
+                    // raced with cancel(), which did not find this one
+                    queued.decrementAndGet();
+                    returnHandoff(node);
+                    return;
+                }
+                dispatching = true;
+            }
+            try {
+                subscription.add(node);
+            } catch (Exception e) {
+                LOG.warn("Failed to dispatch {} to {}", node.getMessageId(), subscription, e);
+                returnHandoff(node);
+            } finally {
+                queued.decrementAndGet();
+                synchronized (this) {
+                    dispatching = false;
+                    notifyAll();
+                }
+            }
+        }
+
+        /**
+         * Stops further handoffs and adds to the subscription without waiting for an add
+         * in progress, called with the pagedInPendingDispatchLock held.
+         */
+        synchronized void close() {
+            cancelled = true;
+        }
+
+        /**
+         * Stops further adds to the subscription, waiting for one in progress. Must not be
+         * called with the pagedInPendingDispatchLock held, the add may need it.
+         *
+         * @return the messages that were handed off but never added
+         */
+        List<MessageReference> cancel() throws InterruptedException {
+            synchronized (this) {
+                cancelled = true;
+                while (dispatching) {
+                    wait();
+                }
+            }
+            List<MessageReference> undispatched = new ArrayList<MessageReference>();
+            for (Handoff handoff : worker.handoffs) {
+                if (handoff.owner == this && worker.handoffs.remove(handoff)) {
+                    queued.decrementAndGet();
+                    undispatched.add(handoff.node);
+                }
+            }
+            return undispatched;
+        }
+
+        private void returnHandoff(MessageReference node) {
+            returnedHandoffs.add(node);
+            asyncWakeup();
+        }
+    }
+
+    /**
+     * An immutable snapshot of the consumers that can be dispatched to, browsers excluded,
+     * in dispatch preference order. Consumers of equal priority form a band that is served
+     * round robin from a cursor, a higher priority band is always tried first.
+     *
+     * The cursors and full flags are only used by the dispatching thread, which holds the
+     * pagedInPendingDispatchLock.
+     */
+    private static final class ConsumerRing {
+
+        private final Subscription[] subscriptions;
+        // band b holds the positions [bandStarts[b], bandStarts[b + 1])
+        private final int[] bandStarts;
+        private final int[] bandOf;
+        private final int[] cursors;
+        private final boolean[] full;
+        private int fullCount;
+
+        /**
+         * @param order the consumer priority order, null when priorities are ignored
+         */
+        ConsumerRing(List<Subscription> consumers, Comparator<Subscription> order) {
+            List<Subscription> ring = new ArrayList<Subscription>(consumers.size());
+            for (Subscription s : consumers) {
+                if (!(s instanceof QueueBrowserSubscription)) {
+                    ring.add(s);
+                }
+            }
+            if (order != null) {
+                Collections.sort(ring, order);
+            }
+            subscriptions = ring.toArray(new Subscription[ring.size()]);
+            bandOf = new int[subscriptions.length];
+            full = new boolean[subscriptions.length];
+
+            int bands = subscriptions.length == 0 ? 0 : 1;
+            for (int i = 1; i < subscriptions.length; i++) {
+                if (order != null && priority(i) != priority(i - 1)) {
+                    bands++;
+                }
+                bandOf[i] = bands - 1;
+            }
+            bandStarts = new int[bands + 1];
+            for (int i = subscriptions.length - 1; i >= 0; i--) {
+                bandStarts[bandOf[i]] = i;
+            }
+            bandStarts[bands] = subscriptions.length;
+            cursors = new int[bands];
+        }
+
+        private byte priority(int index) {
+            return subscriptions[index].getConsumerInfo().getPriority();
+        }
+
+        int size() {
+            return subscriptions.length;
+        }
+
+        Subscription get(int index) {
+            return subscriptions[index];
+        }
+
+        int bands() {
+            return cursors.length;
+        }
+
+        int bandStart(int band) {
+            return bandStarts[band];
+        }
+
+        int cursor(int band) {
+            return cursors[band];
+        }
+
+        void advance(int dispatched) {
+            int band = bandOf[dispatched];
+            int start = bandStarts[band];
+            cursors[band] = (dispatched - start + 1) % (bandStarts[band + 1] - start);
+        }
+
+        void clearFull() {
+            Arrays.fill(full, false);
+            fullCount = 0;
+        }
+
+        boolean isFull(int index) {
+            return full[index];
+        }
+
+        void setFull(int index) {
+            full[index] = true;
+            fullCount++;
+        }
+
+        boolean allFull() {
+            return fullCount == subscriptions.length;
+        }
+    }
+
     protected boolean assignMessageGroup(Subscription subscription, QueueMessageReference node) throws Exception {
         boolean result = true;
         // Keep message groups together.
@@ -2267,6 +2763,7 @@ public class Queue extends BaseDestination implements Task, UsageListener, Index
                         if (sequence < 0) {
                             messageGroupOwners.removeGroup(groupId);
                             subscription.getConsumerInfo().decrementAssignedGroupCount(destination);
+                            consumerRingStale = useConsumerPriority;
                         }
                     } else {
                         result = false;
@@ -2283,6 +2780,8 @@ public class Queue extends BaseDestination implements Task, UsageListener, Index
         Message message = n.getMessage();
         message.setJMSXGroupFirstForConsumer(true);
         subs.getConsumerInfo().incrementAssignedGroupCount(destination);
+        // consumers with fewer groups are preferred for the next group
+        consumerRingStale = useConsumerPriority;
     }
 
     protected void pageInMessages(boolean force, int maxPageSize) throws Exception {
@@ -2296,10 +2795,15 @@ public class Queue extends BaseDestination implements Task, UsageListener, Index
         } else {
             consumers.add(sub);
         }
+        consumerRing = new ConsumerRing(consumers, useConsumerPriority ? orderedCompare : null);
     }
 
     private boolean removeFromConsumerList(Subscription sub) {
-        return consumers.remove(sub);
+        boolean removed = consumers.remove(sub);
+        if (removed) {
+            consumerRing = new ConsumerRing(consumers, useConsumerPriority ? orderedCompare : null);
+        }
+        return removed;
     }
 
     private int getConsumerMessageCountBeforeFull() throws Exception {
@@ -31,6 +31,7 @@ public class QueueDispatchSelector extends SimpleDispatchSelector {
     private static final Logger LOG = LoggerFactory.getLogger(QueueDispatchSelector.class);
     private Subscription exclusiveConsumer;
     private boolean paused;
+    private final SelectorIndex selectorIndex = new SelectorIndex();
 
     /**
      * @param destination
@@ -50,10 +51,22 @@ public class QueueDispatchSelector extends SimpleDispatchSelector {
         return s == this.exclusiveConsumer;
     }
 
+    /**
+     * Indexes the selector of a subscription so {@link #canSelect} can rule
+     * out the messages it can not match without evaluating it.
+     */
+    public void addSubscription(Subscription subscription) {
+        selectorIndex.addSubscription(subscription);
+    }
+
+    public void removeSubscription(Subscription subscription) {
+        selectorIndex.removeSubscription(subscription);
+    }
+
     public boolean canSelect(Subscription subscription,
             MessageReference m) throws Exception {
 
-        boolean result = !paused && super.canDispatch(subscription, m);
+        boolean result = !paused && selectorIndex.mightMatch(subscription, m) && super.canDispatch(subscription, m);
         if (result && !subscription.isBrowser()) {
             result = exclusiveConsumer == null || exclusiveConsumer == subscription;
         }
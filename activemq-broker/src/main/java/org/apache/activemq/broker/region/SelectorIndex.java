@@ -0,0 +1,205 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.jms.JMSException;
+
+import org.apache.activemq.filter.BinaryExpression;
+import org.apache.activemq.filter.BooleanExpression;
+import org.apache.activemq.filter.ComparisonExpression;
+import org.apache.activemq.filter.ConstantExpression;
+import org.apache.activemq.filter.Expression;
+import org.apache.activemq.filter.LogicExpression;
+import org.apache.activemq.filter.MessageEvaluationContext;
+import org.apache.activemq.filter.NonCachedMessageEvaluationContext;
+import org.apache.activemq.filter.PropertyExpression;
+import org.apache.activemq.filter.UnaryExpression;
+
+/**
+ * An index of the subscriptions whose selector requires a property to have one
+ * of a set of string values, as in {@code region = 'EU'} or
+ * {@code region IN ('EU', 'US')}, either on its own or as one side of an AND.
+ * It maps property name to value to subscriptions, so a message is looked up
+ * once per indexed property rather than having every selector evaluated.
+ *
+ * A subscription the index rules out can not match the message. One it does
+ * not rule out still has its full selector evaluated, as does any subscription
+ * whose selector has no such condition.
+ */
+class SelectorIndex {
+
+    private final Map<String, Map<String, Set<Subscription>>> index = new HashMap<String, Map<String, Set<Subscription>>>();
+    private final Map<Subscription, Condition> conditions = new HashMap<Subscription, Condition>();
+
+    // the lookups of the message last asked about, property name -> matching subscriptions
+    private MessageReference lastMessage;
+    private final Map<String, Set<Subscription>> lastMatches = new HashMap<String, Set<Subscription>>();
+
+    public synchronized void addSubscription(Subscription subscription) {
+        if (!(subscription instanceof AbstractSubscription)) {
+            return;
+        }
+        BooleanExpression selector = ((AbstractSubscription) subscription).getSelectorExpression();
+        Condition condition = selector != null ? conditionOf(selector) : null;
+        if (condition == null) {
+            return;
+        }
+        condition.selector = selector;
+        conditions.put(subscription, condition);
+        Map<String, Set<Subscription>> values = index.get(condition.property.getName());
+        if (values == null) {
+            values = new HashMap<String, Set<Subscription>>();
+            index.put(condition.property.getName(), values);
+        }
+        for (String value : condition.values) {
+            Set<Subscription> subscriptions = values.get(value);
+            if (subscriptions == null) {
+                subscriptions = new HashSet<Subscription>();
+                values.put(value, subscriptions);
+            }
+            subscriptions.add(subscription);
+        }
+        lastMessage = null;
+    }
+
+    public synchronized void removeSubscription(Subscription subscription) {
+        Condition condition = conditions.remove(subscription);
+        if (condition == null) {
+            return;
+        }
+        Map<String, Set<Subscription>> values = index.get(condition.property.getName());
+        for (String value : condition.values) {
+            Set<Subscription> subscriptions = values.get(value);
+            subscriptions.remove(subscription);
+            if (subscriptions.isEmpty()) {
+                values.remove(value);
+            }
+        }
+        if (values.isEmpty()) {
+            index.remove(condition.property.getName());
+        }
+        lastMessage = null;
+    }
+
+    /**
+     * @return false if the selector of the subscription can not match the message
+     */
+    public synchronized boolean mightMatch(Subscription subscription, MessageReference node) {
+        Condition condition = conditions.get(subscription);
+        if (condition == null) {
+            return true;
+        }
+        if (condition.selector != ((AbstractSubscription) subscription).getSelectorExpression()) {
+            // the selector was changed, index it again
+            removeSubscription(subscription);
+            addSubscription(subscription);
+            return true;
+        }
+        if (node != lastMessage) {
+            lastMessage = node;
+            lastMatches.clear();
+        }
+        String name = condition.property.getName();
+        Set<Subscription> matches = lastMatches.get(name);
+        if (matches == null && !lastMatches.containsKey(name)) {
+            matches = lookup(condition.property, node);
+            lastMatches.put(name, matches);
+        }
+        return matches == null || matches.contains(subscription);
+    }
+
+    /**
+     * @return the subscriptions the message can match on the property, or null
+     *         when the value is not a string and every selector has to be tried
+     */
+    private Set<Subscription> lookup(PropertyExpression property, MessageReference node) {
+        Object value;
+        try {
+            MessageEvaluationContext context = new NonCachedMessageEvaluationContext();
+            context.setMessageReference(node);
+            value = property.evaluate(context);
+        } catch (JMSException e) {
+            return null;
+        }
+        if (value == null) {
+            // neither = nor IN match a missing property
+            return Collections.emptySet();
+        }
+        if (!(value instanceof String)) {
+            // = may convert between types, leave it to the selector
+            return null;
+        }
+        Set<Subscription> subscriptions = index.get(property.getName()).get(value);
+        return subscriptions != null ? subscriptions : Collections.<Subscription>emptySet();
+    }
+
+    /**
+     * @return a condition the expression can not be true without, or null
+     */
+    static Condition conditionOf(BooleanExpression expression) {
+        if (expression instanceof LogicExpression && "AND".equals(((LogicExpression) expression).getExpressionSymbol())) {
+            LogicExpression and = (LogicExpression) expression;
+            Condition condition = conditionOf((BooleanExpression) and.getLeft());
+            return condition != null ? condition : conditionOf((BooleanExpression) and.getRight());
+        }
+        if (expression instanceof ComparisonExpression && "=".equals(((ComparisonExpression) expression).getExpressionSymbol())) {
+            BinaryExpression equal = (BinaryExpression) expression;
+            Condition condition = equalityOf(equal.getLeft(), equal.getRight());
+            return condition != null ? condition : equalityOf(equal.getRight(), equal.getLeft());
+        }
+        if (expression instanceof UnaryExpression.InExpression) {
+            UnaryExpression.InExpression in = (UnaryExpression.InExpression) expression;
+            if (in.isNot()) {
+                return null;
+            }
+            Set<String> values = new HashSet<String>();
+            for (Object value : in.getInList()) {
+                if (!(value instanceof String)) {
+                    return null;
+                }
+                values.add((String) value);
+            }
+            return new Condition(in.getProperty(), values);
+        }
+        return null;
+    }
+
+    private static Condition equalityOf(Expression property, Expression constant) {
+        if (property instanceof PropertyExpression && constant instanceof ConstantExpression
+                && ((ConstantExpression) constant).getValue() instanceof String) {
+            return new Condition((PropertyExpression) property, Collections.singleton((String) ((ConstantExpression) constant).getValue()));
+        }
+        return null;
+    }
+
+    static final class Condition {
+        final PropertyExpression property;
+        final Set<String> values;
+        BooleanExpression selector;
+
+        Condition(PropertyExpression property, Set<String> values) {
+            this.property = property;
+            this.values = values;
+        }
+    }
+}
@@ -78,6 +78,7 @@ public class Topic extends BaseDestination implements Task {
     private final ReentrantReadWriteLock dispatchLock = new ReentrantReadWriteLock();
     private DispatchPolicy dispatchPolicy = new SimpleDispatchPolicy();
     private SubscriptionRecoveryPolicy subscriptionRecoveryPolicy;
+    private boolean shareMarshalledMessages;
     private final ConcurrentMap<SubscriptionKey, DurableTopicSubscription> durableSubscribers = new ConcurrentHashMap<SubscriptionKey, DurableTopicSubscription>();
     private final TaskRunner taskRunner;
     private final TaskRunnerFactory taskRunnerFactor;
@@ -743,6 +744,18 @@ public class Topic extends BaseDestination implements Task {
         return subscriptionRecoveryPolicy;
     }
 
+    public boolean isShareMarshalledMessages() {
+        return shareMarshalledMessages;
+    }
+
+    /**
+     * @param shareMarshalledMessages true to have each message marshalled once
+     *        for all the subscriptions it is dispatched to
+     */
+    public void setShareMarshalledMessages(boolean shareMarshalledMessages) {
+        this.shareMarshalledMessages = shareMarshalledMessages;
+    }
+
     public void setSubscriptionRecoveryPolicy(SubscriptionRecoveryPolicy recoveryPolicy) {
         if (this.subscriptionRecoveryPolicy != null && this.subscriptionRecoveryPolicy instanceof RetainedMessageSubscriptionRecoveryPolicy) {
             // allow users to combine retained message policy with other ActiveMQ policies
@@ -786,6 +799,10 @@ public class Topic extends BaseDestination implements Task {
                 message.clearUnMarshalledState();
             }
 
+            if (shareMarshalledMessages) {
+                message.setShareMarshalledForm(true);
+            }
+
             msgContext = context.getMessageEvaluationContext();
             msgContext.setDestination(destination);
             msgContext.setMessageReference(message);
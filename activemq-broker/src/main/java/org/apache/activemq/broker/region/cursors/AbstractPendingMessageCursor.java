@@ -28,6 +28,7 @@ import org.apache.activemq.broker.region.Destination;
 import org.apache.activemq.broker.region.MessageReference;
 import org.apache.activemq.broker.region.Subscription;
 import org.apache.activemq.command.MessageId;
+import org.apache.activemq.usage.MemoryUsage;
 import org.apache.activemq.usage.SystemUsage;
 
 /**
@@ -187,6 +188,16 @@ public abstract class AbstractPendingMessageCursor implements PendingMessageCurs
         return result;
     }
 
+    boolean parentHasSpace(int waterMark, long pendingSize) {
+        if (systemUsage != null) {
+            MemoryUsage parent = systemUsage.getMemoryUsage().getParent();
+            if (parent != null && parent.getLimit() > 0) {
+                return (parent.getUsage() + pendingSize) * 100 / parent.getLimit() <= waterMark;
+            }
+        }
+        return true;
+    }
+
     private boolean isParentFull() {
         boolean result = false;
         if (systemUsage != null) {
@@ -0,0 +1,208 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region.cursors;
+
+import static org.apache.activemq.broker.region.cursors.OrderedPendingList.getValues;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.activemq.broker.region.MessageReference;
+import org.apache.activemq.command.MessageId;
+
+/**
+ * A PendingList in insertion order that can be used from several threads
+ * without an external lock. Entries are ordered by a sequence number, taken
+ * from below the head for {@link #addMessageFirst} and above the tail for
+ * {@link #addMessageLast}, and indexed by message id for contains, get and
+ * remove.
+ *
+ * Iteration is weakly consistent: it never fails with concurrent changes and
+ * may or may not see entries added or removed while it runs.
+ */
+public class ConcurrentPendingList implements PendingList {
+
+    private final ConcurrentSkipListMap<Long, Node> order = new ConcurrentSkipListMap<Long, Node>();
+    private final ConcurrentMap<MessageId, Node> map = new ConcurrentHashMap<MessageId, Node>();
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong messageSize = new AtomicLong();
+
+    @Override
+    public PendingNode addMessageFirst(MessageReference message) {
+        return add(head.decrementAndGet(), message);
+    }
+
+    @Override
+    public PendingNode addMessageLast(MessageReference message) {
+        return add(tail.incrementAndGet(), message);
+    }
+
+    private PendingNode add(long sequence, MessageReference message) {
+        Node node = new Node(sequence, message);
+        // index first so the node is never iterated without being found by remove
+        Node previous = map.put(message.getMessageId(), node);
+        if (previous != null) {
+            order.remove(previous.sequence, previous);
+            messageSize.addAndGet(-sizeOf(previous.getMessage()));
+        }
+        messageSize.addAndGet(sizeOf(message));
+        order.put(sequence, node);
+        if (map.get(message.getMessageId()) != node) {
+            // removed or replaced meanwhile, which could not unlink it yet
+            order.remove(sequence, node);
+        }
+        return node;
+    }
+
+    @Override
+    public PendingNode remove(MessageReference message) {
+        if (message == null) {
+            return null;
+        }
+        Node node = map.remove(message.getMessageId());
+        if (node != null) {
+            unlink(node);
+        }
+        return node;
+    }
+
+    private void unlink(Node node) {
+        order.remove(node.sequence, node);
+        messageSize.addAndGet(-sizeOf(node.getMessage()));
+    }
+
+    @Override
+    public void clear() {
+        Iterator<Node> nodes = order.values().iterator();
+        while (nodes.hasNext()) {
+            Node node = nodes.next();
+            if (map.remove(node.getMessage().getMessageId(), node)) {
+                unlink(node);
+            }
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return map.isEmpty();
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public long messageSize() {
+        return messageSize.get();
+    }
+
+    @Override
+    public Iterator<MessageReference> iterator() {
+        return new Iterator<MessageReference>() {
+            private final Iterator<Node> nodes = order.values().iterator();
+            private Node current;
+
+            @Override
+            public boolean hasNext() {
+                return nodes.hasNext();
+            }
+
+            @Override
+            public MessageReference next() {
+                current = nodes.next();
+                return current.getMessage();
+            }
+
+            @Override
+            public void remove() {
+                if (current != null && map.remove(current.getMessage().getMessageId(), current)) {
+                    unlink(current);
+                }
+                current = null;
+            }
+        };
+    }
+
+    @Override
+    public boolean contains(MessageReference message) {
+        if (message != null) {
+            return map.containsKey(message.getMessageId());
+        }
+        return false;
+    }
+
+    @Override
+    public Collection<MessageReference> values() {
+        return getValues(this);
+    }
+
+    @Override
+    public void addAll(PendingList pendingList) {
+        if (pendingList != null) {
+            for (MessageReference messageReference : pendingList) {
+                addMessageLast(messageReference);
+            }
+        }
+    }
+
+    @Override
+    public MessageReference get(MessageId messageId) {
+        Node node = map.get(messageId);
+        if (node != null) {
+            return node.getMessage();
+        }
+        return null;
+    }
+
+    public void insertAtHead(List<MessageReference> list) {
+        if (list != null) {
+            for (int i = list.size() - 1; i >= 0; i--) {
+                addMessageFirst(list.get(i));
+            }
+        }
+    }
+
+    private static long sizeOf(MessageReference message) {
+        try {
+            return message.getSize();
+        } catch (Exception e) {
+            //expected for NullMessageReference
+            return 0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrentPendingList(" + System.identityHashCode(this) + ")";
+    }
+
+    private static final class Node extends PendingNode {
+        private final long sequence;
+
+        Node(long sequence, MessageReference message) {
+            super(null, message);
+            this.sequence = sequence;
+        }
+    }
+}
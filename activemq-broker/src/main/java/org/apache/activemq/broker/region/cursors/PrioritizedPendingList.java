@@ -26,6 +26,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.activemq.broker.region.CompactMessageReference;
 import org.apache.activemq.broker.region.MessageReference;
 import org.apache.activemq.command.MessageId;
 import org.apache.activemq.management.SizeStatisticImpl;
@@ -111,7 +112,10 @@ public class PrioritizedPendingList implements PendingList {
     protected int getPriority(MessageReference message) {
         int priority = javax.jms.Message.DEFAULT_PRIORITY;
         if (message.getMessageId() != null) {
-            priority = Math.max(message.getMessage().getPriority(), 0);
+            // a compact reference has it without unmarshalling the message
+            int messagePriority = message instanceof CompactMessageReference
+                    ? ((CompactMessageReference) message).getPriority() : message.getMessage().getPriority();
+            priority = Math.max(messagePriority, 0);
             priority = Math.min(priority, 9);
         }
         return priority;
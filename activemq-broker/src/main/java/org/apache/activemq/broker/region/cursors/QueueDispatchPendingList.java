@@ -40,6 +40,7 @@ public class QueueDispatchPendingList implements PendingList {
     private PendingList pagedInPendingDispatch = new OrderedPendingList();
     private PendingList redeliveredWaitingDispatch = new OrderedPendingList();
     private boolean prioritized = false;
+    private boolean concurrent = false;
 
 
     @Override
@@ -194,15 +195,39 @@ public class QueueDispatchPendingList implements PendingList {
 
     public void setPrioritizedMessages(boolean prioritizedMessages) {
         prioritized = prioritizedMessages;
-        if (prioritizedMessages && this.pagedInPendingDispatch instanceof OrderedPendingList) {
+        if (prioritizedMessages && !(this.pagedInPendingDispatch instanceof PrioritizedPendingList)) {
             pagedInPendingDispatch = new PrioritizedPendingList();
             redeliveredWaitingDispatch = new PrioritizedPendingList();
         } else if(pagedInPendingDispatch instanceof PrioritizedPendingList) {
-            pagedInPendingDispatch = new OrderedPendingList();
-            redeliveredWaitingDispatch = new OrderedPendingList();
+            pagedInPendingDispatch = createOrderedList();
+            redeliveredWaitingDispatch = createOrderedList();
         }
     }
 
+    /**
+     * Use lists that need no external lock when messages are not prioritized,
+     * so messages can be added and removed while another thread dispatches.
+     * Should be set before any messages are added.
+     */
+    public void setConcurrent(boolean concurrent) {
+        this.concurrent = concurrent;
+        if (!prioritized) {
+            pagedInPendingDispatch = createOrderedList();
+            redeliveredWaitingDispatch = createOrderedList();
+        }
+    }
+
+    /**
+     * @return true if the lists in use need no external lock
+     */
+    public boolean isConcurrent() {
+        return pagedInPendingDispatch instanceof ConcurrentPendingList;
+    }
+
+    private PendingList createOrderedList() {
+        return concurrent ? new ConcurrentPendingList() : new OrderedPendingList();
+    }
+
     public boolean hasRedeliveries(){
         return !redeliveredWaitingDispatch.isEmpty();
     }
@@ -212,6 +237,8 @@ public class QueueDispatchPendingList implements PendingList {
             // a single consumer can expect repeatable redelivery order irrespective
             // of transaction or prefetch boundaries
             ((OrderedPendingList)redeliveredWaitingDispatch).insertAtHead(list);
+        } else if (noConsumers && redeliveredWaitingDispatch instanceof ConcurrentPendingList && willBeInOrder(list)) {
+            ((ConcurrentPendingList)redeliveredWaitingDispatch).insertAtHead(list);
         } else {
             for (MessageReference ref : list) {
                 redeliveredWaitingDispatch.addMessageLast(ref);
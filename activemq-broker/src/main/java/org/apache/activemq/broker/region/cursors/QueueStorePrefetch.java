@@ -17,13 +17,16 @@
 package org.apache.activemq.broker.region.cursors;
 
 import java.io.IOException;
+import java.util.List;
 
 import org.apache.activemq.broker.Broker;
 import org.apache.activemq.broker.BrokerService;
 import org.apache.activemq.broker.region.Queue;
 import org.apache.activemq.command.Message;
 import org.apache.activemq.command.MessageId;
+import org.apache.activemq.store.MessageBatchRecoveryListener;
 import org.apache.activemq.store.MessageStore;
+import org.apache.activemq.store.RecoveredMessage;
 import org.apache.activemq.store.memory.MemoryMessageStore;
 import org.apache.activemq.store.memory.MemoryTransactionStore;
 import org.slf4j.Logger;
@@ -35,7 +38,7 @@ import org.slf4j.LoggerFactory;
  *
  *
  */
-class QueueStorePrefetch extends AbstractStoreCursor {
+class QueueStorePrefetch extends AbstractStoreCursor implements MessageBatchRecoveryListener {
     private static final Logger LOG = LoggerFactory.getLogger(QueueStorePrefetch.class);
     private final MessageStore store;
     private final Queue queue;
@@ -65,7 +68,21 @@ class QueueStorePrefetch extends AbstractStoreCursor {
         }
     }
 
+    @Override
+    public void recoverMessages(List<RecoveredMessage> batch) throws Exception {
+        // unmarshalled here, outside of the store read
+        for (RecoveredMessage recovered : batch) {
+            recoverMessage(recovered.getMessage());
+        }
+    }
 
+    @Override
+    public boolean canRecoverMessages(int count, long batchSize) {
+        // the same watermark as canRecoveryNextMessage, with the batch read
+        // so far counted in as it is not charged until it is handed over,
+        // at the size each message will be charged at
+        return parentHasSpace(90, batchSize + (long) count * queue.getMinimumMessageSize());
+    }
 
     @Override
     protected synchronized int getStoreSize() {
@@ -124,7 +141,7 @@ class QueueStorePrefetch extends AbstractStoreCursor {
     protected void doFillBatch() throws Exception {
         hadSpace = this.hasSpace();
         if (!broker.getBrokerService().isPersistent() || hadSpace) {
-            this.store.recoverNextMessages(this.maxBatchSize, this);
+            this.store.recoverNextMessageBatch(this.maxBatchSize, this);
             dealWithDuplicates(); // without the index lock
         }
     }
@@ -0,0 +1,183 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region.policy;
+
+/**
+ * Sizes the window of messages the broker keeps in flight to a consumer from
+ * how fast the consumer acknowledges them, rather than from its prefetch
+ * alone. A consumer is given as many messages as it acks in the target in
+ * flight time, and less when the messages it acks have been in flight for
+ * longer than that, so that a slow consumer does not hoard messages the other
+ * consumers of a queue could be working on.
+ *
+ * The window stays between the minimum and maximum prefetch and never grows
+ * beyond the prefetch of the consumer itself. Consumers with a prefetch of
+ * zero pull their messages and are left alone.
+ *
+ * @org.apache.xbean.XBean
+ */
+public class AdaptivePrefetchPolicy {
+
+    private int minimumPrefetch = 1;
+    private int maximumPrefetch = 0;
+    private long targetInflightTime = 1000;
+    private long sampleInterval = 1000;
+
+    /**
+     * @return a new window, for one subscription
+     */
+    public Window createWindow() {
+        return new Window(this);
+    }
+
+    public int getMinimumPrefetch() {
+        return minimumPrefetch;
+    }
+
+    /**
+     * @param minimumPrefetch the smallest window, at least one
+     */
+    public void setMinimumPrefetch(int minimumPrefetch) {
+        this.minimumPrefetch = Math.max(1, minimumPrefetch);
+    }
+
+    public int getMaximumPrefetch() {
+        return maximumPrefetch;
+    }
+
+    /**
+     * @param maximumPrefetch the largest window, 0 for the prefetch of the
+     *        consumer
+     */
+    public void setMaximumPrefetch(int maximumPrefetch) {
+        this.maximumPrefetch = maximumPrefetch;
+    }
+
+    public long getTargetInflightTime() {
+        return targetInflightTime;
+    }
+
+    /**
+     * @param targetInflightTime the time in milliseconds a message should
+     *        spend between its dispatch and its ack
+     */
+    public void setTargetInflightTime(long targetInflightTime) {
+        this.targetInflightTime = targetInflightTime;
+    }
+
+    public long getSampleInterval() {
+        return sampleInterval;
+    }
+
+    /**
+     * @param sampleInterval the time in milliseconds over which acks are
+     *        counted before the window is sized again
+     */
+    public void setSampleInterval(long sampleInterval) {
+        this.sampleInterval = sampleInterval;
+    }
+
+    /**
+     * The window of one subscription, sized again from the acks of each
+     * sample interval.
+     */
+    public static final class Window {
+
+        private final int minimum;
+        private final int maximum;
+        private final long targetInflightTime;
+        private final long sampleInterval;
+
+        // the window before it is bounded by the prefetch of the consumer
+        private volatile int size = Integer.MAX_VALUE;
+
+        // guarded by this
+        private long sampleStart = -1;
+        private int sampleAcks;
+        private long sampleInflightTime;
+        private int sampleTimedAcks;
+        private double ackRate = -1;
+
+        Window(AdaptivePrefetchPolicy policy) {
+            this.minimum = policy.getMinimumPrefetch();
+            this.maximum = policy.getMaximumPrefetch();
+            this.targetInflightTime = policy.getTargetInflightTime();
+            this.sampleInterval = policy.getSampleInterval();
+        }
+
+        /**
+         * @param prefetchSize the prefetch of the consumer
+         * @return the number of messages that may be in flight to the consumer
+         */
+        public int getSize(int prefetchSize) {
+            int upper = maximum > 0 ? Math.min(maximum, prefetchSize) : prefetchSize;
+            return Math.max(Math.min(minimum, upper), Math.min(size, upper));
+        }
+
+        /**
+         * Records acked messages and sizes the window again once the sample
+         * interval has passed.
+         *
+         * @param count the number of messages acked
+         * @param inflightTime the total time in milliseconds the messages that
+         *        carried a dispatch time were in flight
+         * @param timed the number of messages that carried a dispatch time
+         * @param inflight the number of messages still in flight
+         * @param now the current time in milliseconds
+         */
+        public synchronized void acknowledged(int count, long inflightTime, int timed, int inflight, long now) {
+            if (sampleStart < 0) {
+                sampleStart = now;
+            }
+            sampleAcks += count;
+            sampleInflightTime += inflightTime;
+            sampleTimedAcks += timed;
+
+            long elapsed = now - sampleStart;
+            if (elapsed < sampleInterval) {
+                return;
+            }
+
+            double rate = sampleAcks * 1000d / elapsed;
+            ackRate = ackRate < 0 ? rate : (ackRate + rate) / 2;
+            // as many messages as the consumer gets through in the target time
+            double target = ackRate * targetInflightTime / 1000d;
+            if (sampleTimedAcks > 0) {
+                long averageInflightTime = sampleInflightTime / sampleTimedAcks;
+                if (averageInflightTime > targetInflightTime) {
+                    // messages wait on the consumer, shrink by the overshoot
+                    int current = Math.min(size, Math.max(inflight + count, minimum));
+                    target = Math.min(target, (double) current * targetInflightTime / averageInflightTime);
+                }
+            }
+            size = (int) Math.max(minimum, Math.min(Integer.MAX_VALUE, Math.round(target)));
+
+            sampleStart = now;
+            sampleAcks = 0;
+            sampleInflightTime = 0;
+            sampleTimedAcks = 0;
+        }
+
+        /**
+         * @return the acks per second the window was last sized for, or -1
+         *         before the first sample
+         */
+        public synchronized double getAckRate() {
+            return ackRate;
+        }
+    }
+}
@@ -94,6 +94,7 @@ public class PolicyEntry extends DestinationMapEntry {
     private int cursorMemoryHighWaterMark = 70;
     private int storeUsageHighWaterMark = 100;
     private SlowConsumerStrategy slowConsumerStrategy;
+    private AdaptivePrefetchPolicy adaptivePrefetchPolicy;
     private boolean prioritizedMessages;
     private boolean allConsumersExclusiveByDefault;
     private boolean gcInactiveDestinations;
@@ -110,6 +111,12 @@ public class PolicyEntry extends DestinationMapEntry {
      */
     private int optimizeMessageStoreInFlightLimit = 10;
     private boolean persistJMSRedelivered = false;
+    private int queueDispatchWorkers = 0;
+    private boolean concurrentDispatchPendingList = false;
+    private boolean shareMarshalledTopicMessages = false;
+    private boolean useExpiryWheel = false;
+    private boolean compactPagedInMessages = false;
+    private boolean compactMessagesOffHeap = false;
     private int sendFailIfNoSpace = -1;
     private long sendFailIfNoSpaceAfterTimeout = -1;
 
@@ -137,6 +144,11 @@ public class PolicyEntry extends DestinationMapEntry {
         queue.setConsumersBeforeDispatchStarts(getConsumersBeforeDispatchStarts());
         queue.setAllConsumersExclusiveByDefault(isAllConsumersExclusiveByDefault());
         queue.setPersistJMSRedelivered(isPersistJMSRedelivered());
+        queue.setDispatchWorkers(getQueueDispatchWorkers());
+        queue.setConcurrentDispatchPendingList(isConcurrentDispatchPendingList());
+        queue.setUseExpiryWheel(isUseExpiryWheel());
+        queue.setCompactPagedInMessages(isCompactPagedInMessages());
+        queue.setCompactMessagesOffHeap(isCompactMessagesOffHeap());
     }
 
     public void update(Queue queue) {
@@ -199,6 +211,7 @@ public class PolicyEntry extends DestinationMapEntry {
             topic.getMemoryUsage().setLimit(memoryLimit);
         }
         topic.setLazyDispatch(isLazyDispatch());
+        topic.setShareMarshalledMessages(isShareMarshalledTopicMessages());
     }
 
     public void update(Topic topic) {
@@ -371,6 +384,7 @@ public class PolicyEntry extends DestinationMapEntry {
         }
         sub.setMaxProducersToAudit(getMaxProducersToAudit());
         sub.setUsePrefetchExtension(isUsePrefetchExtension());
+        sub.setAdaptivePrefetchPolicy(getAdaptivePrefetchPolicy());
     }
 
     public void configure(Broker broker, SystemUsage memoryManager, QueueBrowserSubscription sub) {
@@ -394,6 +408,7 @@ public class PolicyEntry extends DestinationMapEntry {
         sub.setCursorMemoryHighWaterMark(getCursorMemoryHighWaterMark());
         sub.setUsePrefetchExtension(isUsePrefetchExtension());
         sub.setMaxProducersToAudit(getMaxProducersToAudit());
+        sub.setAdaptivePrefetchPolicy(getAdaptivePrefetchPolicy());
     }
 
     public void configurePrefetch(Subscription subscription) {
@@ -979,6 +994,21 @@ public class PolicyEntry extends DestinationMapEntry {
         return this.slowConsumerStrategy;
     }
 
+    /**
+     * Sizes the window of messages in flight to each queue and durable topic
+     * consumer from its measured ack rate, within the bounds of the policy
+     * and the consumer's prefetch.
+     *
+     * @param adaptivePrefetchPolicy
+     */
+    public void setAdaptivePrefetchPolicy(AdaptivePrefetchPolicy adaptivePrefetchPolicy) {
+        this.adaptivePrefetchPolicy = adaptivePrefetchPolicy;
+    }
+
+    public AdaptivePrefetchPolicy getAdaptivePrefetchPolicy() {
+        return this.adaptivePrefetchPolicy;
+    }
+
 
     public boolean isPrioritizedMessages() {
         return this.prioritizedMessages;
@@ -1092,6 +1122,100 @@ public class PolicyEntry extends DestinationMapEntry {
         return persistJMSRedelivered;
     }
 
+    public int getQueueDispatchWorkers() {
+        return queueDispatchWorkers;
+    }
+
+    /**
+     * Sets the number of workers a queue hands its dispatch to, so one busy
+     * queue with many consumers can use more than one thread. Messages are
+     * sharded by consumer, which keeps message groups in order as a group is
+     * owned by one consumer. Defaults to 0, dispatch on the queue's own task.
+     *
+     * @param queueDispatchWorkers
+     *            number of dispatch workers per queue
+     */
+    public void setQueueDispatchWorkers(int queueDispatchWorkers) {
+        this.queueDispatchWorkers = queueDispatchWorkers;
+    }
+
+    public boolean isConcurrentDispatchPendingList() {
+        return concurrentDispatchPendingList;
+    }
+
+    /**
+     * Keeps a queue's paged in messages that wait for dispatch in a list that
+     * needs no lock, so acks removing messages don't wait on the dispatching
+     * thread. Ignored when prioritizedMessages is set.
+     *
+     * @param concurrentDispatchPendingList
+     */
+    public void setConcurrentDispatchPendingList(boolean concurrentDispatchPendingList) {
+        this.concurrentDispatchPendingList = concurrentDispatchPendingList;
+    }
+
+    public boolean isUseExpiryWheel() {
+        return useExpiryWheel;
+    }
+
+    /**
+     * Expires the messages a queue has paged in through a timing wheel shared
+     * by the broker, as soon as their time to live runs out and without
+     * scanning the queue. The periodic scan set by expireMessagesPeriod is
+     * kept as a fallback for the messages still in the store.
+     *
+     * @param useExpiryWheel
+     */
+    public void setUseExpiryWheel(boolean useExpiryWheel) {
+        this.useExpiryWheel = useExpiryWheel;
+    }
+
+    public boolean isCompactPagedInMessages() {
+        return compactPagedInMessages;
+    }
+
+    /**
+     * Holds the messages a queue has paged in by their dispatch headers and
+     * marshalled form, unmarshalling a message only while a selector or a
+     * dispatch needs it. The memory limit is then charged with the marshalled
+     * size of the messages waiting for dispatch, so a larger maxPageSize fits.
+     *
+     * @param compactPagedInMessages
+     */
+    public void setCompactPagedInMessages(boolean compactPagedInMessages) {
+        this.compactPagedInMessages = compactPagedInMessages;
+    }
+
+    public boolean isCompactMessagesOffHeap() {
+        return compactMessagesOffHeap;
+    }
+
+    /**
+     * Keeps the marshalled form of compact paged in messages in direct
+     * buffers. Only has an effect with compactPagedInMessages.
+     *
+     * @param compactMessagesOffHeap
+     */
+    public void setCompactMessagesOffHeap(boolean compactMessagesOffHeap) {
+        this.compactMessagesOffHeap = compactMessagesOffHeap;
+    }
+
+    public boolean isShareMarshalledTopicMessages() {
+        return shareMarshalledTopicMessages;
+    }
+
+    /**
+     * Lets the OpenWire connections of a topic's subscribers marshal a message
+     * once and write the same bytes into each dispatch of it, rather than
+     * marshalling it again for every subscription. Subscribers see the broker
+     * out time of the first dispatch of the message.
+     *
+     * @param shareMarshalledTopicMessages
+     */
+    public void setShareMarshalledTopicMessages(boolean shareMarshalledTopicMessages) {
+        this.shareMarshalledTopicMessages = shareMarshalledTopicMessages;
+    }
+
     public int getMaxDestinations() {
         return maxDestinations;
     }
@@ -19,19 +19,20 @@ package org.apache.activemq.broker.region.policy;
 import java.util.List;
 
 import org.apache.activemq.command.ActiveMQDestination;
-import org.apache.activemq.filter.DestinationMap;
+import org.apache.activemq.filter.ConcurrentDestinationMap;
 import org.apache.activemq.filter.DestinationMapEntry;
 
 /**
  * Represents a destination based configuration of policies so that individual
  * destinations or wildcard hierarchies of destinations can be configured using
- * different policies.
+ * different policies. The policies matching a destination are cached, as they
+ * are looked up far more often than the map changes.
  * 
  * @org.apache.xbean.XBean
  * 
  * 
  */
-public class PolicyMap extends DestinationMap {
+public class PolicyMap extends ConcurrentDestinationMap {
 
     private PolicyEntry defaultEntry;
 
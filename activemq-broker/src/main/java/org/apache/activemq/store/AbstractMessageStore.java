@@ -62,6 +62,14 @@ abstract public class AbstractMessageStore implements MessageStore {
     public void setBatch(MessageId messageId) throws IOException, Exception {
     }
 
+    /**
+     * Recovers the messages one at a time, for stores without batch support.
+     */
+    @Override
+    public void recoverNextMessageBatch(int maxReturned, MessageBatchRecoveryListener listener) throws Exception {
+        recoverNextMessages(maxReturned, listener);
+    }
+
     /**
      * flag to indicate if the store is empty
      *
@@ -0,0 +1,49 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store;
+
+import java.util.List;
+
+/**
+ * A {@link MessageRecoveryListener} that a store can hand the messages of a
+ * batch recovery to all at once, read in a single pass and still in their
+ * marshalled form. Stores without batch support recover message by message
+ * through the methods of the {@link MessageRecoveryListener}.
+ */
+public interface MessageBatchRecoveryListener extends MessageRecoveryListener {
+
+    /**
+     * Receives the messages the store has read, in store order, once the
+     * store no longer holds any lock for the read.
+     *
+     * @param batch the messages, unmarshalled only when asked for
+     * @throws Exception
+     */
+    void recoverMessages(List<RecoveredMessage> batch) throws Exception;
+
+    /**
+     * Asked by the store as it reads a batch, in place of
+     * {@link #canRecoveryNextMessage()}. The messages of the batch are only
+     * charged to the memory usage once they are handed over, so the listener
+     * has to count them in itself.
+     *
+     * @param count the number of messages read for the batch so far
+     * @param batchSize their marshalled size
+     * @return true if there is room to read the next message of the batch
+     */
+    boolean canRecoverMessages(int count, long batchSize);
+}
@@ -178,6 +178,18 @@ public interface MessageStore extends Service {
 
     void recoverNextMessages(int maxReturned, MessageRecoveryListener listener) throws Exception;
 
+    /**
+     * Recovers the next messages like {@link #recoverNextMessages(int, MessageRecoveryListener)},
+     * but lets a store that can read them in a single pass hand them over as
+     * one batch of messages that are not yet unmarshalled. A store without
+     * batch support recovers them one at a time through the listener.
+     *
+     * @param maxReturned
+     * @param listener
+     * @throws Exception
+     */
+    void recoverNextMessageBatch(int maxReturned, MessageBatchRecoveryListener listener) throws Exception;
+
     void dispose(ConnectionContext context);
 
     /**
@@ -16,18 +16,25 @@
  */
 package org.apache.activemq.store;
 
+import org.apache.activemq.management.HistogramStatisticImpl;
 import org.apache.activemq.management.StatsImpl;
 import org.apache.activemq.management.TimeStatisticImpl;
 
 public class PersistenceAdapterStatistics extends StatsImpl {
     protected TimeStatisticImpl writeTime;
     protected TimeStatisticImpl readTime;
+    protected HistogramStatisticImpl journalWriteBatchSize;
+    protected HistogramStatisticImpl journalSyncTime;
 
     public PersistenceAdapterStatistics() {
         writeTime = new TimeStatisticImpl("writeTime", "Time to write data to the PersistentAdapter.");
         readTime = new TimeStatisticImpl("readTime", "Time to read data from the PersistentAdapter.");
         addStatistic("writeTime", writeTime);
+        journalWriteBatchSize = new HistogramStatisticImpl("journalWriteBatchSize", "writes", "Number of records written to the journal per batch.");
+        journalSyncTime = new HistogramStatisticImpl("journalSyncTime", "micros", "Time taken by journal disk syncs.");
         addStatistic("readTime", readTime);
+        addStatistic("journalWriteBatchSize", journalWriteBatchSize);
+        addStatistic("journalSyncTime", journalSyncTime);
     }
 
     public void addWriteTime(final long time) {
@@ -43,6 +50,8 @@ public class PersistenceAdapterStatistics extends StatsImpl {
         super.setEnabled(enabled);
         writeTime.setEnabled(enabled);
         readTime.setEnabled(enabled);
+        journalWriteBatchSize.setEnabled(enabled);
+        journalSyncTime.setEnabled(enabled);
     }
 
     public TimeStatisticImpl getWriteTime() {
@@ -51,11 +60,21 @@ public class PersistenceAdapterStatistics extends StatsImpl {
 
     public TimeStatisticImpl getReadTime() { return readTime; }
 
+    public HistogramStatisticImpl getJournalWriteBatchSize() {
+        return journalWriteBatchSize;
+    }
+
+    public HistogramStatisticImpl getJournalSyncTime() {
+        return journalSyncTime;
+    }
+
     @Override
     public void reset() {
         if (isDoReset()) {
             writeTime.reset();
             readTime.reset();
+            journalWriteBatchSize.reset();
+            journalSyncTime.reset();
         }
     }
 
@@ -110,6 +110,11 @@ public class ProxyMessageStore implements MessageStore {
         delegate.recoverNextMessages(maxReturned, listener);
     }
 
+    @Override
+    public void recoverNextMessageBatch(int maxReturned, MessageBatchRecoveryListener listener) throws Exception {
+        delegate.recoverNextMessageBatch(maxReturned, listener);
+    }
+
     @Override
     public void resetBatching() {
         delegate.resetBatching();
@@ -0,0 +1,89 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store;
+
+import java.io.IOException;
+
+import org.apache.activemq.command.Message;
+import org.apache.activemq.util.ByteSequence;
+import org.apache.activemq.wireformat.WireFormat;
+
+/**
+ * A message read by a batch recovery, see
+ * {@link MessageStore#recoverNextMessageBatch(int, MessageBatchRecoveryListener)}.
+ * It holds the marshalled form the store keeps the message in, without
+ * copying it, and unmarshals it the first time the message is asked for.
+ */
+public class RecoveredMessage {
+
+    private final ByteSequence form;
+    private final WireFormat wireFormat;
+    private final long sequenceId;
+    private Message message;
+
+    /**
+     * @param form the message as marshalled by the wire format
+     * @param wireFormat the wire format of the store
+     * @param sequenceId the position of the message in the store
+     */
+    public RecoveredMessage(ByteSequence form, WireFormat wireFormat, long sequenceId) {
+        this.form = form;
+        this.wireFormat = wireFormat;
+        this.sequenceId = sequenceId;
+    }
+
+    /**
+     * For a message the store has already unmarshalled.
+     */
+    public RecoveredMessage(Message message) {
+        this.form = null;
+        this.wireFormat = null;
+        this.sequenceId = -1;
+        this.message = message;
+    }
+
+    public synchronized Message getMessage() throws IOException {
+        if (message == null) {
+            message = (Message) wireFormat.unmarshal(form);
+            unmarshalled(message);
+        }
+        return message;
+    }
+
+    public synchronized boolean isUnmarshalled() {
+        return message != null;
+    }
+
+    public long getSequenceId() {
+        return sequenceId;
+    }
+
+    /**
+     * @return the size of the marshalled form, or -1 if the store handed over
+     *         an unmarshalled message
+     */
+    public int getMarshalledSize() {
+        return form != null ? form.getLength() : -1;
+    }
+
+    /**
+     * Sets what the store tracks the message by, the sequence id by default.
+     */
+    protected void unmarshalled(Message message) {
+        message.getMessageId().setFutureOrSequenceLong(sequenceId);
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq;
+
+import java.io.Serializable;
+
+/**
+ * Defines how consumers of non transacted sessions coalesce their
+ * acknowledgements. Rather than acknowledging each message, or each call to
+ * {@link javax.jms.Message#acknowledge()}, a consumer holds the
+ * acknowledgements back and sends a single acknowledgement for the range of
+ * messages once it has held back enough messages, enough bytes, or held them
+ * for long enough, whichever comes first. Acknowledgements held back are sent
+ * before the consumer closes or rolls back, and at the latest when half the
+ * prefetch window is taken by them, so dispatch is never stalled.
+ *
+ * The policy applies to AUTO_ACKNOWLEDGE, DUPS_OK_ACKNOWLEDGE and
+ * CLIENT_ACKNOWLEDGE consumers with a prefetch. Like optimizeAcknowledge,
+ * which takes precedence, it trades fewer acknowledgements for the
+ * redelivery of the messages whose acknowledgement was held back when the
+ * connection fails.
+ *
+ * @org.apache.xbean.XBean element="ackCoalescingPolicy"
+ */
+public class AckCoalescingPolicy implements Serializable {
+
+    private static final long serialVersionUID = -5263624474385617374L;
+
+    public static final int DEFAULT_MAXIMUM_MESSAGES = 100;
+    public static final long DEFAULT_MAXIMUM_BYTES = 1024 * 1024;
+    public static final long DEFAULT_MAXIMUM_DELAY = 100;
+
+    private int maximumMessages = DEFAULT_MAXIMUM_MESSAGES;
+    private long maximumBytes = DEFAULT_MAXIMUM_BYTES;
+    private long maximumDelay = DEFAULT_MAXIMUM_DELAY;
+
+    /**
+     * @return the most messages whose acknowledgement is held back
+     */
+    public int getMaximumMessages() {
+        return maximumMessages;
+    }
+
+    public void setMaximumMessages(int maximumMessages) {
+        this.maximumMessages = maximumMessages;
+    }
+
+    /**
+     * @return the most bytes of messages whose acknowledgement is held back,
+     *         0 for no limit
+     */
+    public long getMaximumBytes() {
+        return maximumBytes;
+    }
+
+    public void setMaximumBytes(long maximumBytes) {
+        this.maximumBytes = maximumBytes;
+    }
+
+    /**
+     * @return the longest time in milliseconds the acknowledgement of a
+     *         message is held back, 0 for no limit
+     */
+    public long getMaximumDelay() {
+        return maximumDelay;
+    }
+
+    public void setMaximumDelay(long maximumDelay) {
+        this.maximumDelay = maximumDelay;
+    }
+
+    /**
+     * @return true if the acknowledgement of the messages held back is due
+     */
+    boolean isDue(int messages, long bytes, long heldSince, int prefetchSize) {
+        return messages >= maximumMessages
+            || messages >= Math.max(1, prefetchSize / 2)
+            || (maximumBytes > 0 && bytes >= maximumBytes)
+            || (maximumDelay > 0 && System.currentTimeMillis() - heldSince >= maximumDelay);
+    }
+}
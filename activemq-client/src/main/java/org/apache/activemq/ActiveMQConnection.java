@@ -135,6 +135,7 @@ public class ActiveMQConnection implements Connection, TopicConnection, QueueCon
 
     // Configuration options variables
     private ActiveMQPrefetchPolicy prefetchPolicy = new ActiveMQPrefetchPolicy();
+    private AckCoalescingPolicy ackCoalescingPolicy;
     private BlobTransferPolicy blobTransferPolicy;
     private RedeliveryPolicyMap redeliveryPolicyMap;
     private MessageTransformer transformer;
@@ -197,10 +198,12 @@ public class ActiveMQConnection implements Connection, TopicConnection, QueueCon
     private DestinationSource destinationSource;
     private final Object ensureConnectionInfoSentMutex = new Object();
     private boolean useDedicatedTaskRunner;
+    private boolean useVirtualThreads;
     protected AtomicInteger transportInterruptionProcessingComplete = new AtomicInteger(0);
     private long consumerFailoverRedeliveryWaitPeriod;
     private volatile Scheduler scheduler;
     private boolean messagePrioritySupported = false;
+    private boolean useRingDispatchChannel = false;
     private boolean transactedIndividualAck = false;
     private boolean nonBlockingRedelivery = false;
     private boolean rmIdFromConnectionId = false;
@@ -874,6 +877,22 @@ public class ActiveMQConnection implements Connection, TopicConnection, QueueCon
         this.prefetchPolicy = prefetchPolicy;
     }
 
+    /**
+     * @return the policy by which consumers coalesce their acknowledgements,
+     *         null if they do not
+     */
+    public AckCoalescingPolicy getAckCoalescingPolicy() {
+        return ackCoalescingPolicy;
+    }
+
+    /**
+     * Sets the policy by which consumers created by this connection coalesce
+     * their acknowledgements, none by default.
+     */
+    public void setAckCoalescingPolicy(AckCoalescingPolicy ackCoalescingPolicy) {
+        this.ackCoalescingPolicy = ackCoalescingPolicy;
+    }
+
     /**
      */
     public Transport getTransportChannel() {
@@ -1005,11 +1024,26 @@ public class ActiveMQConnection implements Connection, TopicConnection, QueueCon
         this.useDedicatedTaskRunner = useDedicatedTaskRunner;
     }
 
+    public boolean isUseVirtualThreads() {
+        return useVirtualThreads;
+    }
+
+    /**
+     * Runs the asynchronous dispatch of sessions, and so the invocation of
+     * their MessageListeners, on virtual threads when the JVM has them.
+     *
+     * @param useVirtualThreads the useVirtualThreads to set
+     */
+    public void setUseVirtualThreads(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+    }
+
     public TaskRunnerFactory getSessionTaskRunner() {
         synchronized (this) {
             if (sessionTaskRunner == null) {
                 sessionTaskRunner = new TaskRunnerFactory("ActiveMQ Session Task", ThreadPriorities.INBOUND_CLIENT_SESSION, false, 1000, isUseDedicatedTaskRunner(), maxThreadPoolSize);
                 sessionTaskRunner.setRejectedTaskHandler(rejectedTaskHandler);
+                sessionTaskRunner.setUseVirtualThreads(isUseVirtualThreads());
             }
         }
         return sessionTaskRunner;
@@ -1553,6 +1587,25 @@ public class ActiveMQConnection implements Connection, TopicConnection, QueueCon
         this.messagePrioritySupported = messagePrioritySupported;
     }
 
+    /**
+     * @return true if messages are handed to sessions and consumers through
+     *         lock free ring channels
+     */
+    public boolean isUseRingDispatchChannel() {
+        return this.useRingDispatchChannel;
+    }
+
+    /**
+     * Enables the lock free {@link RingMessageDispatchChannel}, or its
+     * priority variant, for handing messages from the transport thread to
+     * sessions and consumers in place of the channels guarded by a monitor.
+     *
+     * @param useRingDispatchChannel the useRingDispatchChannel to set
+     */
+    public void setUseRingDispatchChannel(boolean useRingDispatchChannel) {
+        this.useRingDispatchChannel = useRingDispatchChannel;
+    }
+
     /**
      * Cleans up this connection so that it's state is as if the connection was
      * just created. This allows the Resource Adapter to clean up a connection
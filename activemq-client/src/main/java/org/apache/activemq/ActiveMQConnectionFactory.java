@@ -140,6 +140,7 @@ public class ActiveMQConnectionFactory extends JNDIBaseStorable implements Conne
         redeliveryPolicyMap.setDefaultEntry(new RedeliveryPolicy());
     }
     private BlobTransferPolicy blobTransferPolicy = new BlobTransferPolicy();
+    private AckCoalescingPolicy ackCoalescingPolicy;
     private MessageTransformer transformer;
 
     private boolean disableTimeStampsByDefault;
@@ -167,10 +168,12 @@ public class ActiveMQConnectionFactory extends JNDIBaseStorable implements Conne
     private int auditDepth = ActiveMQMessageAudit.DEFAULT_WINDOW_SIZE;
     private int auditMaximumProducerNumber = ActiveMQMessageAudit.MAXIMUM_PRODUCER_COUNT;
     private boolean useDedicatedTaskRunner;
+    private boolean useVirtualThreads;
     private long consumerFailoverRedeliveryWaitPeriod = 0;
     private boolean checkForDuplicates = true;
     private ClientInternalExceptionListener clientInternalExceptionListener;
     private boolean messagePrioritySupported = false;
+    private boolean useRingDispatchChannel = false;
     private boolean transactedIndividualAck = false;
     private boolean nonBlockingRedelivery = false;
     private int maxThreadPoolSize = ActiveMQConnection.DEFAULT_THREAD_POOL_SIZE;
@@ -383,6 +386,7 @@ public class ActiveMQConnectionFactory extends JNDIBaseStorable implements Conne
 
     protected void configureConnection(ActiveMQConnection connection) throws JMSException {
         connection.setPrefetchPolicy(getPrefetchPolicy());
+        connection.setAckCoalescingPolicy(getAckCoalescingPolicy());
         connection.setDisableTimeStampsByDefault(isDisableTimeStampsByDefault());
         connection.setOptimizedMessageDispatch(isOptimizedMessageDispatch());
         connection.setCopyMessageOnSend(isCopyMessageOnSend());
@@ -409,9 +413,11 @@ public class ActiveMQConnectionFactory extends JNDIBaseStorable implements Conne
         connection.setAuditDepth(getAuditDepth());
         connection.setAuditMaximumProducerNumber(getAuditMaximumProducerNumber());
         connection.setUseDedicatedTaskRunner(isUseDedicatedTaskRunner());
+        connection.setUseVirtualThreads(isUseVirtualThreads());
         connection.setConsumerFailoverRedeliveryWaitPeriod(getConsumerFailoverRedeliveryWaitPeriod());
         connection.setCheckForDuplicates(isCheckForDuplicates());
         connection.setMessagePrioritySupported(isMessagePrioritySupported());
+        connection.setUseRingDispatchChannel(isUseRingDispatchChannel());
         connection.setTransactedIndividualAck(isTransactedIndividualAck());
         connection.setNonBlockingRedelivery(isNonBlockingRedelivery());
         connection.setMaxThreadPoolSize(getMaxThreadPoolSize());
@@ -575,6 +581,18 @@ public class ActiveMQConnectionFactory extends JNDIBaseStorable implements Conne
         this.prefetchPolicy = prefetchPolicy;
     }
 
+    public AckCoalescingPolicy getAckCoalescingPolicy() {
+        return ackCoalescingPolicy;
+    }
+
+    /**
+     * Sets the policy by which consumers created by this connection coalesce
+     * their acknowledgements, none by default.
+     */
+    public void setAckCoalescingPolicy(AckCoalescingPolicy ackCoalescingPolicy) {
+        this.ackCoalescingPolicy = ackCoalescingPolicy;
+    }
+
     public boolean isUseAsyncSend() {
         return useAsyncSend;
     }
@@ -735,6 +753,25 @@ public class ActiveMQConnectionFactory extends JNDIBaseStorable implements Conne
         this.messagePrioritySupported = messagePrioritySupported;
     }
 
+    /**
+     * @return true if messages are handed to sessions and consumers through
+     *         lock free ring channels
+     */
+    public boolean isUseRingDispatchChannel() {
+        return this.useRingDispatchChannel;
+    }
+
+    /**
+     * Enables the lock free {@link RingMessageDispatchChannel}, or its
+     * priority variant, for handing messages from the transport thread to
+     * sessions and consumers in place of the channels guarded by a monitor.
+     *
+     * @param useRingDispatchChannel the useRingDispatchChannel to set
+     */
+    public void setUseRingDispatchChannel(boolean useRingDispatchChannel) {
+        this.useRingDispatchChannel = useRingDispatchChannel;
+    }
+
 
     /**
      * Sets the transformer used to transform messages before they are sent on
@@ -786,6 +823,12 @@ public class ActiveMQConnectionFactory extends JNDIBaseStorable implements Conne
             rc = true;
         }
 
+        AckCoalescingPolicy ackCoalescingPolicy = new AckCoalescingPolicy();
+        if (IntrospectionSupport.setProperties(ackCoalescingPolicy, properties, "ackCoalescingPolicy.")) {
+            setAckCoalescingPolicy(ackCoalescingPolicy);
+            rc = true;
+        }
+
         rc |= IntrospectionSupport.setProperties(this, properties);
 
         return rc;
@@ -807,6 +850,9 @@ public class ActiveMQConnectionFactory extends JNDIBaseStorable implements Conne
         IntrospectionSupport.getProperties(getPrefetchPolicy(), props, "prefetchPolicy.");
         IntrospectionSupport.getProperties(getRedeliveryPolicy(), props, "redeliveryPolicy.");
         IntrospectionSupport.getProperties(getBlobTransferPolicy(), props, "blobTransferPolicy.");
+        if (getAckCoalescingPolicy() != null) {
+            IntrospectionSupport.getProperties(getAckCoalescingPolicy(), props, "ackCoalescingPolicy.");
+        }
 
         props.setProperty("copyMessageOnSend", Boolean.toString(isCopyMessageOnSend()));
         props.setProperty("disableTimeStampsByDefault", Boolean.toString(isDisableTimeStampsByDefault()));
@@ -839,9 +885,11 @@ public class ActiveMQConnectionFactory extends JNDIBaseStorable implements Conne
         props.setProperty("auditMaximumProducerNumber", Integer.toString(getAuditMaximumProducerNumber()));
         props.setProperty("checkForDuplicates", Boolean.toString(isCheckForDuplicates()));
         props.setProperty("messagePrioritySupported", Boolean.toString(isMessagePrioritySupported()));
+        props.setProperty("useRingDispatchChannel", Boolean.toString(isUseRingDispatchChannel()));
         props.setProperty("transactedIndividualAck", Boolean.toString(isTransactedIndividualAck()));
         props.setProperty("nonBlockingRedelivery", Boolean.toString(isNonBlockingRedelivery()));
         props.setProperty("maxThreadPoolSize", Integer.toString(getMaxThreadPoolSize()));
+        props.setProperty("useVirtualThreads", Boolean.toString(isUseVirtualThreads()));
         props.setProperty("nestedMapAndListEnabled", Boolean.toString(isNestedMapAndListEnabled()));
         props.setProperty("consumerFailoverRedeliveryWaitPeriod", Long.toString(getConsumerFailoverRedeliveryWaitPeriod()));
         props.setProperty("rmIdFromConnectionId", Boolean.toString(isRmIdFromConnectionId()));
@@ -1119,6 +1167,23 @@ public class ActiveMQConnectionFactory extends JNDIBaseStorable implements Conne
         return useDedicatedTaskRunner;
     }
 
+    public boolean isUseVirtualThreads() {
+        return useVirtualThreads;
+    }
+
+    /**
+     * Runs the asynchronous dispatch of sessions, and so the invocation of
+     * their MessageListeners, on virtual threads when the JVM has them (Java
+     * 21 on), rather than on dedicated or pooled platform threads. A
+     * connection can then have many thousands of sessions without a platform
+     * thread each. Ignored, with a warning, on older JVMs.
+     *
+     * @param useVirtualThreads the useVirtualThreads to set
+     */
+    public void setUseVirtualThreads(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+    }
+
     public void setConsumerFailoverRedeliveryWaitPeriod(long consumerFailoverRedeliveryWaitPeriod) {
         this.consumerFailoverRedeliveryWaitPeriod = consumerFailoverRedeliveryWaitPeriod;
     }
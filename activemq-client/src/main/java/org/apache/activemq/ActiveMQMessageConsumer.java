@@ -17,6 +17,7 @@
 package org.apache.activemq;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -134,8 +135,9 @@ public class ActiveMQMessageConsumer implements MessageAvailableConsumer, StatsC
 
     // The are the messages that were delivered to the consumer but that have
     // not been acknowledged. It's kept in reverse order since we
-    // Always walk list in reverse order.
-    protected final LinkedList<MessageDispatch> deliveredMessages = new LinkedList<MessageDispatch>();
+    // Always walk list in reverse order. An array backed ring, so tracking a
+    // delivery allocates nothing.
+    protected final ArrayDeque<MessageDispatch> deliveredMessages = new ArrayDeque<MessageDispatch>();
     // track duplicate deliveries in a transaction such that the tx integrity can be validated
     private PreviouslyDeliveredMap<MessageId, PreviouslyDelivered> previouslyDeliveredMessages;
     private int deliveredCounter;
@@ -169,6 +171,17 @@ public class ActiveMQMessageConsumer implements MessageAvailableConsumer, StatsC
     private long optimizeAcknowledgeTimeOut = 0;
     private long optimizedAckScheduledAckInterval = 0;
     private Runnable optimizedAckTask;
+    private AckCoalescingPolicy ackCoalescingPolicy;
+    // the number of messages whose acknowledgement is held back, the oldest
+    // of the delivered messages or, with DUPS_OK on a topic, those of the
+    // pending ack, with their size and the time the first was held back
+    private int coalescedAckCount;
+    private long coalescedAckBytes;
+    private long coalescedAckSince;
+    // sends the acknowledgements held back too long, scheduled only while
+    // some are held
+    private Runnable coalescedAckTask;
+    private boolean coalescedAckScheduled;
     private long failoverRedeliveryWaitPeriod = 0;
     private boolean transactedIndividualAck = false;
     private boolean nonBlockingRedelivery = false;
@@ -217,7 +230,10 @@ public class ActiveMQMessageConsumer implements MessageAvailableConsumer, StatsC
                 throw new JMSException("Cannot have a prefetch size less than zero");
             }
         }
-        if (session.connection.isMessagePrioritySupported()) {
+        if (session.connection.isUseRingDispatchChannel()) {
+            this.unconsumedMessages = session.connection.isMessagePrioritySupported() ?
+                new PriorityRingMessageDispatchChannel() : new RingMessageDispatchChannel();
+        } else if (session.connection.isMessagePrioritySupported()) {
             this.unconsumedMessages = new SimplePriorityMessageDispatchChannel();
         }else {
             this.unconsumedMessages = new FifoMessageDispatchChannel();
@@ -281,6 +297,11 @@ public class ActiveMQMessageConsumer implements MessageAvailableConsumer, StatsC
             setOptimizedAckScheduledAckInterval(session.connection.getOptimizedAckScheduledAckInterval());
         }
 
+        if (session.connection.getAckCoalescingPolicy() != null && !this.optimizeAcknowledge
+                && !info.isBrowser() && !session.isTransacted() && info.getPrefetchSize() > 0) {
+            setAckCoalescingPolicy(session.connection.getAckCoalescingPolicy());
+        }
+
         this.info.setOptimizedAcknowledge(this.optimizeAcknowledge);
         this.failoverRedeliveryWaitPeriod = session.connection.getConsumerFailoverRedeliveryWaitPeriod();
         this.nonBlockingRedelivery = session.connection.isNonBlockingRedelivery();
@@ -783,6 +804,10 @@ public class ActiveMQMessageConsumer implements MessageAvailableConsumer, StatsC
 
                     // Wake up any blockers and allow them to recheck state.
                     unconsumedMessages.getMutex().notifyAll();
+                    if (unconsumedMessages instanceof RingMessageDispatchChannel) {
+                        // whose blockers are parked rather than waiting on the mutex
+                        ((RingMessageDispatchChannel) unconsumedMessages).signal();
+                    }
                 }
             }
             clearDeliveredList();
@@ -793,7 +818,14 @@ public class ActiveMQMessageConsumer implements MessageAvailableConsumer, StatsC
         MessageAck ack = null;
         if (deliveryingAcknowledgements.compareAndSet(false, true)) {
             synchronized(deliveredMessages) {
-                if (isAutoAcknowledgeEach()) {
+                if (ackCoalescingPolicy != null && !isAutoAcknowledgeBatch()) {
+                    // only the messages consumed, not one a listener is still on
+                    ack = makeAckForCoalescedMessages();
+                    if (ack == null && isAutoAcknowledgeEach()) {
+                        ack = pendingAck;
+                        pendingAck = null;
+                    }
+                } else if (isAutoAcknowledgeEach()) {
                     ack = makeAckForAllDeliveredMessages(MessageAck.STANDARD_ACK_TYPE);
                     if (ack != null) {
                         deliveredMessages.clear();
@@ -805,6 +837,12 @@ public class ActiveMQMessageConsumer implements MessageAvailableConsumer, StatsC
                 } else if (pendingAck != null && pendingAck.isStandardAck()) {
                     ack = pendingAck;
                     pendingAck = null;
+                    if (ackCoalescingPolicy != null) {
+                        // the held back ack of a DUPS_OK topic consumer
+                        deliveredCounter = 0;
+                        additionalWindowSize = 0;
+                        resetCoalescedAcks();
+                    }
                 }
             }
             if (ack != null) {
@@ -867,6 +905,7 @@ public class ActiveMQMessageConsumer implements MessageAvailableConsumer, StatsC
             if (!session.isTransacted()) {
                 synchronized(deliveredMessages) {
                     deliveredMessages.clear();
+                    resetCoalescedAcks();
                 }
             }
             unconsumedMessages.close();
@@ -966,6 +1005,17 @@ public class ActiveMQMessageConsumer implements MessageAvailableConsumer, StatsC
             stats.onMessage();
             if (session.getTransacted()) {
                 // Do nothing.
+            } else if (isAutoAcknowledgeEach() && ackCoalescingPolicy != null) {
+                synchronized (deliveredMessages) {
+                    if (!deliveredMessages.isEmpty()) {
+                        holdBackAck(md);
+                        // all but the messages listeners are still on are consumed
+                        coalescedAckCount = deliveredMessages.size();
+                        if (isCoalescedAckDue()) {
+                            session.sendAck(makeAckForCoalescedMessages());
+                        }
+                    }
+                }
             } else if (isAutoAcknowledgeEach()) {
                 if (deliveryingAcknowledgements.compareAndSet(false, true)) {
                     synchronized (deliveredMessages) {
@@ -975,7 +1025,7 @@ public class ActiveMQMessageConsumer implements MessageAvailableConsumer, StatsC
 
                                 // AMQ-3956 evaluate both expired and normal msgs as
                                 // otherwise consumer may get stalled
-                                if (ackCounter + deliveredCounter >= (info.getPrefetchSize() * .65) || (optimizeAcknowledgeTimeOut > 0 && System.currentTimeMillis() >= (optimizeAckTimestamp + optimizeAcknowledgeTimeOut))) {
+                                if (ackCounter + deliveredCounter >= (info.getCurrentPrefetchSize() * .65) || (optimizeAcknowledgeTimeOut > 0 && System.currentTimeMillis() >= (optimizeAckTimestamp + optimizeAcknowledgeTimeOut))) {
                                     MessageAck ack = makeAckForAllDeliveredMessages(MessageAck.STANDARD_ACK_TYPE);
                                     if (ack != null) {
                                         deliveredMessages.clear();
@@ -1043,6 +1093,64 @@ public class ActiveMQMessageConsumer implements MessageAvailableConsumer, StatsC
         }
     }
 
+    /**
+     * Creates a MessageAck for the delivered messages whose acknowledgement is
+     * held back, and removes them from deliveredMessages.
+     * Caller should hold the lock for deliveredMessages.
+     *
+     * @return <code>null</code> if nothing to ack.
+     */
+    private MessageAck makeAckForCoalescedMessages() {
+        int count = Math.min(coalescedAckCount, deliveredMessages.size());
+        if (count == 0) {
+            return null;
+        }
+        MessageDispatch first = deliveredMessages.removeLast();
+        MessageDispatch last = first;
+        for (int i = 1; i < count; i++) {
+            last = deliveredMessages.removeLast();
+        }
+        MessageAck ack = new MessageAck(last, MessageAck.STANDARD_ACK_TYPE, count);
+        ack.setFirstMessageId(first.getMessage().getMessageId());
+        if (session.isClientAcknowledge()) {
+            deliveredCounter = Math.max(0, deliveredCounter - count);
+            additionalWindowSize = Math.max(0, additionalWindowSize - count);
+        }
+        resetCoalescedAcks();
+        return ack;
+    }
+
+    // called with deliveredMessages locked
+    private void holdBackAck(MessageDispatch md) throws JMSException {
+        if (coalescedAckSince == 0) {
+            coalescedAckSince = System.currentTimeMillis();
+            scheduleCoalescedAcks();
+        }
+        coalescedAckBytes += md.getMessage().getSize();
+    }
+
+    // called with deliveredMessages locked
+    private void scheduleCoalescedAcks() throws JMSException {
+        if (coalescedAckTask != null && !coalescedAckScheduled) {
+            long delay = coalescedAckSince + ackCoalescingPolicy.getMaximumDelay() - System.currentTimeMillis();
+            session.getScheduler().executeAfterDelay(coalescedAckTask, Math.max(1, delay));
+            coalescedAckScheduled = true;
+        }
+    }
+
+    // called with deliveredMessages locked
+    private boolean isCoalescedAckDue() {
+        return coalescedAckCount > 0
+            && ackCoalescingPolicy.isDue(coalescedAckCount, coalescedAckBytes, coalescedAckSince, info.getCurrentPrefetchSize());
+    }
+
+    // called with deliveredMessages locked
+    private void resetCoalescedAcks() {
+        coalescedAckCount = 0;
+        coalescedAckBytes = 0;
+        coalescedAckSince = 0;
+    }
+
     private void ackLater(MessageDispatch md, byte ackType) throws JMSException {
 
         // Don't acknowledge now, but we may need to let the broker know the
@@ -1071,14 +1179,21 @@ public class ActiveMQMessageConsumer implements MessageAvailableConsumer, StatsC
                     LOG.debug("dropping old pending ack {}, new pending: {}", oldPendingAck, pendingAck);
                 }
             }
+            boolean coalescedAckDue = false;
+            if (ackCoalescingPolicy != null && pendingAck.isStandardAck()) {
+                holdBackAck(md);
+                coalescedAckCount = deliveredCounter;
+                coalescedAckDue = isCoalescedAckDue();
+            }
             // AMQ-3956 evaluate both expired and normal msgs as
             // otherwise consumer may get stalled
-            if ((0.5 * info.getPrefetchSize()) <= (deliveredCounter + ackCounter - additionalWindowSize)) {
+            if (coalescedAckDue || (0.5 * info.getCurrentPrefetchSize()) <= (deliveredCounter + ackCounter - additionalWindowSize)) {
                 LOG.debug("ackLater: sending: {}", pendingAck);
                 session.sendAck(pendingAck);
                 pendingAck=null;
                 deliveredCounter = 0;
                 additionalWindowSize = 0;
+                resetCoalescedAcks();
             }
         }
     }
@@ -1127,6 +1242,24 @@ public class ActiveMQMessageConsumer implements MessageAvailableConsumer, StatsC
         clearDeliveredList();
         waitForRedeliveries();
         synchronized(deliveredMessages) {
+            if (ackCoalescingPolicy != null && !session.getTransacted()) {
+                // hold back the acknowledgement of the messages delivered
+                // since the last call, the oldest messages being held already
+                int acknowledged = deliveredMessages.size() - coalescedAckCount;
+                if (acknowledged <= 0) {
+                    return; // no msgs
+                }
+                Iterator<MessageDispatch> newest = deliveredMessages.iterator();
+                for (int i = 0; i < acknowledged; i++) {
+                    holdBackAck(newest.next());
+                }
+                coalescedAckCount = deliveredMessages.size();
+                if (isCoalescedAckDue()) {
+                    session.sendAck(makeAckForCoalescedMessages());
+                }
+                return;
+            }
+
             // Acknowledge all messages so far.
             MessageAck ack = makeAckForAllDeliveredMessages(MessageAck.STANDARD_ACK_TYPE);
             if (ack == null) {
@@ -1246,6 +1379,11 @@ public class ActiveMQMessageConsumer implements MessageAvailableConsumer, StatsC
             }
             synchronized(deliveredMessages) {
                 rollbackPreviouslyDeliveredAndNotRedelivered();
+                // the messages consumed are not redelivered, acknowledge them first
+                MessageAck coalescedAck = makeAckForCoalescedMessages();
+                if (coalescedAck != null) {
+                    session.sendAck(coalescedAck);
+                }
                 if (deliveredMessages.isEmpty()) {
                     return;
                 }
@@ -1546,6 +1684,7 @@ public class ActiveMQMessageConsumer implements MessageAvailableConsumer, StatsC
                             LOG.debug("{} clearing delivered list ({}) on transport interrupt", getConsumerId(), deliveredMessages.size());
                             deliveredMessages.clear();
                             pendingAck = null;
+                            resetCoalescedAcks();
                         }
                     }
                     clearDeliveredList = false;
@@ -1677,6 +1816,53 @@ public class ActiveMQMessageConsumer implements MessageAvailableConsumer, StatsC
         }
     }
 
+    /**
+     * @return the policy by which the consumer coalesces its acknowledgements,
+     *         null if it does not
+     */
+    public AckCoalescingPolicy getAckCoalescingPolicy() {
+        return ackCoalescingPolicy;
+    }
+
+    protected void setAckCoalescingPolicy(AckCoalescingPolicy ackCoalescingPolicy) throws JMSException {
+        if (this.ackCoalescingPolicy != null && ackCoalescingPolicy == null) {
+            deliverAcks();
+        }
+        this.ackCoalescingPolicy = ackCoalescingPolicy;
+
+        // sends the acknowledgements held back too long while no more
+        // messages are consumed, once their delay is up
+        if (ackCoalescingPolicy != null && ackCoalescingPolicy.getMaximumDelay() > 0) {
+            this.coalescedAckTask = new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        boolean due;
+                        synchronized (deliveredMessages) {
+                            coalescedAckScheduled = false;
+                            due = getAckCoalescingPolicy() != null && isCoalescedAckDue();
+                        }
+                        if (due && !unconsumedMessages.isClosed()) {
+                            deliverAcks();
+                        }
+                        synchronized (deliveredMessages) {
+                            // held back after the task was scheduled, or still
+                            // held while other acks were being delivered
+                            if (getAckCoalescingPolicy() != null && coalescedAckSince != 0 && !unconsumedMessages.isClosed()) {
+                                scheduleCoalescedAcks();
+                            }
+                        }
+                    } catch (Exception e) {
+                        LOG.debug("Coalesced Ack Task caught exception during ack", e);
+                    }
+                }
+            };
+        } else {
+            this.coalescedAckTask = null;
+        }
+    }
+
     public boolean hasMessageListener() {
         return messageListener.get() != null;
     }
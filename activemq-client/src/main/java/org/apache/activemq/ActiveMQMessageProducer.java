@@ -17,8 +17,12 @@
 package org.apache.activemq;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import javax.jms.Destination;
 import javax.jms.IllegalStateException;
@@ -27,14 +31,18 @@ import javax.jms.JMSException;
 import javax.jms.Message;
 
 import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.command.KeepAliveInfo;
 import org.apache.activemq.command.ProducerAck;
 import org.apache.activemq.command.ProducerId;
 import org.apache.activemq.command.ProducerInfo;
 import org.apache.activemq.management.JMSProducerStatsImpl;
 import org.apache.activemq.management.StatsCapable;
 import org.apache.activemq.management.StatsImpl;
+import org.apache.activemq.transport.RequestTimedOutIOException;
+import org.apache.activemq.transport.tcp.TcpTransport;
 import org.apache.activemq.usage.MemoryUsage;
 import org.apache.activemq.util.IntrospectionSupport;
+import org.apache.activemq.util.JMSExceptionSupport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -290,6 +298,111 @@ public class ActiveMQMessageProducer extends ActiveMQMessageProducerSupport impl
         stats.onMessage();
     }
 
+    /**
+     * Sends a batch of messages to the destination of the producer, with the
+     * default delivery mode, priority and time to live of the producer.
+     *
+     * @see #send(Destination, List)
+     */
+    public void send(List<? extends Message> messages) throws JMSException {
+        send(this.getDestination(), messages);
+    }
+
+    /**
+     * Sends a batch of messages without waiting for the broker between them.
+     * Every message asks for a response, the messages are written one after
+     * the other, on TCP with a single flush, and the call returns once the
+     * broker has answered for all of them, so a batch of synchronous sends
+     * costs about one round trip rather than one per message.
+     *
+     * @param destination the destination to send the messages to
+     * @param messages the messages, sent in order
+     * @throws BatchSendException if any message could not be sent, with the
+     *         outcome of each message of the batch
+     * @throws JMSException if the producer is closed or the wait for the
+     *         responses is interrupted
+     */
+    public void send(Destination destination, List<? extends Message> messages) throws JMSException {
+        checkClosed();
+        final int count = messages.size();
+        if (count == 0) {
+            return;
+        }
+        final AtomicReferenceArray<Object> outcomes = new AtomicReferenceArray<Object>(count);
+        final CountDownLatch pending = new CountDownLatch(count);
+
+        TcpTransport tcpTransport = count > 1 ? session.connection.getTransport().narrow(TcpTransport.class) : null;
+        boolean flushed = true;
+        try {
+            for (int i = 0; i < count; i++) {
+                final int index = i;
+                boolean last = i == count - 1;
+                if (tcpTransport != null) {
+                    tcpTransport.deferFlush(!last);
+                }
+                try {
+                    send(destination, messages.get(i), this.defaultDeliveryMode, this.defaultPriority, this.defaultTimeToLive, new AsyncCallback() {
+                        @Override
+                        public void onSuccess() {
+                            if (outcomes.compareAndSet(index, null, Boolean.TRUE)) {
+                                pending.countDown();
+                            }
+                        }
+
+                        @Override
+                        public void onException(JMSException exception) {
+                            if (outcomes.compareAndSet(index, null, exception)) {
+                                pending.countDown();
+                            }
+                        }
+                    });
+                    flushed = last;
+                } catch (JMSException e) {
+                    if (outcomes.compareAndSet(index, null, e)) {
+                        pending.countDown();
+                    }
+                }
+            }
+        } finally {
+            if (tcpTransport != null) {
+                tcpTransport.deferFlush(false);
+            }
+        }
+        if (!flushed && tcpTransport != null) {
+            // the last message failed before it was written, flush the others
+            try {
+                session.connection.asyncSendPacket(new KeepAliveInfo());
+            } catch (JMSException e) {
+                LOG.debug("Could not flush the batch sent by {}", info.getProducerId(), e);
+            }
+        }
+
+        try {
+            if (sendTimeout > 0) {
+                pending.await(sendTimeout, TimeUnit.MILLISECONDS);
+            } else {
+                pending.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JMSException("Send aborted due to thread interrupt.");
+        }
+
+        JMSException[] failures = new JMSException[count];
+        boolean failed = false;
+        for (int i = 0; i < count; i++) {
+            if (outcomes.get(i) == null && outcomes.compareAndSet(i, null, Boolean.FALSE)) {
+                failures[i] = JMSExceptionSupport.create(new RequestTimedOutIOException());
+            } else if (outcomes.get(i) instanceof JMSException) {
+                failures[i] = (JMSException) outcomes.get(i);
+            }
+            failed |= failures[i] != null;
+        }
+        if (failed) {
+            throw new BatchSendException(failures);
+        }
+    }
+
     public MessageTransformer getTransformer() {
         return transformer;
     }
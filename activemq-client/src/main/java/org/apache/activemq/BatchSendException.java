@@ -0,0 +1,83 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq;
+
+import javax.jms.JMSException;
+
+/**
+ * Thrown by a batch send of {@link ActiveMQMessageProducer} when one or more
+ * of its messages could not be sent, with the outcome of each message of the
+ * batch. The messages without a failure were accepted by the broker.
+ */
+public class BatchSendException extends JMSException {
+
+    private static final long serialVersionUID = -3925640184519871633L;
+
+    private final JMSException[] failures;
+
+    public BatchSendException(JMSException[] failures) {
+        super(describe(failures));
+        this.failures = failures;
+        for (JMSException failure : failures) {
+            if (failure != null) {
+                initCause(failure);
+                setLinkedException(failure);
+                break;
+            }
+        }
+    }
+
+    /**
+     * @return the failure of each message of the batch, in the order the
+     *         messages were given, null for the messages that were sent
+     */
+    public JMSException[] getFailures() {
+        return failures.clone();
+    }
+
+    /**
+     * @return the failure of the message at the index, or null if it was sent
+     */
+    public JMSException getFailure(int index) {
+        return failures[index];
+    }
+
+    public int getFailureCount() {
+        int count = 0;
+        for (JMSException failure : failures) {
+            if (failure != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static String describe(JMSException[] failures) {
+        int count = 0;
+        int first = -1;
+        for (int i = 0; i < failures.length; i++) {
+            if (failures[i] != null) {
+                if (first < 0) {
+                    first = i;
+                }
+                count++;
+            }
+        }
+        return count + " of " + failures.length + " messages could not be sent"
+            + (first < 0 ? "" : ", the first at " + first + ": " + failures[first].getMessage());
+    }
+}
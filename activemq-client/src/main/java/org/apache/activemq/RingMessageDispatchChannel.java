@@ -0,0 +1,338 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.activemq.command.MessageDispatch;
+
+/**
+ * A {@link MessageDispatchChannel} whose enqueue takes no lock. Messages are
+ * written to ring segments, arrays that producers claim slots of with a
+ * single atomic increment, and waiting consumers are unparked rather than
+ * notified, so no node is allocated per message.
+ *
+ * Everything else, taking messages, putting them back with
+ * {@link #enqueueFirst(MessageDispatch)} and the state changes, is done under
+ * the mutex, which may be held by one thread at a time as with the other
+ * channels. {@link ActiveMQMessageConsumer} still enqueues under the mutex,
+ * to order the dispatch against close and its duplicate checks, so the
+ * transport thread can be held up by a thread taking a message, but only
+ * for the take itself: a blocking {@link #dequeue(long)} waits for a message
+ * without holding the mutex. Any number of threads may wait, a message wakes
+ * them all and those that find nothing wait again. As they do not wait on
+ * the mutex, notifying it does not wake them, {@link #signal()} does.
+ */
+public class RingMessageDispatchChannel implements MessageDispatchChannel {
+
+    private static final int SEGMENT_SIZE = 256;
+
+    private final Object mutex = new Object();
+    private final Lane[] lanes;
+    private final AtomicInteger size = new AtomicInteger();
+    private final ConcurrentLinkedQueue<Thread> waiters = new ConcurrentLinkedQueue<Thread>();
+    private volatile boolean closed;
+    private volatile boolean running;
+
+    public RingMessageDispatchChannel() {
+        this(1);
+    }
+
+    protected RingMessageDispatchChannel(int laneCount) {
+        this.lanes = new Lane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new Lane();
+        }
+    }
+
+    @Override
+    public void enqueue(MessageDispatch message) {
+        lanes[getLane(message)].offer(message);
+        size.incrementAndGet();
+        signal();
+    }
+
+    @Override
+    public void enqueueFirst(MessageDispatch message) {
+        synchronized (mutex) {
+            lanes[getLane(message)].front.addFirst(message);
+            size.incrementAndGet();
+        }
+        signal();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size.get() == 0;
+    }
+
+    @Override
+    public MessageDispatch dequeue(long timeout) throws InterruptedException {
+        long deadline = timeout > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout) : 0;
+        while (true) {
+            synchronized (mutex) {
+                MessageDispatch answer = dequeueNoWait();
+                if (answer != null || closed || timeout == 0) {
+                    return answer;
+                }
+                // registered before looking again, so an enqueue after the
+                // look sees the waiter and unparks it
+                waiters.add(Thread.currentThread());
+                answer = dequeueNoWait();
+                if (answer != null) {
+                    waiters.remove(Thread.currentThread());
+                    return answer;
+                }
+            }
+            try {
+                if (timeout < 0) {
+                    LockSupport.park(this);
+                } else {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining > 0) {
+                        LockSupport.parkNanos(this, remaining);
+                    }
+                }
+            } finally {
+                waiters.remove(Thread.currentThread());
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (timeout > 0 && (!running || deadline - System.nanoTime() <= 0)) {
+                // like the other channels, a timed wait ends when stopped
+                return dequeueNoWait();
+            }
+        }
+    }
+
+    @Override
+    public MessageDispatch dequeueNoWait() {
+        synchronized (mutex) {
+            if (closed || !running) {
+                return null;
+            }
+            for (Lane lane : lanes) {
+                MessageDispatch answer = lane.poll();
+                if (answer != null) {
+                    size.decrementAndGet();
+                    return answer;
+                }
+            }
+            return null;
+        }
+    }
+
+    @Override
+    public MessageDispatch peek() {
+        synchronized (mutex) {
+            if (closed || !running) {
+                return null;
+            }
+            for (Lane lane : lanes) {
+                MessageDispatch answer = lane.peek();
+                if (answer != null) {
+                    return answer;
+                }
+            }
+            return null;
+        }
+    }
+
+    @Override
+    public void start() {
+        synchronized (mutex) {
+            running = true;
+            mutex.notifyAll();
+        }
+        signal();
+    }
+
+    @Override
+    public void stop() {
+        synchronized (mutex) {
+            running = false;
+            mutex.notifyAll();
+        }
+        signal();
+    }
+
+    @Override
+    public void close() {
+        synchronized (mutex) {
+            if (!closed) {
+                running = false;
+                closed = true;
+            }
+            mutex.notifyAll();
+        }
+        signal();
+    }
+
+    @Override
+    public void clear() {
+        synchronized (mutex) {
+            for (Lane lane : lanes) {
+                while (lane.poll() != null) {
+                    size.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public Object getMutex() {
+        return mutex;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public List<MessageDispatch> removeAll() {
+        synchronized (mutex) {
+            ArrayList<MessageDispatch> rc = new ArrayList<MessageDispatch>(size.get());
+            for (Lane lane : lanes) {
+                MessageDispatch md;
+                while ((md = lane.poll()) != null) {
+                    size.decrementAndGet();
+                    rc.add(md);
+                }
+            }
+            return rc;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RingMessageDispatchChannel[size=" + size.get() + ", running=" + running + ", closed=" + closed + "]";
+    }
+
+    /**
+     * @return the lane of the message, lanes are taken from in order
+     */
+    protected int getLane(MessageDispatch message) {
+        return 0;
+    }
+
+    /**
+     * Wakes the threads waiting in {@link #dequeue(long)} to look again.
+     */
+    void signal() {
+        if (!waiters.isEmpty()) {
+            for (Thread thread : waiters) {
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+
+    /**
+     * Messages put back by the consumer, then the ring segments producers
+     * append to, oldest first.
+     */
+    private static final class Lane {
+
+        // guarded by the mutex
+        final ArrayDeque<MessageDispatch> front = new ArrayDeque<MessageDispatch>();
+        Segment head = new Segment();
+
+        final AtomicReference<Segment> tail = new AtomicReference<Segment>(head);
+
+        void offer(MessageDispatch message) {
+            Segment segment = tail.get();
+            while (true) {
+                int index = segment.claimed.getAndIncrement();
+                if (index < SEGMENT_SIZE) {
+                    segment.slots.set(index, message);
+                    return;
+                }
+                Segment next = segment.next.get();
+                if (next == null) {
+                    Segment created = new Segment();
+                    next = segment.next.compareAndSet(null, created) ? created : segment.next.get();
+                }
+                tail.compareAndSet(segment, next);
+                segment = next;
+            }
+        }
+
+        // called with the mutex held
+        MessageDispatch poll() {
+            MessageDispatch answer = front.pollFirst();
+            if (answer == null && advance()) {
+                answer = head.slots.get(head.consumed);
+                if (answer != null) {
+                    head.slots.set(head.consumed++, null);
+                }
+            }
+            return answer;
+        }
+
+        // called with the mutex held
+        MessageDispatch peek() {
+            MessageDispatch answer = front.peekFirst();
+            if (answer == null && advance()) {
+                answer = head.slots.get(head.consumed);
+            }
+            return answer;
+        }
+
+        /**
+         * Moves on from a fully consumed segment.
+         *
+         * @return false if there is no segment to read from
+         */
+        private boolean advance() {
+            if (head.consumed == SEGMENT_SIZE) {
+                Segment next = head.next.get();
+                if (next == null) {
+                    return false;
+                }
+                head = next;
+            }
+            return true;
+        }
+    }
+
+    private static final class Segment {
+        final AtomicReferenceArray<MessageDispatch> slots = new AtomicReferenceArray<MessageDispatch>(SEGMENT_SIZE);
+        final AtomicInteger claimed = new AtomicInteger();
+        final AtomicReference<Segment> next = new AtomicReference<Segment>();
+        // guarded by the mutex
+        int consumed;
+    }
+}
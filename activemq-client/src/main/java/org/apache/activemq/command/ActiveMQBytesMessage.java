@@ -20,9 +20,8 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
 import java.util.zip.Deflater;
 import java.util.zip.Inflater;
 
@@ -99,6 +98,9 @@ public class ActiveMQBytesMessage extends ActiveMQMessage implements BytesMessag
     protected transient ByteArrayOutputStream bytesOut;
     protected transient DataInputStream dataIn;
     protected transient int length;
+    // the body being read, decompressed if need be, and the stream over it
+    protected transient ByteSequence bodyIn;
+    protected transient ByteArrayInputStream bytesIn;
 
     @Override
     public Message copy() {
@@ -113,6 +115,8 @@ public class ActiveMQBytesMessage extends ActiveMQMessage implements BytesMessag
         copy.dataOut = null;
         copy.bytesOut = null;
         copy.dataIn = null;
+        copy.bodyIn = null;
+        copy.bytesIn = null;
     }
 
     @Override
@@ -183,6 +187,8 @@ public class ActiveMQBytesMessage extends ActiveMQMessage implements BytesMessag
         this.dataOut = null;
         this.dataIn = null;
         this.bytesOut = null;
+        this.bodyIn = null;
+        this.bytesIn = null;
     }
 
     /**
@@ -535,6 +541,62 @@ public class ActiveMQBytesMessage extends ActiveMQMessage implements BytesMessag
         }
     }
 
+    /**
+     * Gets the message body as a read-only buffer over the bytes the message
+     * was received into, without copying them, which spares consumers of large
+     * payloads the copy of {@link #readBytes(byte[])}. The buffer holds the
+     * entire body, regardless of where the pointer for reading the message is
+     * currently located, and reading it does not move that pointer.
+     * <P>
+     * The buffer shares the body of this message and of the copies made of it,
+     * it stays valid for as long as it is referenced and is released with it;
+     * there is nothing to hand back once the message is acknowledged. A
+     * compressed body is decompressed once, and the buffer is over the
+     * decompressed bytes.
+     *
+     * @return the message body
+     * @throws JMSException if the JMS provider fails to read the message due to
+     *                 some internal error.
+     * @throws MessageNotReadableException if the message is in write-only mode.
+     */
+    public ByteBuffer getBodyAsByteBuffer() throws JMSException {
+        initializeReading();
+        return ByteBuffer.wrap(bodyIn.getData(), bodyIn.getOffset(), bodyIn.getLength()).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Reads a portion of the bytes message stream as a read-only buffer over
+     * the message body, the counterpart of {@link #readBytes(byte[], int)}
+     * that does not copy the bytes read. The buffer is valid as described for
+     * {@link #getBodyAsByteBuffer()}.
+     *
+     * @param length the most bytes to read
+     * @return a buffer of the bytes read, fewer than <code>length</code> when
+     *         the end of the stream was reached, or null if there is no more
+     *         data because the end of the stream has been reached
+     * @throws JMSException if the JMS provider fails to read the message due to
+     *                 some internal error.
+     * @throws MessageNotReadableException if the message is in write-only mode.
+     */
+    public ByteBuffer readByteBuffer(int length) throws JMSException {
+        if (length < 0) {
+            throw new IndexOutOfBoundsException("length " + length);
+        }
+        initializeReading();
+        int remaining = bytesIn.available();
+        if (remaining == 0 && length > 0) {
+            return null;
+        }
+        int count = Math.min(length, remaining);
+        int position = bodyIn.getOffset() + bodyIn.getLength() - remaining;
+        try {
+            bytesIn.skip(count);
+        } catch (IOException e) {
+            throw JMSExceptionSupport.createMessageFormatException(e);
+        }
+        return ByteBuffer.wrap(bodyIn.getData(), position, count).slice().asReadOnlyBuffer();
+    }
+
     /**
      * Writes a <code>boolean</code> to the bytes message stream as a 1-byte
      * value. The value <code>true</code> is written as the value
@@ -821,6 +883,8 @@ public class ActiveMQBytesMessage extends ActiveMQMessage implements BytesMessag
                 dataIn.close();
                 dataIn = null;
             }
+            bodyIn = null;
+            bytesIn = null;
             if (dataOut != null) {
                 dataOut.close();
                 dataOut = null;
@@ -880,16 +944,17 @@ public class ActiveMQBytesMessage extends ActiveMQMessage implements BytesMessag
                 if (data == null) {
                     data = new ByteSequence(new byte[] {}, 0, 0);
                 }
-                InputStream is = new ByteArrayInputStream(data);
                 if (isCompressed()) {
                     if (data.length != 0) {
-                        is = new ByteArrayInputStream(decompress(data));
+                        data = new ByteSequence(decompress(data));
                     }
                 } else {
                     length = data.getLength();
                 }
 
-                dataIn = new DataInputStream(is);
+                bodyIn = data;
+                bytesIn = new ByteArrayInputStream(data);
+                dataIn = new DataInputStream(bytesIn);
             } catch (IOException ioe) {
                 throw JMSExceptionSupport.create(ioe);
             }
@@ -902,10 +967,13 @@ public class ActiveMQBytesMessage extends ActiveMQMessage implements BytesMessag
         try {
             length = ByteSequenceData.readIntBig(dataSequence);
             dataSequence.offset = 0;
-            byte[] data = Arrays.copyOfRange(dataSequence.getData(), 4, dataSequence.getLength());
-            inflater.setInput(data);
+            inflater.setInput(dataSequence.getData(), 4, dataSequence.getLength() - 4);
             byte[] buffer = new byte[length];
             int count = inflater.inflate(buffer);
+            if (count == length) {
+                // inflated straight into the body, as it is for a whole message
+                return buffer;
+            }
             decompressed.write(buffer, 0, count);
             return decompressed.toByteArray();
         } catch (Exception e) {
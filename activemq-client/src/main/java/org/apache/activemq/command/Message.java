@@ -96,6 +96,8 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     transient MessageDestination regionDestination;
     transient MemoryUsage memoryUsage;
     transient AtomicBoolean processAsExpired = new AtomicBoolean(false);
+    private transient boolean shareMarshalledForm;
+    private transient volatile Object sharedMarshalledForm;
 
     private BrokerId[] brokerPath;
     private BrokerId[] cluster;
@@ -811,6 +813,37 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
         this.brokerOutTime = brokerOutTime;
     }
 
+    /**
+     * @return true if the wire format may marshal this message once and write
+     *         the same bytes into every command that carries it
+     */
+    public boolean isShareMarshalledForm() {
+        return shareMarshalledForm;
+    }
+
+    /**
+     * Lets the wire format keep the marshalled form of this message and reuse
+     * it for each {@link MessageDispatch} of it, as a topic does when it fans a
+     * message out to many subscriptions. The message must not change once it
+     * is dispatched other than in its redelivery counter, and the broker out
+     * time sent is the one of the dispatch that marshalled it first.
+     */
+    public void setShareMarshalledForm(boolean shareMarshalledForm) {
+        this.shareMarshalledForm = shareMarshalledForm;
+        this.sharedMarshalledForm = null;
+    }
+
+    /**
+     * @return the marshalled form kept by the wire format, or null
+     */
+    public Object getSharedMarshalledForm() {
+        return sharedMarshalledForm;
+    }
+
+    public void setSharedMarshalledForm(Object sharedMarshalledForm) {
+        this.sharedMarshalledForm = sharedMarshalledForm;
+    }
+
     @Override
 	public boolean isDropped() {
         return false;
@@ -0,0 +1,136 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.filter;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.activemq.command.ActiveMQDestination;
+
+/**
+ * A {@link DestinationMap} for lookups that far outnumber changes, such as the
+ * routing of messages to the destinations of a region. The values matching a
+ * destination are cached per destination, so a repeated lookup is a single
+ * concurrent hash map read and takes no lock. A lookup that misses the cache
+ * walks the tree under the lock of the map, as does every change.
+ *
+ * A change evicts the cached matches it can affect: for a plain destination
+ * the matches of that destination, for a wildcard or composite destination
+ * all of them, and the matches of wildcard and composite lookups in both
+ * cases. Temporary destinations are short lived and are never cached.
+ *
+ * The sets returned are shared between callers and cannot be modified. The
+ * tree must only be changed through the map, changes made directly to the
+ * root nodes are not seen by the cache.
+ */
+public class ConcurrentDestinationMap extends DestinationMap {
+
+    private final ConcurrentMap<ActiveMQDestination, Set<Object>> matches = new ConcurrentHashMap<ActiveMQDestination, Set<Object>>();
+    private final ConcurrentMap<ActiveMQDestination, Set<Object>> patternMatches = new ConcurrentHashMap<ActiveMQDestination, Set<Object>>();
+    private int maximumCacheSize = 64 * 1024;
+
+    @Override
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    public Set get(ActiveMQDestination key) {
+        ConcurrentMap<ActiveMQDestination, Set<Object>> cache = getCache(key);
+        Set<Object> answer = cache.get(key);
+        if (answer == null) {
+            synchronized (this) {
+                answer = cache.get(key);
+                if (answer == null) {
+                    answer = Collections.unmodifiableSet(super.unsynchronizedGet(key));
+                    if (!key.isTemporary()) {
+                        if (cache.size() >= maximumCacheSize) {
+                            cache.clear();
+                        }
+                        cache.put(key, answer);
+                    }
+                }
+            }
+        }
+        return answer;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Set unsynchronizedGet(ActiveMQDestination key) {
+        return get(key);
+    }
+
+    @Override
+    public void unsynchronizedPut(ActiveMQDestination key, Object value) {
+        synchronized (this) {
+            super.unsynchronizedPut(key, value);
+            evict(key);
+        }
+    }
+
+    @Override
+    public void unsynchronizedRemove(ActiveMQDestination key, Object value) {
+        synchronized (this) {
+            super.unsynchronizedRemove(key, value);
+            evict(key);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Set removeAll(ActiveMQDestination key) {
+        synchronized (this) {
+            Set answer = super.removeAll(key);
+            evict(key);
+            return answer;
+        }
+    }
+
+    @Override
+    public void reset() {
+        synchronized (this) {
+            super.reset();
+            matches.clear();
+            patternMatches.clear();
+        }
+    }
+
+    public int getMaximumCacheSize() {
+        return maximumCacheSize;
+    }
+
+    /**
+     * @param maximumCacheSize the number of destinations whose matches are
+     *        cached before the cache is cleared and filled again
+     */
+    public void setMaximumCacheSize(int maximumCacheSize) {
+        this.maximumCacheSize = maximumCacheSize;
+    }
+
+    private ConcurrentMap<ActiveMQDestination, Set<Object>> getCache(ActiveMQDestination key) {
+        return key.isComposite() || key.isPattern() ? patternMatches : matches;
+    }
+
+    // called with the lock held, after the tree has changed
+    private void evict(ActiveMQDestination key) {
+        if (key.isComposite() || key.isPattern()) {
+            matches.clear();
+        } else {
+            matches.remove(key);
+        }
+        patternMatches.clear();
+    }
+}
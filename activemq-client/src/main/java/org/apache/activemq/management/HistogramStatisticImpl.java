@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.management;
+
+import java.util.Arrays;
+
+/**
+ * A histogram statistic with power of two buckets. Bucket 0 counts the values
+ * up to 1, bucket i counts the values in (2^(i-1), 2^i] and the last bucket
+ * counts everything larger.
+ */
+public class HistogramStatisticImpl extends StatisticImpl {
+
+    private final long[] buckets;
+    private long count;
+    private long maxValue;
+    private long totalValue;
+
+    public HistogramStatisticImpl(String name, String unit, String description) {
+        this(name, unit, description, 32);
+    }
+
+    public HistogramStatisticImpl(String name, String unit, String description, int bucketCount) {
+        super(name, unit, description);
+        if (bucketCount < 2 || bucketCount > 63) {
+            throw new IllegalArgumentException("bucketCount must be between 2 and 63");
+        }
+        this.buckets = new long[bucketCount];
+    }
+
+    @Override
+    public synchronized void reset() {
+        if (isDoReset()) {
+            super.reset();
+            Arrays.fill(buckets, 0);
+            count = 0;
+            maxValue = 0;
+            totalValue = 0;
+        }
+    }
+
+    public synchronized void addValue(long value) {
+        buckets[bucketOf(value)]++;
+        count++;
+        totalValue += value;
+        if (value > maxValue) {
+            maxValue = value;
+        }
+        updateSampleTime();
+    }
+
+    private int bucketOf(long value) {
+        if (value <= 1) {
+            return 0;
+        }
+        // number of bits needed for value - 1 is the exponent of the next power of two
+        int bucket = 64 - Long.numberOfLeadingZeros(value - 1);
+        return Math.min(bucket, buckets.length - 1);
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized long getMaxValue() {
+        return maxValue;
+    }
+
+    public synchronized long getTotalValue() {
+        return totalValue;
+    }
+
+    public synchronized double getAverageValue() {
+        if (count == 0) {
+            return 0;
+        }
+        return (double) totalValue / count;
+    }
+
+    /**
+     * @return a copy of the bucket counts
+     */
+    public synchronized long[] getBucketCounts() {
+        return buckets.clone();
+    }
+
+    /**
+     * @return the inclusive upper bound of the given bucket, Long.MAX_VALUE for the last one
+     */
+    public long getBucketUpperBound(int bucket) {
+        if (bucket == buckets.length - 1) {
+            return Long.MAX_VALUE;
+        }
+        return 1L << bucket;
+    }
+
+    /**
+     * @return the smallest bucket upper bound that covers the given fraction of the values
+     */
+    public synchronized long getPercentile(double fraction) {
+        if (count == 0) {
+            return 0;
+        }
+        long threshold = (long) Math.ceil(count * fraction);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= threshold) {
+                return Math.min(getBucketUpperBound(i), maxValue);
+            }
+        }
+        return maxValue;
+    }
+
+    @Override
+    protected synchronized void appendFieldDescription(StringBuffer buffer) {
+        buffer.append(" count: ");
+        buffer.append(Long.toString(count));
+        buffer.append(" maxValue: ");
+        buffer.append(Long.toString(maxValue));
+        buffer.append(" averageValue: ");
+        buffer.append(Double.toString(getAverageValue()));
+        buffer.append(" buckets: ");
+        buffer.append(Arrays.toString(buckets));
+        super.appendFieldDescription(buffer);
+    }
+}
@@ -20,11 +20,13 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.lang.reflect.Method;
+import java.util.ArrayDeque;
 import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.activemq.command.CommandTypes;
 import org.apache.activemq.command.DataStructure;
+import org.apache.activemq.command.Message;
 import org.apache.activemq.command.WireFormatInfo;
 import org.apache.activemq.util.ByteSequence;
 import org.apache.activemq.util.ByteSequenceData;
@@ -47,6 +49,7 @@ public final class OpenWireFormat implements WireFormat {
     static final byte NULL_TYPE = CommandTypes.NULL;
     private static final int MARSHAL_CACHE_SIZE = Short.MAX_VALUE / 2;
     private static final int MARSHAL_CACHE_FREE_SPACE = 100;
+    private static final Short NOT_CACHED_INDEX = Short.valueOf((short) -1);
 
     private DataStreamMarshaller dataMarshallers[];
     private int version;
@@ -67,6 +70,12 @@ public final class OpenWireFormat implements WireFormat {
     private DataByteArrayInputStream bytesIn = new DataByteArrayInputStream();
     private WireFormatInfo preferedWireFormatInfo;
 
+    // The following fields are used to share the marshalled form of a message
+    private final ArrayDeque<ByteSequence> sharedForms = new ArrayDeque<ByteSequence>();
+    private OpenWireFormat sharedFormMarshaller;
+    private boolean marshallCacheBypassed;
+    private boolean secondPass;
+
     public OpenWireFormat() {
         this(DEFAULT_STORE_VERSION);
     }
@@ -125,6 +134,7 @@ public final class OpenWireFormat implements WireFormat {
         if (cacheEnabled) {
             runMarshallCacheEvictionSweep();
         }
+        sharedForms.clear();
 
         ByteSequence sequence = null;
         int size = 1;
@@ -211,6 +221,7 @@ public final class OpenWireFormat implements WireFormat {
         if (cacheEnabled) {
             runMarshallCacheEvictionSweep();
         }
+        sharedForms.clear();
 
         int size = 1;
         if (o != null) {
@@ -282,6 +293,7 @@ public final class OpenWireFormat implements WireFormat {
      * Used by NIO or AIO transports
      */
     public int tightMarshal1(Object o, BooleanStream bs) throws IOException {
+        sharedForms.clear();
         int size = 1;
         if (o != null) {
             DataStructure c = (DataStructure)o;
@@ -383,11 +395,10 @@ public final class OpenWireFormat implements WireFormat {
         }
 
         if (o.isMarshallAware()) {
-            // MarshallAware ma = (MarshallAware)o;
-            ByteSequence sequence = null;
-            // sequence=ma.getCachedMarshalledForm(this);
+            ByteSequence sequence = getSharedMarshalledForm(o);
             bs.writeBoolean(sequence != null);
             if (sequence != null) {
+                sharedForms.add(sequence);
                 return 1 + sequence.getLength();
             }
         }
@@ -411,12 +422,11 @@ public final class OpenWireFormat implements WireFormat {
 
         if (o.isMarshallAware() && bs.readBoolean()) {
 
-            // We should not be doing any caching
-            throw new IOException("Corrupted stream");
-            // MarshallAware ma = (MarshallAware) o;
-            // ByteSequence sequence=ma.getCachedMarshalledForm(this);
-            // ds.write(sequence.getData(), sequence.getOffset(),
-            // sequence.getLength());
+            ByteSequence sequence = sharedForms.poll();
+            if (sequence == null) {
+                throw new IOException("Corrupted stream");
+            }
+            ds.write(sequence.getData(), sequence.getOffset(), sequence.getLength());
 
         } else {
 
@@ -492,6 +502,60 @@ public final class OpenWireFormat implements WireFormat {
         }
     }
 
+    /**
+     * @return the marshalled form of a message that is shared by the commands
+     *         carrying it, or null to marshal the object in place
+     */
+    private ByteSequence getSharedMarshalledForm(DataStructure o) throws IOException {
+        if (marshallCacheBypassed || !(o instanceof Message) || !((Message) o).isShareMarshalledForm()) {
+            return null;
+        }
+        Message message = (Message) o;
+        int redeliveryCounter = message.getRedeliveryCounter();
+        Object form = message.getSharedMarshalledForm();
+        if (form instanceof SharedForm && ((SharedForm) form).matches(this, redeliveryCounter)) {
+            return ((SharedForm) form).sequence;
+        }
+
+        if (sharedFormMarshaller == null || sharedFormMarshaller.version != version
+            || sharedFormMarshaller.cacheEnabled != cacheEnabled) {
+            sharedFormMarshaller = new OpenWireFormat(version);
+            sharedFormMarshaller.cacheEnabled = cacheEnabled;
+            sharedFormMarshaller.tightEncodingEnabled = true;
+            sharedFormMarshaller.marshallCacheBypassed = true;
+        }
+        ByteSequence sequence = sharedFormMarshaller.marshalSharedForm(message);
+        message.setSharedMarshalledForm(new SharedForm(version, cacheEnabled, redeliveryCounter, sequence));
+        return sequence;
+    }
+
+    /**
+     * Marshals a message with its size prefix into a buffer of its own. Any
+     * object that would go through the marshall cache is written in full with
+     * an index of -1, which the receiver does not cache, so the bytes can be
+     * sent on any connection using the same version and cache setting.
+     */
+    private ByteSequence marshalSharedForm(Message message) throws IOException {
+        byte type = message.getDataStructureType();
+        DataStreamMarshaller dsm = dataMarshallers[type & 0xFF];
+        if (dsm == null) {
+            throw new IOException("Unknown data type: " + type);
+        }
+
+        BooleanStream bs = new BooleanStream();
+        secondPass = false;
+        int size = 1 + dsm.tightMarshal1(this, message, bs);
+        size += bs.marshalledSize();
+
+        DataByteArrayOutputStream out = new DataByteArrayOutputStream(size + 4);
+        out.writeInt(size);
+        out.writeByte(type);
+        bs.marshal(out);
+        secondPass = true;
+        dsm.tightMarshal2(this, message, out, bs);
+        return out.toByteSequence();
+    }
+
     public void runMarshallCacheEvictionSweep() {
         // Do we need to start evicting??
         while (marshallCacheMap.size() > marshallCache.length - MARSHAL_CACHE_FREE_SPACE) {
@@ -508,10 +572,16 @@ public final class OpenWireFormat implements WireFormat {
     }
 
     public Short getMarshallCacheIndex(DataStructure o) {
+        if (marshallCacheBypassed) {
+            return secondPass ? NOT_CACHED_INDEX : null;
+        }
         return marshallCacheMap.get(o);
     }
 
     public Short addToMarshallCache(DataStructure o) {
+        if (marshallCacheBypassed) {
+            return NOT_CACHED_INDEX;
+        }
         short i = nextMarshallCacheIndex++;
         if (nextMarshallCacheIndex >= marshallCache.length) {
             nextMarshallCacheIndex = 0;
@@ -671,4 +741,23 @@ public final class OpenWireFormat implements WireFormat {
         }
         return version2;
     }
+
+    private static final class SharedForm {
+        private final int version;
+        private final boolean cacheEnabled;
+        private final int redeliveryCounter;
+        private final ByteSequence sequence;
+
+        SharedForm(int version, boolean cacheEnabled, int redeliveryCounter, ByteSequence sequence) {
+            this.version = version;
+            this.cacheEnabled = cacheEnabled;
+            this.redeliveryCounter = redeliveryCounter;
+            this.sequence = sequence;
+        }
+
+        boolean matches(OpenWireFormat format, int redeliveryCounter) {
+            return version == format.version && cacheEnabled == format.cacheEnabled
+                && this.redeliveryCounter == redeliveryCounter;
+        }
+    }
 }
@@ -17,6 +17,9 @@
 package org.apache.activemq.thread;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,6 +34,10 @@ class PooledTaskRunner implements TaskRunner {
     private final Executor executor;
     private final Task task;
     private final Runnable runable;
+    // a lock rather than a monitor, so virtual threads running or waking the
+    // task are not pinned to their carrier thread while they wait for it
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition iterationDone = lock.newCondition();
     private boolean queued;
     private boolean shutdown;
     private boolean iterating;
@@ -59,7 +66,8 @@ class PooledTaskRunner implements TaskRunner {
      */
     @Override
     public void wakeup() throws InterruptedException {
-        synchronized (runable) {
+        lock.lock();
+        try {
 
             // When we get in here, we make some assumptions of state:
             // queued=false, iterating=false: wakeup() has not be called and
@@ -82,6 +90,8 @@ class PooledTaskRunner implements TaskRunner {
             if (!iterating) {
                 executor.execute(runable);
             }
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -93,7 +103,8 @@ class PooledTaskRunner implements TaskRunner {
     @Override
     public void shutdown(long timeout) throws InterruptedException {
         LOG.trace("Shutdown timeout: {} task: {}", timeout, task);
-        synchronized (runable) {
+        lock.lock();
+        try {
             shutdown = true;
             // the check on the thread is done
             // because a call to iterate can result in
@@ -101,9 +112,15 @@ class PooledTaskRunner implements TaskRunner {
             // waiting for iterating to finish
             if (runningThread != Thread.currentThread()) {
                 if (iterating) {
-                    runable.wait(timeout);
+                    if (timeout > 0) {
+                        iterationDone.await(timeout, TimeUnit.MILLISECONDS);
+                    } else {
+                        iterationDone.await();
+                    }
                 }
             }
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -114,14 +131,17 @@ class PooledTaskRunner implements TaskRunner {
 
     final void runTask() {
 
-        synchronized (runable) {
+        lock.lock();
+        try {
             queued = false;
             if (shutdown) {
                 iterating = false;
-                runable.notifyAll();
+                iterationDone.signalAll();
                 return;
             }
             iterating = true;
+        } finally {
+            lock.unlock();
         }
 
         // Don't synchronize while we are iterating so that
@@ -136,12 +156,12 @@ class PooledTaskRunner implements TaskRunner {
                 }
             }
         } finally {
-            synchronized (runable) {
+            lock.lock();
+            try {
                 iterating = false;
-                runable.notifyAll();
+                iterationDone.signalAll();
                 if (shutdown) {
                     queued = false;
-                    runable.notifyAll();
                 } else {
                     // If we could not iterate all the items
                     // then we need to re-queue.
@@ -153,7 +173,8 @@ class PooledTaskRunner implements TaskRunner {
                         executor.execute(runable);
                     }
                 }
-
+            } finally {
+                lock.unlock();
             }
         }
     }
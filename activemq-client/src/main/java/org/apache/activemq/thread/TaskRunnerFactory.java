@@ -50,6 +50,7 @@ public class TaskRunnerFactory implements Executor {
     private boolean daemon;
     private final AtomicLong id = new AtomicLong(0);
     private boolean dedicatedTaskRunner;
+    private boolean useVirtualThreads;
     private long shutdownAwaitTermination = 30000;
     private final AtomicBoolean initDone = new AtomicBoolean(false);
     private int maxThreadPoolSize = getDefaultMaximumPoolSize();
@@ -90,7 +91,16 @@ public class TaskRunnerFactory implements Executor {
             synchronized(this) {
                 //need to recheck if initDone is true under the lock
                 if (!initDone.get()) {
-                    if (dedicatedTaskRunner || "true".equalsIgnoreCase(System.getProperty("org.apache.activemq.UseDedicatedTaskRunner"))) {
+                    ExecutorService virtualExecutor = null;
+                    if (useVirtualThreads) {
+                        virtualExecutor = VirtualThreads.newThreadPerTaskExecutor(name + "-");
+                        if (virtualExecutor == null) {
+                            LOG.warn("TaskRunnerFactory[{}] cannot use virtual threads on this JVM, using platform threads", name);
+                        }
+                    }
+                    if (virtualExecutor != null) {
+                        executorRef.set(virtualExecutor);
+                    } else if (dedicatedTaskRunner || "true".equalsIgnoreCase(System.getProperty("org.apache.activemq.UseDedicatedTaskRunner"))) {
                         executorRef.set(null);
                     } else {
                         executorRef.compareAndSet(null, createDefaultExecutor());
@@ -265,6 +275,20 @@ public class TaskRunnerFactory implements Executor {
         this.dedicatedTaskRunner = dedicatedTaskRunner;
     }
 
+    public boolean isUseVirtualThreads() {
+        return useVirtualThreads;
+    }
+
+    /**
+     * Runs the tasks on virtual threads, one per run of a task, in place of
+     * dedicated or pooled platform threads, when the JVM has them. Takes
+     * precedence over {@link #setDedicatedTaskRunner(boolean)}; the thread
+     * priority and pool settings do not apply to virtual threads.
+     */
+    public void setUseVirtualThreads(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+    }
+
     public int getMaxThreadPoolSize() {
         return maxThreadPoolSize;
     }
@@ -0,0 +1,249 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.thread;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Timer;
+
+import org.apache.activemq.util.ServiceStopper;
+import org.apache.activemq.util.ServiceSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A hierarchical timing wheel for a large number of timeouts that are mostly
+ * cancelled before they fire, such as message expirations. Scheduling and
+ * cancelling are constant time; each level of the wheel has 64 slots, a slot
+ * of one level spanning the whole of the level below, and a timeout moves
+ * down a level as its deadline comes near.
+ *
+ * Deadlines are rounded up to the tick, and the tasks of the timeouts that
+ * are due run on the timer thread of the wheel, so they should only hand
+ * their work off.
+ */
+public final class TimingWheel extends ServiceSupport {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TimingWheel.class);
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 4;
+
+    private final String name;
+    private final long tickMillis;
+    private final Timeout[][] slots = new Timeout[LEVELS][WHEEL_SIZE];
+    private long currentTick;
+    private int size;
+    private Timer timer;
+
+    private final Runnable tickTask = new Runnable() {
+        @Override
+        public void run() {
+            advance(System.currentTimeMillis());
+        }
+    };
+
+    public TimingWheel(String name, long tickMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Invalid tick: " + tickMillis);
+        }
+        this.name = name;
+        this.tickMillis = tickMillis;
+        this.currentTick = System.currentTimeMillis() / tickMillis;
+    }
+
+    /**
+     * Schedules a task to run once the deadline has passed.
+     *
+     * @param task the task, run on the timer thread
+     * @param deadline the time in milliseconds, a deadline that has already
+     *        passed fires on the next tick
+     * @return the timeout, to cancel it
+     */
+    public Timeout schedule(Runnable task, long deadline) {
+        Timeout timeout = new Timeout(this, task, deadline);
+        synchronized (this) {
+            // the slot of the current tick has been run already
+            timeout.deadlineTick = Math.max((deadline + tickMillis - 1) / tickMillis, currentTick + 1);
+            insert(timeout);
+            size++;
+        }
+        return timeout;
+    }
+
+    /**
+     * Moves the wheel on to the given time and runs the tasks of the timeouts
+     * that are due by then. Called on each tick by the timer of the wheel.
+     */
+    public void advance(long now) {
+        long nowTick = now / tickMillis;
+        List<Timeout> due = null;
+        synchronized (this) {
+            while (currentTick < nowTick) {
+                if (size == 0) {
+                    // nothing to move down or fire
+                    currentTick = nowTick;
+                    break;
+                }
+                currentTick++;
+                for (int level = LEVELS - 1; level > 0; level--) {
+                    if ((currentTick & ((1L << (level * WHEEL_BITS)) - 1)) == 0) {
+                        cascade(level, (int) (currentTick >>> (level * WHEEL_BITS)) & WHEEL_MASK);
+                    }
+                }
+                int slot = (int) currentTick & WHEEL_MASK;
+                Timeout timeout = slots[0][slot];
+                slots[0][slot] = null;
+                while (timeout != null) {
+                    Timeout next = timeout.next;
+                    timeout.level = -1;
+                    timeout.previous = null;
+                    timeout.next = null;
+                    if (due == null) {
+                        due = new ArrayList<Timeout>();
+                    }
+                    due.add(timeout);
+                    size--;
+                    timeout = next;
+                }
+            }
+        }
+
+        if (due != null) {
+            for (Timeout timeout : due) {
+                try {
+                    timeout.task.run();
+                } catch (Throwable e) {
+                    LOG.warn("Timeout task of {} failed", name, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of timeouts that are waiting to fire
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    private void cascade(int level, int slot) {
+        Timeout timeout = slots[level][slot];
+        slots[level][slot] = null;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            insert(timeout);
+            timeout = next;
+        }
+    }
+
+    private void insert(Timeout timeout) {
+        long tick = timeout.deadlineTick;
+        int level = 0;
+        long position = tick;
+        while (level < LEVELS && position - (currentTick >>> (level * WHEEL_BITS)) >= WHEEL_SIZE) {
+            level++;
+            position = tick >>> (level * WHEEL_BITS);
+        }
+        if (level == LEVELS) {
+            // beyond the wheel, park it in the last slot of the top level to
+            // be placed again when that comes round
+            level = LEVELS - 1;
+            position = (currentTick >>> (level * WHEEL_BITS)) + WHEEL_SIZE - 1;
+        }
+
+        int slot = (int) position & WHEEL_MASK;
+        timeout.level = level;
+        timeout.slot = slot;
+        timeout.previous = null;
+        timeout.next = slots[level][slot];
+        if (timeout.next != null) {
+            timeout.next.previous = timeout;
+        }
+        slots[level][slot] = timeout;
+    }
+
+    private synchronized boolean cancel(Timeout timeout) {
+        if (timeout.level < 0) {
+            return false;
+        }
+        if (timeout.previous != null) {
+            timeout.previous.next = timeout.next;
+        } else {
+            slots[timeout.level][timeout.slot] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.previous = timeout.previous;
+        }
+        timeout.level = -1;
+        timeout.previous = null;
+        timeout.next = null;
+        size--;
+        return true;
+    }
+
+    @Override
+    protected synchronized void doStart() throws Exception {
+        this.timer = new Timer(name, true);
+        this.timer.schedule(new SchedulerTimerTask(tickTask), tickMillis, tickMillis);
+    }
+
+    @Override
+    protected synchronized void doStop(ServiceStopper stopper) throws Exception {
+        if (this.timer != null) {
+            this.timer.cancel();
+            this.timer = null;
+        }
+    }
+
+    /**
+     * A task scheduled on the wheel.
+     */
+    public static final class Timeout {
+        private final TimingWheel wheel;
+        private final Runnable task;
+        private final long deadline;
+        // guarded by the wheel, level is -1 once fired or cancelled
+        private long deadlineTick;
+        private int level;
+        private int slot;
+        private Timeout previous;
+        private Timeout next;
+
+        Timeout(TimingWheel wheel, Runnable task, long deadline) {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+
+        /**
+         * @return true if the timeout was waiting and will now not fire
+         */
+        public boolean cancel() {
+            return wheel.cancel(this);
+        }
+    }
+}
@@ -72,6 +72,11 @@ public class TcpTransport extends TransportThreadSupport implements Transport, S
     protected TimeStampStream buffOut = null;
 
     protected final InitBuffer initBuffer;
+    /**
+     * The thread whose writes are left in the output buffer until it writes
+     * with the flush no longer deferred.
+     */
+    private volatile Thread flushDeferredBy;
 
     /**
      * The Traffic Class to be set on the socket.
@@ -191,7 +196,21 @@ public class TcpTransport extends TransportThreadSupport implements Transport, S
     public void oneway(Object command) throws IOException {
         checkStarted();
         wireFormat.marshal(command, dataOut);
-        dataOut.flush();
+        if (flushDeferredBy != Thread.currentThread()) {
+            dataOut.flush();
+        }
+    }
+
+    /**
+     * Lets the calling thread write several commands in a row with a single
+     * flush: while deferred its commands stay in the output buffer, unless it
+     * fills up, until it sends one after calling this with false. Writes made
+     * by other threads are flushed as usual and carry the buffer with them.
+     *
+     * @param deferred true to defer the flush of the calling thread's writes
+     */
+    public void deferFlush(boolean deferred) {
+        flushDeferredBy = deferred ? Thread.currentThread() : null;
     }
 
     /**
@@ -0,0 +1,181 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.command.ActiveMQMessage;
+import org.apache.activemq.command.MessageDispatch;
+import org.apache.activemq.command.MessageId;
+import org.junit.Test;
+
+public class RingMessageDispatchChannelTest {
+
+    @Test
+    public void testFifoAcrossSegments() throws Exception {
+        RingMessageDispatchChannel channel = new RingMessageDispatchChannel();
+        channel.start();
+        MessageDispatch[] dispatched = new MessageDispatch[1000];
+        for (int i = 0; i < dispatched.length; i++) {
+            dispatched[i] = createDispatch("producer", i, 4);
+            channel.enqueue(dispatched[i]);
+        }
+        assertEquals(dispatched.length, channel.size());
+
+        MessageDispatch first = createDispatch("producer", -1, 4);
+        channel.enqueueFirst(first);
+        assertSame(first, channel.peek());
+        assertSame(first, channel.dequeueNoWait());
+        for (int i = 0; i < dispatched.length; i++) {
+            assertSame(dispatched[i], channel.dequeue(-1));
+        }
+        assertTrue(channel.isEmpty());
+        assertNull(channel.dequeue(10));
+    }
+
+    @Test
+    public void testNothingTakenUnlessRunning() throws Exception {
+        RingMessageDispatchChannel channel = new RingMessageDispatchChannel();
+        channel.enqueue(createDispatch("producer", 1, 4));
+        assertNull(channel.dequeueNoWait());
+        assertNull(channel.peek());
+        channel.start();
+        assertEquals(1, channel.removeAll().size());
+        assertTrue(channel.isEmpty());
+
+        channel.close();
+        channel.enqueue(createDispatch("producer", 2, 4));
+        assertNull(channel.dequeue(-1));
+    }
+
+    @Test
+    public void testHighestPriorityFirst() throws Exception {
+        RingMessageDispatchChannel channel = new PriorityRingMessageDispatchChannel();
+        channel.start();
+        MessageDispatch low = createDispatch("producer", 1, 0);
+        MessageDispatch normal = createDispatch("producer", 2, 4);
+        MessageDispatch high = createDispatch("producer", 3, 9);
+        channel.enqueue(low);
+        channel.enqueue(normal);
+        channel.enqueue(high);
+        MessageDispatch redelivered = createDispatch("producer", 0, 4);
+        channel.enqueueFirst(redelivered);
+
+        assertSame(high, channel.dequeueNoWait());
+        assertSame(redelivered, channel.dequeueNoWait());
+        assertSame(normal, channel.dequeueNoWait());
+        assertSame(low, channel.dequeueNoWait());
+        assertNull(channel.dequeueNoWait());
+    }
+
+    @Test(timeout = 60000)
+    public void testBlockedConsumerWokenByProducers() throws Exception {
+        final RingMessageDispatchChannel channel = new RingMessageDispatchChannel();
+        channel.start();
+        final int producers = 4;
+        final int messages = 10000;
+        final CountDownLatch done = new CountDownLatch(producers);
+        for (int p = 0; p < producers; p++) {
+            final String producer = "producer" + p;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < messages; i++) {
+                        channel.enqueue(createDispatch(producer, i, 4));
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        // each producer's messages are taken in the order it sent them
+        Map<String, Long> last = new HashMap<String, Long>();
+        for (int i = 0; i < producers * messages; i++) {
+            MessageId id = channel.dequeue(-1).getMessage().getMessageId();
+            String producer = id.getProducerId().getConnectionId();
+            Long previous = last.put(producer, id.getProducerSequenceId());
+            assertEquals(previous == null ? 0 : previous + 1, id.getProducerSequenceId());
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(channel.isEmpty());
+    }
+
+    @Test(timeout = 60000)
+    public void testConcurrentConsumersAreAllWoken() throws Exception {
+        final RingMessageDispatchChannel channel = new RingMessageDispatchChannel();
+        channel.start();
+        final int consumers = 2;
+        final CountDownLatch received = new CountDownLatch(consumers);
+        for (int c = 0; c < consumers; c++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (channel.dequeue(-1) != null) {
+                            received.countDown();
+                        }
+                    } catch (InterruptedException e) {
+                    }
+                }
+            }).start();
+        }
+
+        // let both consumers block before anything arrives
+        Thread.sleep(200);
+        for (int i = 0; i < consumers; i++) {
+            channel.enqueue(createDispatch("producer", i, 4));
+        }
+        assertTrue(received.await(10, TimeUnit.SECONDS));
+        assertTrue(channel.isEmpty());
+    }
+
+    @Test(timeout = 60000)
+    public void testStopWakesTimedDequeue() throws Exception {
+        final RingMessageDispatchChannel channel = new RingMessageDispatchChannel();
+        channel.start();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                }
+                channel.stop();
+            }
+        }).start();
+        long start = System.currentTimeMillis();
+        assertNull(channel.dequeue(30000));
+        assertTrue(System.currentTimeMillis() - start < 20000);
+    }
+
+    private static MessageDispatch createDispatch(String producer, long sequence, int priority) {
+        ActiveMQMessage message = new ActiveMQMessage();
+        message.setMessageId(new MessageId(producer + ":1:1", sequence));
+        message.setPriority((byte) priority);
+        MessageDispatch dispatch = new MessageDispatch();
+        dispatch.setMessage(message);
+        return dispatch;
+    }
+}
@@ -16,6 +16,7 @@
  */
 package org.apache.activemq.thread;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
@@ -24,6 +25,8 @@ import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.Test;
 
@@ -74,4 +77,36 @@ public class TaskRunnerFactoryTest {
             assertTrue(runner instanceof PooledTaskRunner);
         }
     }
+
+    @Test
+    public void testVirtualThreads() throws Exception {
+        TaskRunnerFactory factory = new TaskRunnerFactory("VirtualTask", Thread.NORM_PRIORITY, false, 1000, true);
+        factory.setUseVirtualThreads(true);
+        final CountDownLatch ran = new CountDownLatch(1);
+        final AtomicReference<Thread> thread = new AtomicReference<Thread>();
+        TaskRunner runner = factory.createTaskRunner(new Task() {
+
+            @Override
+            public boolean iterate() {
+                thread.set(Thread.currentThread());
+                ran.countDown();
+                return false;
+            }
+        }, "task");
+        try {
+            runner.wakeup();
+            assertTrue(ran.await(10, TimeUnit.SECONDS));
+            if (VirtualThreads.isSupported()) {
+                // takes precedence over the dedicated task runner
+                assertTrue(runner instanceof PooledTaskRunner);
+                assertTrue(thread.get().getName().startsWith("VirtualTask-"));
+                assertEquals(Boolean.TRUE, Thread.class.getMethod("isVirtual").invoke(thread.get()));
+            } else {
+                assertTrue(runner instanceof DedicatedTaskRunner);
+            }
+        } finally {
+            runner.shutdown();
+            factory.shutdown();
+        }
+    }
 }
@@ -0,0 +1,111 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.thread;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TimingWheelTest {
+
+    private static final long TICK = 10;
+
+    @Test
+    public void testFiresOnTheTickOfTheDeadline() throws Exception {
+        TimingWheel wheel = new TimingWheel("testWheel", TICK);
+        long start = System.currentTimeMillis() + TICK;
+        Random random = new Random(42);
+
+        List<Task> tasks = new ArrayList<Task>();
+        // spread over every level of the wheel and beyond it
+        long[] ranges = {TICK * 64, TICK * 64 * 64, TICK * 64 * 64 * 64, TICK * 64 * 64 * 64 * 64 * 2};
+        for (long range : ranges) {
+            for (int i = 0; i < 250; i++) {
+                Task task = new Task(start + (long) (random.nextDouble() * range));
+                task.timeout = wheel.schedule(task, task.deadline);
+                tasks.add(task);
+            }
+        }
+        int cancelled = 0;
+        for (int i = 0; i < tasks.size(); i += 3) {
+            assertTrue(tasks.get(i).timeout.cancel());
+            tasks.get(i).cancelled = true;
+            cancelled++;
+        }
+        assertEquals(tasks.size() - cancelled, wheel.size());
+
+        long now = start;
+        long end = start + ranges[ranges.length - 1] + TICK;
+        while (now < end) {
+            now += 1 + (long) (random.nextDouble() * TICK * 64 * 64 * 8);
+            wheel.advance(now);
+            long nowTick = now / TICK;
+            for (Task task : tasks) {
+                boolean due = !task.cancelled && (task.deadline + TICK - 1) / TICK <= nowTick;
+                assertEquals("deadline " + task.deadline + " at " + now, due, task.runs == 1);
+            }
+        }
+        assertEquals(0, wheel.size());
+        for (Task task : tasks) {
+            assertFalse(task.timeout.cancel());
+        }
+    }
+
+    @Test
+    public void testRunsOnTheTimer() throws Exception {
+        TimingWheel wheel = new TimingWheel("testWheel", TICK);
+        wheel.start();
+        try {
+            final CountDownLatch latch = new CountDownLatch(2);
+            Runnable countDown = new Runnable() {
+                @Override
+                public void run() {
+                    latch.countDown();
+                }
+            };
+            wheel.schedule(countDown, System.currentTimeMillis() - 1000);
+            wheel.schedule(countDown, System.currentTimeMillis() + 50);
+            assertTrue(latch.await(5000, TimeUnit.MILLISECONDS));
+        } finally {
+            wheel.stop();
+        }
+    }
+
+    private static class Task implements Runnable {
+        final long deadline;
+        TimingWheel.Timeout timeout;
+        boolean cancelled;
+        int runs;
+
+        Task(long deadline) {
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void run() {
+            runs++;
+        }
+    }
+}
@@ -25,7 +25,9 @@ import org.apache.activemq.command.MessageId;
 import org.apache.activemq.command.XATransactionId;
 import org.apache.activemq.store.AbstractMessageStore;
 import org.apache.activemq.store.IndexListener;
+import org.apache.activemq.store.MessageBatchRecoveryListener;
 import org.apache.activemq.store.MessageRecoveryListener;
+import org.apache.activemq.store.RecoveredMessage;
 import org.apache.activemq.util.ByteSequence;
 import org.apache.activemq.util.ByteSequenceData;
 import org.apache.activemq.util.IOExceptionSupport;
@@ -38,6 +40,7 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -398,6 +401,70 @@ public class JDBCMessageStore extends AbstractMessageStore {
 
     }
 
+    /**
+     * Reads the batch with a single query, the messages are handed over once
+     * the query is done and unmarshalled only when the listener asks for
+     * them, unless their priority is needed to track the batch position. The
+     * query stops once the listener has no memory left for the messages read
+     * so far.
+     */
+    @Override
+    public void recoverNextMessageBatch(int maxReturned, final MessageBatchRecoveryListener listener) throws Exception {
+        final List<RecoveredMessage> batch = new ArrayList<RecoveredMessage>();
+        TransactionContext c = persistenceAdapter.getTransactionContext();
+        try {
+            if (LOG.isTraceEnabled()) {
+                LOG.trace(this + " recoverNextBatch lastRecovered:" + Arrays.toString(perPriorityLastRecovered) + ", minPending:" + minPendingSequeunceId());
+            }
+
+            maxReturned -= recoverRolledBackAcks(maxReturned, listener);
+
+            adapter.doRecoverNextMessages(c, destination, perPriorityLastRecovered, minPendingSequeunceId(),
+                    maxReturned, isPrioritizedMessages(), new JDBCMessageRecoveryListener() {
+
+                private long batchSize;
+
+                @Override
+                public boolean recoverMessage(final long sequenceId, byte[] data) throws Exception {
+                    if (listener.canRecoverMessages(batch.size(), batchSize)) {
+                        RecoveredMessage recovered = new RecoveredMessage(new ByteSequence(data), wireFormat, sequenceId) {
+                            @Override
+                            protected void unmarshalled(Message message) {
+                                message.getMessageId().setBrokerSequenceId(sequenceId);
+                                message.getMessageId().setFutureOrSequenceLong(sequenceId);
+                                message.getMessageId().setEntryLocator(sequenceId);
+                            }
+                        };
+                        batch.add(recovered);
+                        batchSize += data.length;
+                        trackLastRecovered(sequenceId, isPrioritizedMessages() ? recovered.getMessage().getPriority() : 0);
+                        return true;
+                    } else {
+                        return false;
+                    }
+                }
+
+                @Override
+                public boolean recoverMessageReference(String reference) throws Exception {
+                    if (listener.hasSpace()) {
+                        listener.recoverMessageReference(new MessageId(reference));
+                        return true;
+                    }
+                    return false;
+                }
+
+            });
+        } catch (SQLException e) {
+            JDBCPersistenceAdapter.log("JDBC Failure: ", e);
+        } finally {
+            c.close();
+        }
+
+        if (!batch.isEmpty()) {
+            listener.recoverMessages(batch);
+        }
+    }
+
     public void trackRollbackAck(Message message) {
         synchronized (rolledBackAcks) {
             rolledBackAcks.put((Long)message.getMessageId().getEntryLocator(), message);
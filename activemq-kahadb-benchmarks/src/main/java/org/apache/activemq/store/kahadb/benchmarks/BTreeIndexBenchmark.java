@@ -0,0 +1,125 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb.benchmarks;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.store.kahadb.disk.index.BTreeIndex;
+import org.apache.activemq.store.kahadb.disk.page.PageFile;
+import org.apache.activemq.store.kahadb.disk.page.Transaction;
+import org.apache.activemq.store.kahadb.disk.util.LongMarshaller;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Point lookups, updates and range scans on a Long keyed index, the key type of the
+ * order indexes of the message store.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BTreeIndexBenchmark {
+
+    private static final int SCAN_LENGTH = 100;
+
+    @Param({"10000", "100000"})
+    public int keyCount;
+
+    // in pages, small enough to force page reads for the larger key counts
+    @Param({"100", "10000"})
+    public int pageCacheSize;
+
+    private File directory;
+    private PageFile pageFile;
+    private BTreeIndex<Long, Long> index;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = BenchmarkSupport.createDirectory("btree");
+        pageFile = new PageFile(directory, "index");
+        pageFile.setPageCacheSize(pageCacheSize);
+        pageFile.setEnableDiskSyncs(false);
+        pageFile.load();
+
+        Transaction tx = pageFile.tx();
+        index = new BTreeIndex<>(pageFile, tx.allocate().getPageId());
+        index.setKeyMarshaller(LongMarshaller.INSTANCE);
+        index.setValueMarshaller(LongMarshaller.INSTANCE);
+        index.load(tx);
+        tx.commit();
+
+        for (long key = 0; key < keyCount; key++) {
+            index.put(tx, key, key);
+            if (key % 1000 == 999) {
+                tx.commit();
+            }
+        }
+        tx.commit();
+        pageFile.flush();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        pageFile.unload();
+        BenchmarkSupport.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public Long get() throws Exception {
+        return index.get(pageFile.tx(), randomKey());
+    }
+
+    @Benchmark
+    public Long put() throws Exception {
+        Transaction tx = pageFile.tx();
+        long key = randomKey();
+        Long previous = index.put(tx, key, key);
+        tx.commit();
+        return previous;
+    }
+
+    @Benchmark
+    public void iterate(Blackhole blackhole) throws Exception {
+        Iterator<Map.Entry<Long, Long>> iterator = index.iterator(pageFile.tx(), randomKey());
+        for (int i = 0; i < SCAN_LENGTH && iterator.hasNext(); i++) {
+            blackhole.consume(iterator.next());
+        }
+    }
+
+    private long randomKey() {
+        return ThreadLocalRandom.current().nextInt(keyCount);
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.apache.activemq.util.IOHelper;
+
+/**
+ * Helpers shared by the benchmarks. Every benchmark works in its own directory under
+ * the system temp dir, or under the directory given by the kahadb.benchmark.dir system
+ * property, so that runs don't see each other's data.
+ */
+final class BenchmarkSupport {
+
+    static final String DIRECTORY_PROPERTY = "kahadb.benchmark.dir";
+
+    private BenchmarkSupport() {
+    }
+
+    static File createDirectory(String prefix) throws IOException {
+        String parent = System.getProperty(DIRECTORY_PROPERTY);
+        if (parent == null) {
+            return Files.createTempDirectory(prefix).toFile();
+        }
+        File base = new File(parent);
+        base.mkdirs();
+        return Files.createTempDirectory(base.toPath(), prefix).toFile();
+    }
+
+    static void deleteDirectory(File directory) {
+        if (directory != null) {
+            IOHelper.deleteFile(directory);
+        }
+    }
+
+    /**
+     * @return a payload of the given size, the same one for every run
+     */
+    static byte[] payload(int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) ('a' + i % 26);
+        }
+        return data;
+    }
+}
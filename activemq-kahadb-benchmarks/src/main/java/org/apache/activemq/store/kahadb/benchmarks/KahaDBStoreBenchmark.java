@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.activemq.broker.ConnectionContext;
+import org.apache.activemq.command.ActiveMQBytesMessage;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.MessageAck;
+import org.apache.activemq.command.MessageId;
+import org.apache.activemq.store.MessageStore;
+import org.apache.activemq.store.kahadb.KahaDBStore;
+import org.apache.activemq.util.ByteSequence;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Adds and removes queue messages through the message store the way the broker does.
+ * The ack either follows the add right away, as it does for a consumer that keeps up
+ * and lets concurrentStoreAndDispatchQueues cancel the write, or only once the add is
+ * stored.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KahaDBStoreBenchmark {
+
+    @Param({"false", "true"})
+    public boolean concurrentStoreAndDispatch;
+
+    @Param({"NEVER", "ALWAYS"})
+    public String journalDiskSyncStrategy;
+
+    @Param({"1024", "16384"})
+    public int messageSize;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final ConnectionContext context = new ConnectionContext();
+    private final ActiveMQQueue queue = new ActiveMQQueue("benchmark");
+
+    private File directory;
+    private KahaDBStore store;
+    private MessageStore messageStore;
+    private byte[] body;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = BenchmarkSupport.createDirectory("kahadb");
+        store = new KahaDBStore();
+        store.setDirectory(directory);
+        store.setConcurrentStoreAndDispatchQueues(concurrentStoreAndDispatch);
+        store.setJournalDiskSyncStrategy(journalDiskSyncStrategy);
+        store.start();
+        messageStore = store.createQueueMessageStore(queue);
+        body = BenchmarkSupport.payload(messageSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        store.stop();
+        BenchmarkSupport.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public void addAndRemove() throws Exception {
+        ActiveMQBytesMessage message = createMessage();
+        messageStore.asyncAddQueueMessage(context, message);
+        messageStore.removeAsyncMessage(context, createAck(message));
+    }
+
+    @Benchmark
+    public void addStoredAndRemove() throws Exception {
+        ActiveMQBytesMessage message = createMessage();
+        Future<Object> added = messageStore.asyncAddQueueMessage(context, message);
+        added.get();
+        messageStore.removeAsyncMessage(context, createAck(message));
+    }
+
+    private ActiveMQBytesMessage createMessage() throws Exception {
+        long id = sequence.incrementAndGet();
+        MessageId messageId = new MessageId("ID:benchmark-1-1:1:1:1:" + id);
+        messageId.setBrokerSequenceId(id);
+
+        ActiveMQBytesMessage message = new ActiveMQBytesMessage();
+        message.setMessageId(messageId);
+        message.setDestination(queue);
+        message.setPersistent(true);
+        message.setContent(new ByteSequence(body));
+        return message;
+    }
+
+    private MessageAck createAck(ActiveMQBytesMessage message) {
+        MessageAck ack = new MessageAck();
+        ack.setAckType(MessageAck.STANDARD_ACK_TYPE);
+        ack.setDestination(queue);
+        ack.setLastMessageId(message.getMessageId());
+        return ack;
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb.benchmarks;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.store.PList;
+import org.apache.activemq.store.PListEntry;
+import org.apache.activemq.store.kahadb.plist.PListStoreImpl;
+import org.apache.activemq.util.ByteSequence;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * A plist used the way a file pending cursor uses it when messages are spooled to
+ * temp storage: appended at the tail, removed from the head.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PListBenchmark {
+
+    private static final int SCAN_LENGTH = 100;
+
+    // entries held in the list while appending and removing
+    @Param({"100", "10000"})
+    public int backlog;
+
+    @Param({"1024"})
+    public int entrySize;
+
+    private File directory;
+    private PListStoreImpl store;
+    private PList list;
+    private ByteSequence entry;
+    private final ArrayDeque<Object> locators = new ArrayDeque<>();
+    private long sequence;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = BenchmarkSupport.createDirectory("plist");
+        store = new PListStoreImpl();
+        store.setDirectory(directory);
+        store.start();
+        list = store.getPList("benchmark");
+        entry = new ByteSequence(BenchmarkSupport.payload(entrySize));
+        for (int i = 0; i < backlog; i++) {
+            locators.add(list.addLast(nextId(), entry));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        store.stop();
+        BenchmarkSupport.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public synchronized boolean addLastRemoveFirst() throws Exception {
+        locators.add(list.addLast(nextId(), entry));
+        return list.remove(locators.poll());
+    }
+
+    @Benchmark
+    public void iterate(Blackhole blackhole) throws Exception {
+        PList.PListIterator iterator = list.iterator();
+        try {
+            for (int i = 0; i < SCAN_LENGTH && iterator.hasNext(); i++) {
+                PListEntry next = iterator.next();
+                blackhole.consume(next);
+            }
+        } finally {
+            iterator.release();
+        }
+    }
+
+    private String nextId() {
+        return "ID:benchmark-" + sequence++;
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.store.kahadb.disk.page.Page;
+import org.apache.activemq.store.kahadb.disk.page.PageFile;
+import org.apache.activemq.store.kahadb.disk.page.Transaction;
+import org.apache.activemq.store.kahadb.disk.util.StringMarshaller;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Page file transactions, with and without the flush that a checkpoint does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PageFileBenchmark {
+
+    private static final int PAGES = 1000;
+
+    @Param({"false", "true"})
+    public boolean enableRecoveryFile;
+
+    @Param({"1", "10"})
+    public int pagesPerTransaction;
+
+    private File directory;
+    private PageFile pageFile;
+    private long firstPage;
+    private String value;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = BenchmarkSupport.createDirectory("pagefile");
+        pageFile = new PageFile(directory, "index");
+        pageFile.setEnableRecoveryFile(enableRecoveryFile);
+        pageFile.setEnableDiskSyncs(false);
+        pageFile.load();
+
+        Transaction tx = pageFile.tx();
+        firstPage = tx.allocate(PAGES).getPageId();
+        tx.commit();
+        pageFile.flush();
+
+        value = new String(BenchmarkSupport.payload(512));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        pageFile.unload();
+        BenchmarkSupport.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public synchronized void commit() throws Exception {
+        Transaction tx = pageFile.tx();
+        for (int i = 0; i < pagesPerTransaction; i++) {
+            Page<String> page = tx.load(firstPage + next, null);
+            next = (next + 1) % PAGES;
+            page.set(value);
+            tx.store(page, StringMarshaller.INSTANCE, false);
+        }
+        tx.commit();
+    }
+
+    @Benchmark
+    public synchronized void commitAndFlush() throws Exception {
+        commit();
+        pageFile.flush();
+    }
+}
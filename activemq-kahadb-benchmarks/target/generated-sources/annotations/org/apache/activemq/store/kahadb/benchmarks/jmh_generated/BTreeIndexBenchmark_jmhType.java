@@ -0,0 +1,4 @@
+package org.apache.activemq.store.kahadb.benchmarks.jmh_generated;
+public class BTreeIndexBenchmark_jmhType extends BTreeIndexBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package org.apache.activemq.store.kahadb.benchmarks.jmh_generated;
+public class JournalBenchmark_jmhType extends JournalBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package org.apache.activemq.store.kahadb.benchmarks.jmh_generated;
+public class KahaDBStoreBenchmark_jmhType extends KahaDBStoreBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package org.apache.activemq.store.kahadb.benchmarks.jmh_generated;
+public class PListBenchmark_jmhType extends PListBenchmark_jmhType_B3 {
+}
+
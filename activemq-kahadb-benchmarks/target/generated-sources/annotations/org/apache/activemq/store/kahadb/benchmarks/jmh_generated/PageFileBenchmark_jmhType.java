@@ -0,0 +1,4 @@
+package org.apache.activemq.store.kahadb.benchmarks.jmh_generated;
+public class PageFileBenchmark_jmhType extends PageFileBenchmark_jmhType_B3 {
+}
+
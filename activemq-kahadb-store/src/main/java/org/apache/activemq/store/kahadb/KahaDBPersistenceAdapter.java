@@ -698,6 +698,99 @@ public class KahaDBPersistenceAdapter extends LockableServiceSupport implements
         return letter.isEnableIndexPageCaching();
     }
 
+    public boolean isEnableJournalMappedReads() {
+        return letter.isEnableJournalMappedReads();
+    }
+
+    /**
+     * Read messages from journal data files that are no longer appended to
+     * through a read only memory mapping, avoiding a seek and read system call
+     * per message on cursor page in and recovery.  Not recommended on Windows
+     * where mapped files cannot be removed until the mapping is collected.
+     *
+     * @param enableJournalMappedReads
+     */
+    public void setEnableJournalMappedReads(boolean enableJournalMappedReads) {
+        letter.setEnableJournalMappedReads(enableJournalMappedReads);
+    }
+
+    public int getJournalRecoveryThreads() {
+        return letter.getJournalRecoveryThreads();
+    }
+
+    /**
+     * Number of threads used to replay the journal on recovery.  Journal reads and
+     * record decoding run ahead on this many threads and index updates of different
+     * destinations are applied in parallel, keeping the order within a destination.
+     * The default of 0 replays the journal on a single thread.
+     *
+     * @param journalRecoveryThreads
+     */
+    public void setJournalRecoveryThreads(int journalRecoveryThreads) {
+        letter.setJournalRecoveryThreads(journalRecoveryThreads);
+    }
+
+    public int getIndexOffHeapCacheSize() {
+        return letter.getIndexOffHeapCacheSize();
+    }
+
+    /**
+     * Number of index pages kept in direct memory behind the indexCacheSize page cache.
+     * Pages evicted from the page cache are reloaded from there without a disk read.
+     * The default of 0 disables the off heap cache, when enabled -XX:MaxDirectMemorySize
+     * must allow for indexOffHeapCacheSize * the index page size (4k).
+     *
+     * @param indexOffHeapCacheSize
+     */
+    public void setIndexOffHeapCacheSize(int indexOffHeapCacheSize) {
+        letter.setIndexOffHeapCacheSize(indexOffHeapCacheSize);
+    }
+
+    public boolean isEnableAsyncCheckpoint() {
+        return letter.isEnableAsyncCheckpoint();
+    }
+
+    /**
+     * Write and sync the index pages of a checkpoint without holding the index lock, so
+     * that sends and acks are not held up for the duration of the disk writes.  Only the
+     * capture of the checkpoint state is done while holding the lock.
+     *
+     * @param enableAsyncCheckpoint
+     */
+    public void setEnableAsyncCheckpoint(boolean enableAsyncCheckpoint) {
+        letter.setEnableAsyncCheckpoint(enableAsyncCheckpoint);
+    }
+
+    public boolean isJournalAdaptiveGroupCommit() {
+        return letter.isJournalAdaptiveGroupCommit();
+    }
+
+    /**
+     * When journal disk syncs are enabled, hold a write batch open for a fraction of the
+     * observed sync latency while more sync writes are expected, so that concurrent
+     * producers share a single sync.  Batch sizes and sync times are reported in the
+     * persistence adapter statistics.
+     *
+     * @param journalAdaptiveGroupCommit
+     */
+    public void setJournalAdaptiveGroupCommit(boolean journalAdaptiveGroupCommit) {
+        letter.setJournalAdaptiveGroupCommit(journalAdaptiveGroupCommit);
+    }
+
+    public int getJournalMaxGroupCommitDelay() {
+        return letter.getJournalMaxGroupCommitDelay();
+    }
+
+    /**
+     * Upper bound, in microseconds, of the time a write batch is held open by the
+     * adaptive group commit.  Defaults to 1000.
+     *
+     * @param journalMaxGroupCommitDelay
+     */
+    public void setJournalMaxGroupCommitDelay(int journalMaxGroupCommitDelay) {
+        letter.setJournalMaxGroupCommitDelay(journalMaxGroupCommitDelay);
+    }
+
     public int getCompactAcksAfterNoGC() {
         return letter.getCompactAcksAfterNoGC();
     }
@@ -749,6 +842,52 @@ public class KahaDBPersistenceAdapter extends LockableServiceSupport implements
         letter.setEnableAckCompaction(enableAckCompaction);
     }
 
+    public boolean isEnableMessageCompaction() {
+        return letter.isEnableMessageCompaction();
+    }
+
+    /**
+     * Configure if the message compaction task should run after a cleanup.  It moves
+     * the messages that are still referenced from an old, mostly consumed journal log to
+     * the head of the journal so that a few unconsumed messages don't keep the whole log
+     * from being removed.  One log is compacted per cleanup.
+     *
+     * @param enableMessageCompaction
+     */
+    public void setEnableMessageCompaction(boolean enableMessageCompaction) {
+        letter.setEnableMessageCompaction(enableMessageCompaction);
+    }
+
+    public boolean isEnableMessageIdFilter() {
+        return letter.isEnableMessageIdFilter();
+    }
+
+    /**
+     * Keep an in memory filter of the message ids of each destination in front of its
+     * message id index.  Looking up an id that is not stored, such as the duplicate check
+     * of an ack or update for a message that is gone, then needs no index page reads.
+     * The filters are built from the indexes on start and take about 5 bytes per message.
+     *
+     * @param enableMessageIdFilter
+     */
+    public void setEnableMessageIdFilter(boolean enableMessageIdFilter) {
+        letter.setEnableMessageIdFilter(enableMessageIdFilter);
+    }
+
+    public int getMessageCompactionThreshold() {
+        return letter.getMessageCompactionThreshold();
+    }
+
+    /**
+     * Sets the percentage of a journal log's length that may be taken up by referenced
+     * messages for the log to be compacted.  Defaults to 10.
+     *
+     * @param messageCompactionThreshold
+     */
+    public void setMessageCompactionThreshold(int messageCompactionThreshold) {
+        letter.setMessageCompactionThreshold(messageCompactionThreshold);
+    }
+
     /**
      * Whether non-blocking subscription statistics have been enabled
      *
@@ -769,6 +908,22 @@ public class KahaDBPersistenceAdapter extends LockableServiceSupport implements
         letter.setEnableSubscriptionStatistics(enableSubscriptionStatistics);
     }
 
+    public int getIndexLockStripes() {
+        return letter.getIndexLockStripes();
+    }
+
+    /**
+     * Guard non transactional index updates with one of N per destination locks so
+     * that updates to different destinations can be applied in parallel.  Checkpoint,
+     * cleanup and transaction commit still take the global index lock.  The default
+     * of 0 serializes all index updates on the global index lock.
+     *
+     * @param indexLockStripes
+     */
+    public void setIndexLockStripes(int indexLockStripes) {
+        letter.setIndexLockStripes(indexLockStripes);
+    }
+
     public KahaDBStore getStore() {
         return letter;
     }
@@ -62,6 +62,7 @@ import org.apache.activemq.protobuf.Buffer;
 import org.apache.activemq.store.AbstractMessageStore;
 import org.apache.activemq.store.IndexListener;
 import org.apache.activemq.store.ListenableFuture;
+import org.apache.activemq.store.MessageBatchRecoveryListener;
 import org.apache.activemq.store.MessageRecoveryListener;
 import org.apache.activemq.store.MessageStore;
 import org.apache.activemq.store.MessageStoreStatistics;
@@ -69,6 +70,7 @@ import org.apache.activemq.store.MessageStoreSubscriptionStatistics;
 import org.apache.activemq.store.NoLocalSubscriptionAware;
 import org.apache.activemq.store.PersistenceAdapter;
 import org.apache.activemq.store.ProxyMessageStore;
+import org.apache.activemq.store.RecoveredMessage;
 import org.apache.activemq.store.TopicMessageStore;
 import org.apache.activemq.store.TransactionIdTransformer;
 import org.apache.activemq.store.TransactionStore;
@@ -316,7 +318,7 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter,
             @Override
             public Location execute(Transaction tx) throws IOException {
                 StoredDestination sd = getStoredDestination(destination, tx);
-                Long sequence = sd.messageIdIndex.get(tx, key);
+                Long sequence = sd.getMessageId(tx, key);
                 if (sequence == null) {
                     return null;
                 }
@@ -720,6 +722,49 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter,
             }
         }
 
+        /**
+         * Reads the batch in one pass over the order index, the messages are
+         * handed over once the index lock is released and unmarshalled only
+         * when the listener asks for them. The read stops once the listener
+         * has no memory left for the messages read so far.
+         */
+        @Override
+        public void recoverNextMessageBatch(final int maxReturned, final MessageBatchRecoveryListener listener) throws Exception {
+            final List<RecoveredMessage> batch = new ArrayList<RecoveredMessage>(Math.min(maxReturned, 1024));
+            indexLock.writeLock().lock();
+            try {
+                pageFile.tx().execute(new Transaction.Closure<Exception>() {
+                    @Override
+                    public void execute(Transaction tx) throws Exception {
+                        StoredDestination sd = getStoredDestination(dest, tx);
+                        Entry<Long, MessageKeys> entry = null;
+                        int counter = recoverRolledBackAcks(destination.getPhysicalName(), sd, tx, maxReturned, listener);
+                        Set ackedAndPrepared = ackedAndPreparedMap.get(destination.getPhysicalName());
+                        long batchSize = 0;
+                        for (Iterator<Entry<Long, MessageKeys>> iterator = sd.orderIndex.iterator(tx); iterator.hasNext(); ) {
+                            entry = iterator.next();
+                            if (ackedAndPrepared != null && ackedAndPrepared.contains(entry.getValue().messageId)) {
+                                continue;
+                            }
+                            RecoveredMessage recovered = loadRecoveredMessage(entry.getValue().location, entry.getKey());
+                            batch.add(recovered);
+                            batchSize += recovered.getMarshalledSize();
+                            counter++;
+                            if (counter >= maxReturned || !listener.canRecoverMessages(batch.size(), batchSize)) {
+                                break;
+                            }
+                        }
+                        sd.orderIndex.stoppedIterating();
+                    }
+                });
+            } finally {
+                indexLock.writeLock().unlock();
+            }
+            if (!batch.isEmpty()) {
+                listener.recoverMessages(batch);
+            }
+        }
+
         protected int recoverRolledBackAcks(String recoveredTxStateMapKey, StoredDestination sd, Transaction tx, int maxReturned, MessageRecoveryListener listener) throws Exception {
             int counter = 0;
             String id;
@@ -731,7 +776,7 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter,
             for (Iterator<String> iterator = rolledBackAcks.iterator(); iterator.hasNext(); ) {
                 id = iterator.next();
                 iterator.remove();
-                Long sequence = sd.messageIdIndex.get(tx, id);
+                Long sequence = sd.getMessageId(tx, id);
                 if (sequence != null) {
                     if (sd.orderIndex.alreadyDispatched(sequence)) {
                         listener.recoverMessage(loadMessage(sd.orderIndex.get(tx, sequence).location));
@@ -1409,31 +1454,53 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter,
      */
     Message loadMessage(Location location) throws IOException {
         try {
-            JournalCommand<?> command = load(location);
-            KahaAddMessageCommand addMessage = null;
-            switch (command.type()) {
-                case KAHA_UPDATE_MESSAGE_COMMAND:
-                    addMessage = ((KahaUpdateMessageCommand) command).getMessage();
-                    break;
-                case KAHA_ADD_MESSAGE_COMMAND:
-                    addMessage = (KahaAddMessageCommand) command;
-                    break;
-                default:
-                    throw new IOException("Could not load journal record, unexpected command type: " + command.type() + " at location: " + location);
-            }
-            if (!addMessage.hasMessage()) {
-                throw new IOException("Could not load journal record, null message content at location: " + location);
-            }
+            KahaAddMessageCommand addMessage = loadAddMessage(location);
             Message msg = (Message) wireFormat.unmarshal(new DataInputStream(addMessage.getMessage().newInput()));
             return msg;
         } catch (Throwable t) {
-            IOException ioe = IOExceptionSupport.create("Unexpected error on journal read at: " + location , t);
-            LOG.error("Failed to load message at: {}", location , ioe);
-            brokerService.handleIOException(ioe);
-            throw ioe;
+            throw journalReadFailure(location, t);
         }
     }
 
+    /**
+     * Reads the message at the location without unmarshalling it, the
+     * recovered message shares the buffer read from the journal.
+     */
+    RecoveredMessage loadRecoveredMessage(Location location, long sequence) throws IOException {
+        try {
+            Buffer form = loadAddMessage(location).getMessage();
+            return new RecoveredMessage(new org.apache.activemq.util.ByteSequence(form.data, form.offset, form.length), wireFormat, sequence);
+        } catch (Throwable t) {
+            throw journalReadFailure(location, t);
+        }
+    }
+
+    private KahaAddMessageCommand loadAddMessage(Location location) throws IOException {
+        JournalCommand<?> command = load(location);
+        KahaAddMessageCommand addMessage = null;
+        switch (command.type()) {
+            case KAHA_UPDATE_MESSAGE_COMMAND:
+                addMessage = ((KahaUpdateMessageCommand) command).getMessage();
+                break;
+            case KAHA_ADD_MESSAGE_COMMAND:
+                addMessage = (KahaAddMessageCommand) command;
+                break;
+            default:
+                throw new IOException("Could not load journal record, unexpected command type: " + command.type() + " at location: " + location);
+        }
+        if (!addMessage.hasMessage()) {
+            throw new IOException("Could not load journal record, null message content at location: " + location);
+        }
+        return addMessage;
+    }
+
+    private IOException journalReadFailure(Location location, Throwable t) {
+        IOException ioe = IOExceptionSupport.create("Unexpected error on journal read at: " + location , t);
+        LOG.error("Failed to load message at: {}", location , ioe);
+        brokerService.handleIOException(ioe);
+        return ioe;
+    }
+
     // /////////////////////////////////////////////////////////////////
     // Internal conversion methods.
     // /////////////////////////////////////////////////////////////////
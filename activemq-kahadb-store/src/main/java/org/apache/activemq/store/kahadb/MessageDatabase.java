@@ -32,6 +32,7 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.ObjectStreamClass;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -42,22 +43,30 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.SortedSet;
+import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.activemq.ActiveMQMessageAuditNoSync;
@@ -100,6 +109,7 @@ import org.apache.activemq.store.kahadb.disk.journal.TargetedDataFileAppender;
 import org.apache.activemq.store.kahadb.disk.page.Page;
 import org.apache.activemq.store.kahadb.disk.page.PageFile;
 import org.apache.activemq.store.kahadb.disk.page.Transaction;
+import org.apache.activemq.store.kahadb.disk.util.CountingBloomFilter;
 import org.apache.activemq.store.kahadb.disk.util.LocationMarshaller;
 import org.apache.activemq.store.kahadb.disk.util.LongMarshaller;
 import org.apache.activemq.store.kahadb.disk.util.Marshaller;
@@ -140,6 +150,8 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
 
     static final byte COMPACTED_JOURNAL_FILE = DataFile.STANDARD_LOG_FILE + 1;
 
+    static final int MESSAGE_COMPACTION_BATCH_SIZE = 100;
+
     protected class Metadata {
         protected Page<Metadata> page;
         protected int state;
@@ -292,11 +304,23 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
     private boolean enableIndexDiskSyncs = true;
     private boolean enableIndexRecoveryFile = true;
     private boolean enableIndexPageCaching = true;
+    private boolean enableJournalMappedReads = false;
+    private int journalRecoveryThreads = 0;
+    private int indexOffHeapCacheSize = 0;
+    private boolean journalAdaptiveGroupCommit = false;
+    private int journalMaxGroupCommitDelay = Journal.DEFAULT_MAX_GROUP_COMMIT_DELAY;
     ReentrantReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+    // held by an asynchronous checkpoint until its pages are on disk
+    private final ReentrantLock checkpointFlushLock = new ReentrantLock();
+    private boolean enableAsyncCheckpoint = false;
 
     private boolean enableAckCompaction = true;
     private int compactAcksAfterNoGC = 10;
     private boolean compactAcksIgnoresStoreGrowth = false;
+    private boolean enableMessageCompaction = false;
+    private int messageCompactionThreshold = 10;
+    private boolean enableMessageIdFilter = false;
+    private final AtomicBoolean messageCompactionScheduled = new AtomicBoolean();
     private int checkPointCyclesWithNoGC;
     private int journalLogOnLastCompactionCheck;
     private boolean enableSubscriptionStatistics = false;
@@ -511,6 +535,8 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
 
     public void close() throws IOException, InterruptedException {
         if (opened.compareAndSet(true, false)) {
+            // wait for an asynchronous checkpoint that is still writing pages
+            checkpointFlushLock.lock();
             checkpointLock.writeLock().lock();
             try {
                 if (metadata.page != null) {
@@ -520,6 +546,7 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
                 metadata = createMetadata();
             } finally {
                 checkpointLock.writeLock().unlock();
+                checkpointFlushLock.unlock();
             }
             journal.close();
             synchronized(schedulerLock) {
@@ -703,7 +730,14 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
             requiresJournalReplay |= recoverAckMessageFileMap();
             Location lastIndoubtPosition = getRecoveryPosition();
             Location recoveryPosition = requiresJournalReplay ? journal.getNextLocation(null) : lastIndoubtPosition;
-            if (recoveryPosition != null) {
+            if (recoveryPosition != null && journalRecoveryThreads > 1) {
+                LOG.info("Recovering from the journal @" + recoveryPosition + " with " + journalRecoveryThreads + " threads");
+                int redoCounter = new ParallelJournalReplay(journalRecoveryThreads).replay(recoveryPosition, lastIndoubtPosition);
+                if (LOG.isInfoEnabled()) {
+                    long end = System.currentTimeMillis();
+                    LOG.info("Recovery replayed " + redoCounter + " operations from the journal in " + ((end - start) / 1000.0f) + " seconds.");
+                }
+            } else if (recoveryPosition != null) {
                 int redoCounter = 0;
                 int dataFileRotationTracker = recoveryPosition.getDataFileId();
                 LOG.info("Recovering from the journal @" + recoveryPosition);
@@ -796,6 +830,255 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
         }
     }
 
+    /**
+     * Replays the journal with journal reads and record decoding done ahead of time by a pool
+     * of threads, and with the index updates of non transactional adds, updates and acks of
+     * already loaded destinations applied by one lane per group of destinations. A destination
+     * always maps to the same lane so its updates are applied in journal order. Every other
+     * command waits for all lanes to drain and is then processed on the recovering thread,
+     * exactly as a serial replay would.
+     *
+     * The recovering thread holds the exclusive index lock for the whole replay, the lanes
+     * rely on the per destination isolation of the index together with the guards on the
+     * shared state that also allow striped index locking.
+     */
+    private class ParallelJournalReplay {
+
+        private static final int MAX_READ_AHEAD = 1000;
+        private static final int MAX_PENDING_UPDATES = 10000;
+
+        private final ExecutorService decoders;
+        private final ExecutorService[] lanes;
+        private final Semaphore pendingUpdates = new Semaphore(MAX_PENDING_UPDATES);
+        private final ConcurrentLinkedQueue<LaneFailure> laneFailures = new ConcurrentLinkedQueue<>();
+
+        ParallelJournalReplay(int threads) {
+            decoders = Executors.newFixedThreadPool(threads, new ReplayThreadFactory("ActiveMQ Journal Recovery Reader"));
+            lanes = new ExecutorService[threads];
+            for (int i = 0; i < threads; i++) {
+                lanes[i] = Executors.newSingleThreadExecutor(new ReplayThreadFactory("ActiveMQ Journal Recovery Index Updater"));
+            }
+        }
+
+        int replay(Location recoveryPosition, Location lastIndoubtPosition) throws IOException {
+            int redoCounter = 0;
+            int dataFileRotationTracker = recoveryPosition.getDataFileId();
+            ArrayDeque<PendingRead> readAhead = new ArrayDeque<>();
+            long readAheadBytes = 0;
+            Location next = recoveryPosition;
+            Location lastPosition = null;
+            try {
+                while (true) {
+                    while (next != null && readAhead.size() < MAX_READ_AHEAD && readAheadBytes < journalMaxFileLength) {
+                        readAhead.add(new PendingRead(next));
+                        readAheadBytes += next.getSize();
+                        next = journal.getNextLocation(next);
+                        // hold on to the minimum number of open files during recovery
+                        if (next != null && dataFileRotationTracker != next.getDataFileId()) {
+                            dataFileRotationTracker = next.getDataFileId();
+                            journal.cleanup();
+                        }
+                    }
+
+                    PendingRead pending = readAhead.poll();
+                    if (pending == null) {
+                        break;
+                    }
+                    readAheadBytes -= pending.location.getSize();
+
+                    try {
+                        JournalCommand<?> message = pending.get();
+                        metadata.lastUpdate = pending.location;
+                        lastPosition = pending.location;
+                        apply(message, pending.location, lastIndoubtPosition);
+                        redoCounter++;
+                    } catch (LaneFailureException failedLane) {
+                        // already reported against the location of the failed update
+                        throw failedLane;
+                    } catch (IOException failedRecovery) {
+                        if (isIgnoreMissingJournalfiles()) {
+                            LOG.debug("Failed to recover data at position:" + pending.location, failedRecovery);
+                            // track this dud location, anything read past it may be stale
+                            journal.corruptRecoveryLocation(pending.location);
+                            for (PendingRead stale : readAhead) {
+                                stale.future.cancel(false);
+                            }
+                            readAhead.clear();
+                            readAheadBytes = 0;
+                            next = journal.getNextLocation(pending.location);
+                        } else {
+                            throw new IOException("Failed to recover data at position:" + pending.location, failedRecovery);
+                        }
+                    }
+
+                    if (LOG.isInfoEnabled() && redoCounter % 100000 == 0) {
+                        LOG.info("@" + pending.location + ", " + redoCounter + " entries recovered ..");
+                    }
+                }
+                awaitPendingUpdates();
+                handleLaneFailures();
+                if (lastPosition != null) {
+                    metadata.lastUpdate = lastPosition;
+                }
+            } finally {
+                decoders.shutdownNow();
+                for (ExecutorService lane : lanes) {
+                    lane.shutdownNow();
+                }
+            }
+            return redoCounter;
+        }
+
+        private void apply(final JournalCommand<?> message, final Location location, Location lastIndoubtPosition) throws IOException {
+            KahaDestination destination = null;
+            if (lastIndoubtPosition != null && location.compareTo(lastIndoubtPosition) >= 0) {
+                destination = getLaneDestination(message);
+            }
+
+            if (destination == null || !storedDestinations.containsKey(key(destination))) {
+                awaitPendingUpdates();
+                handleLaneFailures();
+                process(message, location, lastIndoubtPosition);
+                return;
+            }
+
+            try {
+                pendingUpdates.acquire();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            String key = key(destination);
+            lanes[(key.hashCode() & Integer.MAX_VALUE) % lanes.length].execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        pageFile.tx().execute(new Transaction.Closure<IOException>() {
+                            @Override
+                            public void execute(Transaction tx) throws IOException {
+                                updateIndex(tx, message, location);
+                            }
+                        });
+                    } catch (Throwable e) {
+                        laneFailures.add(new LaneFailure(location, e));
+                    } finally {
+                        pendingUpdates.release();
+                    }
+                }
+            });
+        }
+
+        private KahaDestination getLaneDestination(JournalCommand<?> message) {
+            if (message instanceof KahaAddMessageCommand) {
+                KahaAddMessageCommand command = (KahaAddMessageCommand) message;
+                return command.hasTransactionInfo() ? null : command.getDestination();
+            } else if (message instanceof KahaRemoveMessageCommand) {
+                KahaRemoveMessageCommand command = (KahaRemoveMessageCommand) message;
+                return command.hasTransactionInfo() ? null : command.getDestination();
+            } else if (message instanceof KahaUpdateMessageCommand) {
+                return ((KahaUpdateMessageCommand) message).getMessage().getDestination();
+            }
+            return null;
+        }
+
+        private void updateIndex(Transaction tx, JournalCommand<?> message, Location location) throws IOException {
+            if (message instanceof KahaAddMessageCommand) {
+                MessageDatabase.this.updateIndex(tx, (KahaAddMessageCommand) message, location);
+            } else if (message instanceof KahaRemoveMessageCommand) {
+                MessageDatabase.this.updateIndex(tx, (KahaRemoveMessageCommand) message, location);
+            } else {
+                MessageDatabase.this.updateIndex(tx, (KahaUpdateMessageCommand) message, location);
+            }
+        }
+
+        private void awaitPendingUpdates() throws IOException {
+            try {
+                pendingUpdates.acquire(MAX_PENDING_UPDATES);
+                pendingUpdates.release(MAX_PENDING_UPDATES);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+        }
+
+        /**
+         * Deals with the updates that failed on a lane since the last call the same way a serial
+         * replay deals with a failed record, against the location of the failed update.
+         */
+        private void handleLaneFailures() throws IOException {
+            LaneFailure failure;
+            while ((failure = laneFailures.poll()) != null) {
+                if (isIgnoreMissingJournalfiles()) {
+                    LOG.debug("Failed to recover data at position:" + failure.location, failure.cause);
+                    // track this dud location
+                    journal.corruptRecoveryLocation(failure.location);
+                } else {
+                    throw new LaneFailureException("Failed to recover data at position:" + failure.location, failure.cause);
+                }
+            }
+        }
+
+        private final class LaneFailureException extends IOException {
+            private static final long serialVersionUID = 1L;
+
+            LaneFailureException(String message, Throwable cause) {
+                super(message, cause);
+            }
+        }
+
+        private final class LaneFailure {
+            final Location location;
+            final Throwable cause;
+
+            LaneFailure(Location location, Throwable cause) {
+                this.location = location;
+                this.cause = cause;
+            }
+        }
+
+        private final class PendingRead {
+            final Location location;
+            final Future<JournalCommand<?>> future;
+
+            PendingRead(final Location location) {
+                this.location = location;
+                this.future = decoders.submit(new Callable<JournalCommand<?>>() {
+                    @Override
+                    public JournalCommand<?> call() throws Exception {
+                        return load(location);
+                    }
+                });
+            }
+
+            JournalCommand<?> get() throws IOException {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw IOExceptionSupport.create(e.getCause());
+                }
+            }
+        }
+    }
+
+    private static final class ReplayThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        ReplayThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
     @SuppressWarnings("unused")
     private KahaTransactionInfo createLocalTransactionInfo(TransactionId tx) {
         return TransactionIdConversion.convertToLocal(tx);
@@ -880,7 +1163,7 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
                 MessageKeys keys = sd.orderIndex.remove(tx, sequenceId);
                 if (keys != null) {
                     sd.locationIndex.remove(tx, keys.location);
-                    sd.messageIdIndex.remove(tx, keys.messageId);
+                    sd.removeMessageId(tx, keys.messageId);
                     metadata.producerSequenceIdTracker.rollback(keys.messageId);
                     undoCounter++;
                     decrementAndSubSizeToStoreStat(tx, key, sd, keys.location.getSize());
@@ -996,7 +1279,7 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
                         for (Long sequenceId : matches.keySet()) {
                             MessageKeys keys = sd.orderIndex.remove(tx, sequenceId);
                             sd.locationIndex.remove(tx, keys.location);
-                            sd.messageIdIndex.remove(tx, keys.messageId);
+                            sd.removeMessageId(tx, keys.messageId);
                             LOG.info("[" + sdEntry.getKey() + "] dropped: " + keys.messageId + " at corrupt location: " + keys.location);
                             undoCounter++;
                             decrementAndSubSizeToStoreStat(tx, sdEntry.getKey(), sdEntry.getValue(), keys.location.getSize());
@@ -1329,55 +1612,39 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
             List<Operation> inflightTx = getInflightTx(command.getTransactionInfo());
             inflightTx.add(new AddOperation(command, location, runWithIndexLock));
         } else {
-            this.indexLock.writeLock().lock();
-            try {
-                pageFile.tx().execute(new Transaction.Closure<IOException>() {
-                    @Override
-                    public void execute(Transaction tx) throws IOException {
-                        long assignedIndex = updateIndex(tx, command, location);
-                        if (runWithIndexLock != null) {
-                            runWithIndexLock.sequenceAssignedWithIndexLocked(assignedIndex);
-                        }
-                    }
-                });
-
-            } finally {
-                this.indexLock.writeLock().unlock();
-            }
-        }
-    }
-
-    protected void process(final KahaUpdateMessageCommand command, final Location location) throws IOException {
-        this.indexLock.writeLock().lock();
-        try {
-            pageFile.tx().execute(new Transaction.Closure<IOException>() {
+            updateDestinationIndex(command.getDestination(), new Transaction.Closure<IOException>() {
                 @Override
                 public void execute(Transaction tx) throws IOException {
-                    updateIndex(tx, command, location);
+                    long assignedIndex = updateIndex(tx, command, location);
+                    if (runWithIndexLock != null) {
+                        runWithIndexLock.sequenceAssignedWithIndexLocked(assignedIndex);
+                    }
                 }
             });
-        } finally {
-            this.indexLock.writeLock().unlock();
         }
     }
 
+    protected void process(final KahaUpdateMessageCommand command, final Location location) throws IOException {
+        updateDestinationIndex(command.getMessage().getDestination(), new Transaction.Closure<IOException>() {
+            @Override
+            public void execute(Transaction tx) throws IOException {
+                updateIndex(tx, command, location);
+            }
+        });
+    }
+
     @SuppressWarnings("rawtypes")
     protected void process(final KahaRemoveMessageCommand command, final Location location) throws IOException {
         if (command.hasTransactionInfo()) {
            List<Operation> inflightTx = getInflightTx(command.getTransactionInfo());
            inflightTx.add(new RemoveOperation(command, location));
         } else {
-            this.indexLock.writeLock().lock();
-            try {
-                pageFile.tx().execute(new Transaction.Closure<IOException>() {
-                    @Override
-                    public void execute(Transaction tx) throws IOException {
-                        updateIndex(tx, command, location);
-                    }
-                });
-            } finally {
-                this.indexLock.writeLock().unlock();
-            }
+            updateDestinationIndex(command.getDestination(), new Transaction.Closure<IOException>() {
+                @Override
+                public void execute(Transaction tx) throws IOException {
+                    updateIndex(tx, command, location);
+                }
+            });
         }
     }
 
@@ -1500,6 +1767,65 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
         }
     }
 
+    /**
+     * Applies an index update that only touches the StoredDestination of the given destination.
+     *
+     * When index lock striping is enabled and the destination is already loaded the update runs
+     * with the shared side of the index lock plus the stripe that guards the destination, so
+     * updates to different destinations proceed in parallel while checkpoint, cleanup and other
+     * metadata wide operations still exclude them through the exclusive index lock. Loading or
+     * creating a StoredDestination changes shared metadata so it always takes the exclusive lock.
+     */
+    private void updateDestinationIndex(KahaDestination destination, Transaction.Closure<IOException> update) throws IOException {
+        final ReentrantLock[] stripes = destinationIndexLocks;
+        if (stripes != null) {
+            String key = key(destination);
+            this.indexLock.readLock().lock();
+            try {
+                if (storedDestinations.containsKey(key)) {
+                    ReentrantLock stripe = destinationIndexLock(stripes, key);
+                    stripe.lock();
+                    try {
+                        pageFile.tx().execute(update);
+                    } finally {
+                        stripe.unlock();
+                    }
+                    return;
+                }
+            } finally {
+                this.indexLock.readLock().unlock();
+            }
+        }
+
+        this.indexLock.writeLock().lock();
+        try {
+            pageFile.tx().execute(update);
+        } finally {
+            this.indexLock.writeLock().unlock();
+        }
+    }
+
+    private static ReentrantLock destinationIndexLock(ReentrantLock[] stripes, String key) {
+        return stripes[(key.hashCode() & Integer.MAX_VALUE) % stripes.length];
+    }
+
+    /**
+     * Records the location of the last applied index update. With striped index locks updates
+     * to different destinations can complete out of journal order so the position is only
+     * ever moved forward.
+     */
+    private void trackLastUpdate(Location location) {
+        if (destinationIndexLocks == null) {
+            metadata.lastUpdate = location;
+        } else {
+            synchronized (lastUpdateMutex) {
+                if (metadata.lastUpdate == null || metadata.lastUpdate.compareTo(location) < 0) {
+                    metadata.lastUpdate = location;
+                }
+            }
+        }
+    }
+
     protected void process(KahaRewrittenDataFileCommand command, Location location)  throws IOException {
         final TreeSet<Integer> completeFileSet = new TreeSet<>(journal.getFileMap().keySet());
 
@@ -1519,6 +1845,9 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
     // /////////////////////////////////////////////////////////////////
 
     protected final ReentrantReadWriteLock indexLock = new ReentrantReadWriteLock();
+    // per destination locks taken with indexLock.readLock(), null unless indexLockStripes > 0
+    private ReentrantLock[] destinationIndexLocks;
+    private final Object lastUpdateMutex = new Object();
     private final HashSet<Integer> journalFilesBeingReplicated = new HashSet<>();
 
     long updateIndex(Transaction tx, KahaAddMessageCommand command, Location location) throws IOException {
@@ -1538,14 +1867,14 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
         long id = sd.orderIndex.getNextMessageId();
         Long previous = sd.locationIndex.put(tx, location, id);
         if (previous == null) {
-            previous = sd.messageIdIndex.put(tx, command.getMessageId(), id);
+            previous = sd.putMessageId(tx, command.getMessageId(), id);
             if (previous == null) {
                 incrementAndAddSizeToStoreStat(tx, command.getDestination(), location.getSize());
                 sd.orderIndex.put(tx, priority, id, new MessageKeys(command.getMessageId(), location));
                 if (sd.subscriptions != null && !sd.subscriptions.isEmpty(tx)) {
                     addAckLocationForNewMessage(tx, command.getDestination(), sd, id);
                 }
-                metadata.lastUpdate = location;
+                trackLastUpdate(location);
             } else {
 
                 MessageKeys messageKeys = sd.orderIndex.get(tx, previous);
@@ -1553,7 +1882,7 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
                     // If the message ID is indexed, then the broker asked us to store a duplicate before the message was dispatched and acked, we ignore this add attempt
                     LOG.warn("Duplicate message add attempt rejected. Destination: {}://{}, Message id: {}", command.getDestination().getType(), command.getDestination().getName(), command.getMessageId());
                 }
-                sd.messageIdIndex.put(tx, command.getMessageId(), previous);
+                sd.putMessageId(tx, command.getMessageId(), previous);
                 sd.locationIndex.remove(tx, location);
                 id = -1;
             }
@@ -1564,22 +1893,24 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
             sd.locationIndex.put(tx, location, previous);
             // ensure sequence is not broken
             sd.orderIndex.revertNextMessageId();
-            metadata.lastUpdate = location;
+            trackLastUpdate(location);
         }
         // record this id in any event, initial send or recovery
-        metadata.producerSequenceIdTracker.isDuplicate(command.getMessageId());
+        synchronized (metadata.producerSequenceIdTracker) {
+            metadata.producerSequenceIdTracker.isDuplicate(command.getMessageId());
+        }
 
        return id;
     }
 
-    void trackPendingAdd(KahaDestination destination, Long seq) {
+    void trackPendingAdd(KahaDestination destination, long seq) {
         StoredDestination sd = storedDestinations.get(key(destination));
         if (sd != null) {
             sd.trackPendingAdd(seq);
         }
     }
 
-    void trackPendingAddComplete(KahaDestination destination, Long seq) {
+    void trackPendingAddComplete(KahaDestination destination, long seq) {
         StoredDestination sd = storedDestinations.get(key(destination));
         if (sd != null) {
             sd.trackPendingAddComplete(seq);
@@ -1590,7 +1921,7 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
         KahaAddMessageCommand command = updateMessageCommand.getMessage();
         StoredDestination sd = getStoredDestination(command.getDestination(), tx);
 
-        Long id = sd.messageIdIndex.get(tx, command.getMessageId());
+        Long id = sd.getMessageId(tx, command.getMessageId());
         if (id != null) {
             MessageKeys previousKeys = sd.orderIndex.put(
                     tx,
@@ -1622,7 +1953,7 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
                     sd.locationIndex.remove(tx, previousKeys.location);
                 }
             }
-            metadata.lastUpdate = location;
+            trackLastUpdate(location);
         } else {
             //Add the message if it can't be found
             this.updateIndex(tx, command, location);
@@ -1634,14 +1965,14 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
         if (!command.hasSubscriptionKey()) {
 
             // In the queue case we just remove the message from the index..
-            Long sequenceId = sd.messageIdIndex.remove(tx, command.getMessageId());
+            Long sequenceId = sd.removeMessageId(tx, command.getMessageId());
             if (sequenceId != null) {
                 MessageKeys keys = sd.orderIndex.remove(tx, sequenceId);
                 if (keys != null) {
                     sd.locationIndex.remove(tx, keys.location);
                     decrementAndSubSizeToStoreStat(tx, command.getDestination(), keys.location.getSize());
                     recordAckMessageReferenceLocation(ackLocation, keys.location);
-                    metadata.lastUpdate = ackLocation;
+                    trackLastUpdate(ackLocation);
                 }  else if (LOG.isDebugEnabled()) {
                     LOG.debug("message not found in order index: " + sequenceId  + " for: " + command.getMessageId());
                 }
@@ -1651,7 +1982,7 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
         } else {
             // In the topic case we need remove the message once it's been acked
             // by all the subs
-            Long sequence = sd.messageIdIndex.get(tx, command.getMessageId());
+            Long sequence = sd.getMessageId(tx, command.getMessageId());
 
             // Make sure it's a valid message id...
             if (sequence != null) {
@@ -1668,7 +1999,7 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
                 }
                 // The following method handles deleting un-referenced messages.
                 removeAckLocation(command, tx, sd, subscriptionKey, sequence);
-                metadata.lastUpdate = ackLocation;
+                trackLastUpdate(ackLocation);
             } else if (LOG.isDebugEnabled()) {
                 LOG.debug("on ack, no message sequence exists for id: " + command.getMessageId() + " and sub: " + command.getSubscriptionKey());
             }
@@ -1677,17 +2008,19 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
     }
 
     private void recordAckMessageReferenceLocation(Location ackLocation, Location messageLocation) {
-        Set<Integer> referenceFileIds = metadata.ackMessageFileMap.get(Integer.valueOf(ackLocation.getDataFileId()));
-        if (referenceFileIds == null) {
-            referenceFileIds = new HashSet<>();
-            referenceFileIds.add(messageLocation.getDataFileId());
-            metadata.ackMessageFileMap.put(ackLocation.getDataFileId(), referenceFileIds);
-            metadata.ackMessageFileMapDirtyFlag.lazySet(true);
+        synchronized (metadata.ackMessageFileMap) {
+            Set<Integer> referenceFileIds = metadata.ackMessageFileMap.get(Integer.valueOf(ackLocation.getDataFileId()));
+            if (referenceFileIds == null) {
+                referenceFileIds = new HashSet<>();
+                referenceFileIds.add(messageLocation.getDataFileId());
+                metadata.ackMessageFileMap.put(ackLocation.getDataFileId(), referenceFileIds);
+                metadata.ackMessageFileMapDirtyFlag.lazySet(true);
 
-        } else {
-            Integer id = Integer.valueOf(messageLocation.getDataFileId());
-            if (!referenceFileIds.contains(id)) {
-                referenceFileIds.add(id);
+            } else {
+                Integer id = Integer.valueOf(messageLocation.getDataFileId());
+                if (!referenceFileIds.contains(id)) {
+                    referenceFileIds.add(id);
+                }
             }
         }
     }
@@ -1778,6 +2111,10 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
     }
 
     private void checkpointUpdate(final boolean cleanup) throws IOException {
+        if (enableAsyncCheckpoint) {
+            asyncCheckpointUpdate(cleanup);
+            return;
+        }
         checkpointLock.writeLock().lock();
         try {
             this.indexLock.writeLock().lock();
@@ -1800,6 +2137,50 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
         }
     }
 
+    /**
+     * Only the checkpoint transaction runs under the checkpoint and index locks. Its
+     * pages, and every other dirty page, are then pending in the page file write cache
+     * and are written and synced with the locks released. Updates made in the meantime
+     * only replace the pending image of a page, should they reach disk with this batch
+     * the journal replay from the checkpointed location reapplies them.
+     */
+    private void asyncCheckpointUpdate(final boolean cleanup) throws IOException {
+        checkpointFlushLock.lock();
+        try {
+            Set<Integer> filesToGc;
+            checkpointLock.writeLock().lock();
+            try {
+                this.indexLock.writeLock().lock();
+                try {
+                    filesToGc = pageFile.tx().execute(new Transaction.CallableClosure<Set<Integer>, IOException>() {
+                        @Override
+                        public Set<Integer> execute(Transaction tx) throws IOException {
+                            return checkpointUpdate(tx, cleanup);
+                        }
+                    });
+                } finally {
+                    this.indexLock.writeLock().unlock();
+                }
+            } finally {
+                checkpointLock.writeLock().unlock();
+            }
+
+            pageFile.flush();
+
+            if (!filesToGc.isEmpty()) {
+                // after the index update such that partial removal does not leave dangling references in the index.
+                this.indexLock.writeLock().lock();
+                try {
+                    journal.removeDataFiles(filesToGc);
+                } finally {
+                    this.indexLock.writeLock().unlock();
+                }
+            }
+        } finally {
+            checkpointFlushLock.unlock();
+        }
+    }
+
     /**
      * @param tx
      * @throws IOException
@@ -2047,6 +2428,15 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
 
                 journalLogOnLastCompactionCheck = journal.getCurrentDataFileId();
             }
+
+            if (isEnableMessageCompaction() && messageCompactionScheduled.compareAndSet(false, true)) {
+                try {
+                    scheduler.execute(new MessageCompactionRunner());
+                } catch (Exception ex) {
+                    messageCompactionScheduled.set(false);
+                    LOG.warn("Error on queueing the Message Compactor", ex);
+                }
+            }
         }
         MDC.remove("activemq.persistenceDir");
 
@@ -2141,6 +2531,199 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
         }
     }
 
+    private final class MessageCompactionRunner implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                if (opened.get()) {
+                    compactMessages();
+                }
+            } catch (IOException ioe) {
+                LOG.error("Message compaction failed", ioe);
+                brokerService.handleIOException(ioe);
+            } catch (Throwable e) {
+                LOG.error("Message compaction failed", e);
+                brokerService.handleIOException(IOExceptionSupport.create(e));
+            } finally {
+                messageCompactionScheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Moves the messages still referenced from the oldest sparsely used data file to
+     * the head of the journal so that the next cleanup can remove the file. Each message
+     * is rewritten as an update command, the same record a redelivery update produces,
+     * so recovery and replay need no new handling.
+     *
+     * The messages are moved in small batches. A batch holds the checkpoint write lock
+     * such that no ack can be journaled ahead of an update yet be applied to the index
+     * after it, the journal order then matches the index order and a message acked in
+     * the meantime is never brought back by the update.
+     *
+     * @return the number of messages that were moved
+     */
+    int compactMessages() throws IOException {
+        final TreeMap<Location, String> live = new TreeMap<>();
+        int target;
+
+        indexLock.readLock().lock();
+        try {
+            target = pageFile.tx().execute(new Transaction.CallableClosure<Integer, IOException>() {
+                @Override
+                public Integer execute(Transaction tx) throws IOException {
+                    return selectMessageCompactionTarget(tx, live);
+                }
+            });
+        } finally {
+            indexLock.readLock().unlock();
+        }
+
+        if (target == -1) {
+            return 0;
+        }
+
+        LOG.debug("Compacting {} messages out of journal file: {}", live.size(), target);
+
+        int moved = 0;
+        List<Entry<Location, String>> entries = new ArrayList<>(live.entrySet());
+        for (int start = 0; start < entries.size() && opened.get(); start += MESSAGE_COMPACTION_BATCH_SIZE) {
+            moved += moveMessages(entries.subList(start, Math.min(entries.size(), start + MESSAGE_COMPACTION_BATCH_SIZE)));
+        }
+
+        LOG.debug("Moved {} messages out of journal file: {}", moved, target);
+        return moved;
+    }
+
+    // called with the shared index lock held, fills live with the messages of the selected data file
+    private int selectMessageCompactionTarget(Transaction tx, Map<Location, String> live) throws IOException {
+        Location lastUpdate = metadata.lastUpdate;
+        if (lastUpdate == null) {
+            return -1;
+        }
+
+        for (DataFile dataFile : journal.getFileMap().values()) {
+            int dataFileId = dataFile.getDataFileId();
+            // we won't move anything out of the last update
+            if (dataFileId >= lastUpdate.getDataFileId()) {
+                break;
+            }
+            if (journalFilesBeingReplicated.contains(dataFileId) || blockedFromCompaction(dataFileId)) {
+                continue;
+            }
+
+            long liveSize = 0;
+            live.clear();
+            final ReentrantLock[] stripes = destinationIndexLocks;
+            for (Entry<String, StoredDestination> entry : storedDestinations.entrySet()) {
+                // with striped index locks the shared index lock doesn't keep updates out of
+                // the destination, its stripe does
+                ReentrantLock stripe = stripes != null ? destinationIndexLock(stripes, entry.getKey()) : null;
+                if (stripe != null) {
+                    stripe.lock();
+                }
+                try {
+                    Iterator<Entry<Location, Long>> iterator = entry.getValue().locationIndex.iterator(tx, new Location(dataFileId, 0));
+                    while (iterator.hasNext()) {
+                        Location location = iterator.next().getKey();
+                        if (location.getDataFileId() != dataFileId) {
+                            break;
+                        }
+                        live.put(location, entry.getKey());
+                        liveSize += location.getSize();
+                    }
+                } finally {
+                    if (stripe != null) {
+                        stripe.unlock();
+                    }
+                }
+            }
+
+            if (!live.isEmpty() && liveSize * 100 <= (long) dataFile.getLength() * messageCompactionThreshold) {
+                return dataFileId;
+            }
+        }
+        live.clear();
+        return -1;
+    }
+
+    private int moveMessages(final List<Entry<Location, String>> batch) throws IOException {
+        // journal records don't change, read them without holding any lock
+        final List<KahaUpdateMessageCommand> updates = new ArrayList<>(batch.size());
+        for (Entry<Location, String> entry : batch) {
+            JournalCommand<?> command = load(entry.getKey());
+            KahaAddMessageCommand add = null;
+            if (command instanceof KahaAddMessageCommand) {
+                add = (KahaAddMessageCommand) command;
+            } else if (command instanceof KahaUpdateMessageCommand) {
+                add = ((KahaUpdateMessageCommand) command).getMessage();
+            } else {
+                LOG.warn("Not moving unexpected journal record at: {}", entry.getKey());
+            }
+
+            KahaUpdateMessageCommand update = null;
+            if (add != null) {
+                // the transaction that added the message is complete, it is not carried along
+                KahaAddMessageCommand message = new KahaAddMessageCommand();
+                message.setDestination(add.getDestination());
+                message.setMessageId(add.getMessageId());
+                message.setMessage(add.getMessage());
+                message.setPriority(add.getPriority());
+                message.setPrioritySupported(add.getPrioritySupported());
+                update = new KahaUpdateMessageCommand();
+                update.setMessage(message);
+            }
+            updates.add(update);
+        }
+
+        final int[] moved = new int[1];
+        Location last;
+        checkpointLock.writeLock().lock();
+        try {
+            indexLock.writeLock().lock();
+            try {
+                last = pageFile.tx().execute(new Transaction.CallableClosure<Location, IOException>() {
+                    @Override
+                    public Location execute(Transaction tx) throws IOException {
+                        Location last = null;
+                        for (int i = 0; i < batch.size(); i++) {
+                            KahaUpdateMessageCommand update = updates.get(i);
+                            StoredDestination sd = storedDestinations.get(batch.get(i).getValue());
+                            // skip messages that were acked or updated since they were selected
+                            if (update == null || sd == null || sd.locationIndex.get(tx, batch.get(i).getKey()) == null) {
+                                continue;
+                            }
+                            last = journal.write(toByteSequence(update), nullCompletionCallback);
+                            updateIndex(tx, update, last);
+                            moved[0]++;
+                        }
+                        return last;
+                    }
+                });
+            } finally {
+                indexLock.writeLock().unlock();
+            }
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+
+        if (last != null) {
+            if (journal.isJournalDiskSyncPeriodic()) {
+                lastAsyncJournalUpdate.set(last);
+            }
+            try {
+                last.getLatch().await();
+                if (last.getException().get() != null) {
+                    throw last.getException().get();
+                }
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException(e.toString());
+            }
+        }
+        return moved[0];
+    }
+
     // called with the index lock held
     private boolean blockedFromCompaction(int journalToAdvance) {
         // don't forward the current data file
@@ -2478,17 +3061,67 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
 
         StoredMessageStoreStatistics messageStoreStatistics;
 
-        public void trackPendingAdd(Long seq) {
+        // in memory front of the messageIdIndex, null unless enableMessageIdFilter
+        volatile CountingBloomFilter messageIdFilter;
+
+        /**
+         * Looks up the sequence of a message id, ids the filter has never seen don't
+         * touch the index.
+         */
+        Long getMessageId(Transaction tx, String messageId) throws IOException {
+            CountingBloomFilter filter = messageIdFilter;
+            if (filter != null && !filter.mightContain(messageId)) {
+                return null;
+            }
+            return messageIdIndex.get(tx, messageId);
+        }
+
+        Long putMessageId(Transaction tx, String messageId, Long sequence) throws IOException {
+            Long previous = messageIdIndex.put(tx, messageId, sequence);
+            CountingBloomFilter filter = messageIdFilter;
+            if (previous == null && filter != null) {
+                filter.add(messageId);
+                if (filter.size() > filter.getCapacity()) {
+                    loadMessageIdFilter(tx, filter.size());
+                }
+            }
+            return previous;
+        }
+
+        Long removeMessageId(Transaction tx, String messageId) throws IOException {
+            CountingBloomFilter filter = messageIdFilter;
+            if (filter != null && !filter.mightContain(messageId)) {
+                return null;
+            }
+            Long previous = messageIdIndex.remove(tx, messageId);
+            if (previous != null && filter != null) {
+                filter.remove(messageId);
+            }
+            return previous;
+        }
+
+        /**
+         * Builds the filter from the index with room for twice the given number of ids.
+         */
+        void loadMessageIdFilter(Transaction tx, long count) throws IOException {
+            CountingBloomFilter filter = new CountingBloomFilter((int) Math.min(Integer.MAX_VALUE / 16, Math.max(1024, count * 2)));
+            for (Iterator<Entry<String, Long>> iterator = messageIdIndex.iterator(tx); iterator.hasNext(); ) {
+                filter.add(iterator.next().getKey());
+            }
+            messageIdFilter = filter;
+        }
+
+        public void trackPendingAdd(long seq) {
             orderIndex.trackPendingAdd(seq);
         }
 
-        public void trackPendingAddComplete(Long seq) {
+        public void trackPendingAddComplete(long seq) {
             orderIndex.trackPendingAddComplete(seq);
         }
 
         @Override
         public String toString() {
-            return "nextSeq:" + orderIndex.nextMessageId + ",lastRet:" + orderIndex.cursor + ",pending:" + orderIndex.pendingAdditions.size();
+            return "nextSeq:" + orderIndex.nextMessageId + ",lastRet:" + orderIndex.cursor + ",pending:" + orderIndex.pendingSize();
         }
     }
 
@@ -2745,6 +3378,12 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
         rc.messageIdIndex.setValueMarshaller(LongMarshaller.INSTANCE);
         rc.messageIdIndex.load(tx);
 
+        if (enableMessageIdFilter) {
+            // the stored count only sizes the filter, the ids come from the index
+            MessageStoreStatistics statistics = rc.messageStoreStatistics.get(tx);
+            rc.loadMessageIdFilter(tx, statistics != null ? statistics.getMessageCount().getCount() : 0);
+        }
+
         //go through an upgrade old index if older than version 6
         if (metadata.version < 6) {
             for (Iterator<Entry<Location, Long>> iterator = rc.locationIndex.iterator(tx); iterator.hasNext(); ) {
@@ -3113,7 +3752,7 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
                 // Do the actual deletes.
                 for (Entry<Long, MessageKeys> entry : deletes) {
                     sd.locationIndex.remove(tx, entry.getValue().location);
-                    sd.messageIdIndex.remove(tx, entry.getValue().messageId);
+                    sd.removeMessageId(tx, entry.getValue().messageId);
                     sd.orderIndex.remove(tx, entry.getKey());
                     decrementAndSubSizeToStoreStat(tx, command.getDestination(), entry.getValue().location.getSize());
                 }
@@ -3167,7 +3806,7 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
                 // Do the actual deletes.
                 for (Entry<Long, MessageKeys> entry : deletes) {
                     sd.locationIndex.remove(tx, entry.getValue().location);
-                    sd.messageIdIndex.remove(tx, entry.getValue().messageId);
+                    sd.removeMessageId(tx, entry.getValue().messageId);
                     sd.orderIndex.remove(tx, entry.getKey());
                     decrementAndSubSizeToStoreStat(tx, command.getDestination(), entry.getValue().location.getSize());
                 }
@@ -3384,6 +4023,7 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
         index.setEnableDiskSyncs(isEnableIndexDiskSyncs());
         index.setEnableRecoveryFile(isEnableIndexRecoveryFile());
         index.setEnablePageCaching(isEnableIndexPageCaching());
+        index.setOffHeapPageCacheSize(getIndexOffHeapCacheSize());
         return index;
     }
 
@@ -3401,6 +4041,11 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
         manager.setPreallocationStrategy(
                 Journal.PreallocationStrategy.valueOf(preallocationStrategy.trim().toUpperCase()));
         manager.setJournalDiskSyncStrategy(journalDiskSyncStrategy);
+        manager.setEnableMappedReads(isEnableJournalMappedReads());
+        manager.setAdaptiveGroupCommit(isJournalAdaptiveGroupCommit());
+        manager.setMaxGroupCommitDelay(getJournalMaxGroupCommitDelay());
+        manager.setWriteBatchSizeStatistic(persistenceAdapterStatistics.getJournalWriteBatchSize());
+        manager.setSyncTimeStatistic(persistenceAdapterStatistics.getJournalSyncTime());
         if (getDirectoryArchive() != null) {
             IOHelper.mkdirs(getDirectoryArchive());
             manager.setDirectoryArchive(getDirectoryArchive());
@@ -3699,10 +4344,80 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
         return enableIndexPageCaching;
     }
 
+    public boolean isEnableJournalMappedReads() {
+        return enableJournalMappedReads;
+    }
+
+    public void setEnableJournalMappedReads(boolean enableJournalMappedReads) {
+        this.enableJournalMappedReads = enableJournalMappedReads;
+    }
+
+    public int getJournalRecoveryThreads() {
+        return journalRecoveryThreads;
+    }
+
+    public void setJournalRecoveryThreads(int journalRecoveryThreads) {
+        this.journalRecoveryThreads = journalRecoveryThreads;
+    }
+
+    public int getIndexOffHeapCacheSize() {
+        return indexOffHeapCacheSize;
+    }
+
+    public void setIndexOffHeapCacheSize(int indexOffHeapCacheSize) {
+        this.indexOffHeapCacheSize = indexOffHeapCacheSize;
+    }
+
+    public boolean isEnableAsyncCheckpoint() {
+        return enableAsyncCheckpoint;
+    }
+
+    public void setEnableAsyncCheckpoint(boolean enableAsyncCheckpoint) {
+        this.enableAsyncCheckpoint = enableAsyncCheckpoint;
+    }
+
+    public boolean isJournalAdaptiveGroupCommit() {
+        return journalAdaptiveGroupCommit;
+    }
+
+    public void setJournalAdaptiveGroupCommit(boolean journalAdaptiveGroupCommit) {
+        this.journalAdaptiveGroupCommit = journalAdaptiveGroupCommit;
+    }
+
+    public int getJournalMaxGroupCommitDelay() {
+        return journalMaxGroupCommitDelay;
+    }
+
+    public void setJournalMaxGroupCommitDelay(int journalMaxGroupCommitDelay) {
+        this.journalMaxGroupCommitDelay = journalMaxGroupCommitDelay;
+    }
+
     public PersistenceAdapterStatistics getPersistenceAdapterStatistics() {
         return this.persistenceAdapterStatistics;
     }
 
+    public int getIndexLockStripes() {
+        return destinationIndexLocks == null ? 0 : destinationIndexLocks.length;
+    }
+
+    /**
+     * Sets the number of locks used to guard non transactional index updates per destination.
+     * A value of 0, the default, serializes every index update on the single index lock.
+     *
+     * @param indexLockStripes the number of per destination lock stripes
+     */
+    public void setIndexLockStripes(int indexLockStripes) {
+        if (indexLockStripes > 0) {
+            ReentrantLock[] stripes = new ReentrantLock[indexLockStripes];
+            for (int i = 0; i < stripes.length; i++) {
+                stripes[i] = new ReentrantLock();
+            }
+            this.destinationIndexLocks = stripes;
+        } else {
+            this.destinationIndexLocks = null;
+        }
+    }
+
     // /////////////////////////////////////////////////////////////////
     // Internal conversion methods.
     // /////////////////////////////////////////////////////////////////
@@ -3776,7 +4491,8 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
         Long lastHighKey;
         Long lastLowKey;
         byte lastGetPriority;
-        final List<Long> pendingAdditions = new LinkedList<>();
+        // sequences of adds that are not yet visible to the cursor, mostly one contiguous range
+        final SequenceSet pendingAdditions = new SequenceSet();
         final MessageKeysMarshaller messageKeysMarshaller = new MessageKeysMarshaller();
 
         MessageKeys remove(Transaction tx, Long key) throws IOException {
@@ -3984,22 +4700,28 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
                     (cursor.lowPriorityCursorPosition > 0 && cursor.lowPriorityCursorPosition >= sequence);
         }
 
-        public void trackPendingAdd(Long seq) {
+        public void trackPendingAdd(long seq) {
             synchronized (pendingAdditions) {
                 pendingAdditions.add(seq);
             }
         }
 
-        public void trackPendingAddComplete(Long seq) {
+        public void trackPendingAddComplete(long seq) {
             synchronized (pendingAdditions) {
                 pendingAdditions.remove(seq);
             }
         }
 
+        long pendingSize() {
+            synchronized (pendingAdditions) {
+                return pendingAdditions.rangeSize();
+            }
+        }
+
         public Long minPendingAdd() {
             synchronized (pendingAdditions) {
                 if (!pendingAdditions.isEmpty()) {
-                    return pendingAdditions.get(0);
+                    return pendingAdditions.getHead().getFirst();
                 } else {
                     return null;
                 }
@@ -4203,6 +4925,30 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
         this.compactAcksIgnoresStoreGrowth = compactAcksIgnoresStoreGrowth;
     }
 
+    public boolean isEnableMessageCompaction() {
+        return enableMessageCompaction;
+    }
+
+    public void setEnableMessageCompaction(boolean enableMessageCompaction) {
+        this.enableMessageCompaction = enableMessageCompaction;
+    }
+
+    public int getMessageCompactionThreshold() {
+        return messageCompactionThreshold;
+    }
+
+    public void setMessageCompactionThreshold(int messageCompactionThreshold) {
+        this.messageCompactionThreshold = messageCompactionThreshold;
+    }
+
+    public boolean isEnableMessageIdFilter() {
+        return enableMessageIdFilter;
+    }
+
+    public void setEnableMessageIdFilter(boolean enableMessageIdFilter) {
+        this.enableMessageIdFilter = enableMessageIdFilter;
+    }
+
     /**
      * Returns whether Ack compaction is enabled
      *
@@ -29,6 +29,7 @@ import java.util.Map.Entry;
 import org.apache.activemq.store.kahadb.disk.index.BTreeIndex.Prefixer;
 import org.apache.activemq.store.kahadb.disk.page.Page;
 import org.apache.activemq.store.kahadb.disk.page.Transaction;
+import org.apache.activemq.store.kahadb.disk.util.LongMarshaller;
 import org.apache.activemq.store.kahadb.disk.util.VariableMarshaller;
 
 
@@ -47,6 +48,8 @@ public final class BTreeNode<Key,Value> {
     
     // Order list of keys in the node
     private Key[] keys;
+    // Unboxed copy of the keys when the index is keyed by LongMarshaller, searched instead of keys.
+    private long[] longKeys;
     // Values associated with the Keys. Null if this is a branch node.
     private Value[] values;
     // nodeId pointers to children BTreeNodes. Null if this is a leaf node.
@@ -194,8 +197,17 @@ public final class BTreeNode<Key,Value> {
             int count = is.readShort();
             
             node.keys = (Key[])new Object[count];
-            for (int i = 0; i < count; i++) {
-                node.keys[i] = index.getKeyMarshaller().readPayload(is);
+            if (index.getKeyMarshaller() == LongMarshaller.INSTANCE) {
+                node.longKeys = new long[count];
+                for (int i = 0; i < count; i++) {
+                    long key = is.readLong();
+                    node.longKeys[i] = key;
+                    node.keys[i] = (Key) Long.valueOf(key);
+                }
+            } else {
+                for (int i = 0; i < count; i++) {
+                    node.keys[i] = index.getKeyMarshaller().readPayload(is);
+                }
             }
             
             if( is.readBoolean() ) {
@@ -286,7 +298,7 @@ public final class BTreeNode<Key,Value> {
     public Value remove(Transaction tx, Key key) throws IOException {
 
         if(isBranch()) {
-            int idx = Arrays.binarySearch(keys, key);
+            int idx = search(key);
             idx = idx < 0 ? -(idx + 1) : idx + 1;
             BTreeNode<Key, Value> child = getChild(tx, idx);
             if( child.getPageId() == index.getPageId() ) {
@@ -338,6 +350,7 @@ public final class BTreeNode<Key,Value> {
                     if( children.length == 1 && parent==null ) {
                         child = getChild(tx, 0);
                         keys = child.keys;
+                        longKeys = child.longKeys;
                         children = child.children;
                         values = child.values;
                         // free up the page..
@@ -350,7 +363,7 @@ public final class BTreeNode<Key,Value> {
             
             return rc;
         } else {
-            int idx = Arrays.binarySearch(keys, key);
+            int idx = search(key);
             if (idx < 0) {
                 return null;
             } else {
@@ -376,7 +389,7 @@ public final class BTreeNode<Key,Value> {
         if( isBranch() ) {
             return getLeafNode(tx, this, key).put(tx, key, value);
         } else {
-            int idx = Arrays.binarySearch(keys, key);
+            int idx = search(key);
             
             Value oldValue=null;
             if (idx >= 0) {
@@ -403,7 +416,7 @@ public final class BTreeNode<Key,Value> {
 
     private void promoteValue(Transaction tx, Key key, long nodeId) throws IOException {
 
-        int idx = Arrays.binarySearch(keys, key);
+        int idx = search(key);
         idx = idx < 0 ? -(idx + 1) : idx + 1;
         setBranchData(arrayInsert(keys, key, idx), arrayInsert(children, nodeId, idx + 1));
 
@@ -569,7 +582,7 @@ public final class BTreeNode<Key,Value> {
         if( isBranch() ) {
             return getLeafNode(tx, this, key).get(tx, key);
         } else {
-            int idx = Arrays.binarySearch(keys, key);
+            int idx = search(key);
             if (idx < 0) {
                 return null;
             } else {
@@ -646,7 +659,7 @@ public final class BTreeNode<Key,Value> {
         if( isBranch() ) {
             return getLeafNode(tx, this, startKey).iterator(tx, startKey, endKey);
         } else {
-            int idx = Arrays.binarySearch(keys, startKey);
+            int idx = search(startKey);
             if (idx < 0) {
                 idx = -(idx + 1);
             }
@@ -679,7 +692,7 @@ public final class BTreeNode<Key,Value> {
         BTreeNode<Key, Value> current = node;
         while( true ) {
             if( current.isBranch() ) {
-                int idx = Arrays.binarySearch(current.keys, key);
+                int idx = current.search(key);
                 idx = idx < 0 ? -(idx + 1) : idx + 1;
                 BTreeNode<Key, Value> child = current.getChild(tx, idx);        
 
@@ -704,7 +717,7 @@ public final class BTreeNode<Key,Value> {
         if( isBranch() ) {
             return getLeafNode(tx, this, key).contains(tx, key);
         } else {
-            int idx = Arrays.binarySearch(keys, key);
+            int idx = search(key);
             if (idx < 0) {
                 return false;
             } else {
@@ -725,17 +738,44 @@ public final class BTreeNode<Key,Value> {
 
 
     private void setLeafData(Key[] keys, Value[] values) {
-        this.keys = keys;
+        setKeys(keys);
         this.values = values;
         this.children = null;
     }
     
     private void setBranchData(Key[] keys, long[] nodeIds) {
-        this.keys = keys;
+        setKeys(keys);
         this.children = nodeIds;
         this.values = null;
     }
 
+    private void setKeys(Key[] keys) {
+        if (keys == this.keys) {
+            return;
+        }
+        this.keys = keys;
+        if (index.getKeyMarshaller() == LongMarshaller.INSTANCE) {
+            long[] unboxed = new long[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                unboxed[i] = (Long) keys[i];
+            }
+            this.longKeys = unboxed;
+        } else {
+            this.longKeys = null;
+        }
+    }
+
+    /**
+     * Same contract as Arrays.binarySearch over the keys. Long keys are compared
+     * unboxed rather than through Comparable.compareTo.
+     */
+    private int search(Key key) {
+        if (longKeys != null) {
+            return Arrays.binarySearch(longKeys, (Long) key);
+        }
+        return Arrays.binarySearch(keys, key);
+    }
+
     @SuppressWarnings("unchecked")
     private Key[] createKeyArray(int size) {
         return (Key[])new Object[size];
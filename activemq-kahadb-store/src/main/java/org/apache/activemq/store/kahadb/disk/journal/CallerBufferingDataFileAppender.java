@@ -100,6 +100,7 @@ class CallerBufferingDataFileAppender extends DataFileAppender {
                 synchronized (enqueueMutex) {
                     while (true) {
                         if (nextWriteBatch != null) {
+                            awaitGroupCommit();
                             o = nextWriteBatch;
                             nextWriteBatch = null;
                             break;
@@ -162,8 +163,11 @@ class CallerBufferingDataFileAppender extends DataFileAppender {
                 }
 
                 if (forceToDisk) {
+                    long start = System.nanoTime();
                     file.sync();
+                    recordSync(System.nanoTime() - start);
                 }
+                recordBatch(wb);
 
                 Journal.WriteCommand lastWrite = wb.writes.getTail();
                 journal.setLastAppendLocation(lastWrite.location);
@@ -39,6 +39,7 @@ public class DataFileAccessorPool {
 
         private final DataFile file;
         private final List<DataFileAccessor> pool = new ArrayList<DataFileAccessor>();
+        private MappedDataFileAccessor mapped;
         private int openCounter;
         private boolean disposed;
 
@@ -66,15 +67,34 @@ public class DataFileAccessorPool {
             }
         }
 
+        public synchronized MappedDataFileAccessor openMappedDataFileReader() throws IOException {
+            // remap if the file was still being written when it was last mapped
+            if (mapped == null || mapped.getMappedLength() < file.getLength()) {
+                mapped = new MappedDataFileAccessor(file);
+            }
+            return mapped;
+        }
+
         public synchronized boolean isUsed() {
             return openCounter > 0;
         }
 
-        public synchronized void dispose() {
+        public synchronized boolean isMapped() {
+            return mapped != null;
+        }
+
+        public synchronized void disposeReaders() {
             for (DataFileAccessor reader : pool) {
                 reader.dispose();
             }
             pool.clear();
+        }
+
+        public synchronized void dispose() {
+            disposeReaders();
+            // there is no way to unmap explicitly, readers still holding the
+            // mapping keep it valid until it is garbage collected
+            mapped = null;
             disposed = true;
         }
 
@@ -96,8 +116,13 @@ public class DataFileAccessorPool {
         for (Iterator<Pool> iter = pools.values().iterator(); iter.hasNext();) {
             Pool pool = iter.next();
             if (!pool.isUsed()) {
-                pool.dispose();
-                iter.remove();
+                if (pool.isMapped()) {
+                    // the mapping holds no file handle, only release the readers
+                    pool.disposeReaders();
+                } else {
+                    pool.dispose();
+                    iter.remove();
+                }
             }
         }
     }
@@ -130,6 +155,19 @@ public class DataFileAccessorPool {
         return pool.openDataFileReader();
     }
 
+    synchronized MappedDataFileAccessor openMappedDataFileAccessor(DataFile dataFile) throws IOException {
+        if (closed) {
+            throw new IOException("Closed.");
+        }
+
+        Pool pool = pools.get(dataFile.getDataFileId());
+        if (pool == null) {
+            pool = new Pool(dataFile);
+            pools.put(dataFile.getDataFileId(), pool);
+        }
+        return pool.openMappedDataFileReader();
+    }
+
     synchronized void closeDataFileAccessor(DataFileAccessor reader) {
         Pool pool = pools.get(reader.getDataFile().getDataFileId());
         if (pool == null || closed) {
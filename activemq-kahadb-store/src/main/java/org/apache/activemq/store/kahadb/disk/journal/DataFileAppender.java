@@ -20,10 +20,12 @@ import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.zip.Adler32;
 import java.util.zip.Checksum;
 
+import org.apache.activemq.management.HistogramStatisticImpl;
 import org.apache.activemq.store.kahadb.disk.journal.Journal.JournalDiskSyncStrategy;
 import org.apache.activemq.store.kahadb.disk.util.DataByteArrayOutputStream;
 import org.apache.activemq.store.kahadb.disk.util.LinkedNodeList;
@@ -56,6 +58,13 @@ class DataFileAppender implements FileAppender {
     protected int maxWriteBatchSize;
     protected final boolean syncOnComplete;
     protected final boolean periodicSync;
+    protected final boolean adaptiveGroupCommit;
+    protected final long maxGroupCommitDelayNanos;
+
+    // adaptive group commit state, guarded by the enqueueMutex
+    private long lastSyncArrival;
+    private long syncArrivalInterval = Long.MAX_VALUE;
+    private long syncTimeAverage;
 
     protected boolean running;
     private Thread thread;
@@ -68,7 +77,11 @@ class DataFileAppender implements FileAppender {
         public final CountDownLatch latch = new CountDownLatch(1);
         protected final int offset;
         public int size = Journal.BATCH_CONTROL_RECORD_SIZE;
+        public int writeCount;
         public AtomicReference<IOException> exception = new AtomicReference<IOException>();
+        // set when a write needs a disk sync or could not be appended because the batch is full
+        protected boolean syncRequested;
+        protected boolean full;
 
         public WriteBatch(DataFile dataFile,int offset) {
             this.dataFile = dataFile;
@@ -97,6 +110,8 @@ class DataFileAppender implements FileAppender {
             write.location.setOffset(offset+size);
             int s = write.location.getSize();
             size += s;
+            writeCount++;
+            syncRequested |= write.sync | (syncOnComplete && write.onComplete != null);
             dataFile.incrementLength(s);
             journal.addToTotalLength(s);
         }
@@ -112,6 +127,8 @@ class DataFileAppender implements FileAppender {
         this.syncOnComplete = this.journal.isEnableAsyncDiskSync();
         this.periodicSync = JournalDiskSyncStrategy.PERIODIC.equals(
                 this.journal.getJournalDiskSyncStrategy());
+        this.adaptiveGroupCommit = this.journal.isAdaptiveGroupCommit();
+        this.maxGroupCommitDelayNanos = TimeUnit.MICROSECONDS.toNanos(this.journal.getMaxGroupCommitDelay());
     }
 
     @Override
@@ -178,6 +195,10 @@ class DataFileAppender implements FileAppender {
                 thread.start();
             }
 
+            if (adaptiveGroupCommit && (write.sync || (syncOnComplete && write.onComplete != null))) {
+                trackSyncArrival();
+            }
+
             while ( true ) {
                 if (nextWriteBatch == null) {
                     DataFile file = journal.getCurrentDataFile(write.location.getSize());
@@ -191,6 +212,11 @@ class DataFileAppender implements FileAppender {
                         break;
                     } else {
                         // Otherwise wait for the queuedCommand to be null
+                        if (adaptiveGroupCommit) {
+                            // stop the writer from holding the batch open any longer
+                            nextWriteBatch.full = true;
+                            enqueueMutex.notifyAll();
+                        }
                         try {
                             while (nextWriteBatch != null) {
                                 final long start = System.currentTimeMillis();
@@ -216,6 +242,59 @@ class DataFileAppender implements FileAppender {
         }
     }
 
+    private void trackSyncArrival() {
+        long now = System.nanoTime();
+        if (lastSyncArrival != 0) {
+            long interval = now - lastSyncArrival;
+            syncArrivalInterval = syncArrivalInterval == Long.MAX_VALUE ? interval : (syncArrivalInterval * 7 + interval) / 8;
+        }
+        lastSyncArrival = now;
+    }
+
+    /**
+     * Holds the next batch open while more writes that need a disk sync are expected
+     * to arrive before half of an average sync has elapsed. Waiting a fraction of the
+     * sync time lets a single sync serve a bigger group of writers when the arrival
+     * rate is high, and costs nothing when it is not. Called with the enqueueMutex held.
+     */
+    protected void awaitGroupCommit() throws InterruptedException {
+        WriteBatch batch = nextWriteBatch;
+        if (!adaptiveGroupCommit || batch == null || !batch.syncRequested) {
+            return;
+        }
+        long delay = Math.min(syncTimeAverage / 2, maxGroupCommitDelayNanos);
+        if (delay <= 0 || syncArrivalInterval > delay) {
+            return;
+        }
+        long deadline = System.nanoTime() + delay;
+        while (!shutdown && !batch.full) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            TimeUnit.NANOSECONDS.timedWait(enqueueMutex, remaining);
+        }
+    }
+
+    protected void recordSync(long syncNanos) {
+        if (adaptiveGroupCommit) {
+            synchronized (enqueueMutex) {
+                syncTimeAverage = syncTimeAverage == 0 ? syncNanos : (syncTimeAverage * 7 + syncNanos) / 8;
+            }
+        }
+        HistogramStatisticImpl syncTimeStatistic = journal.getSyncTimeStatistic();
+        if (syncTimeStatistic != null) {
+            syncTimeStatistic.addValue(TimeUnit.NANOSECONDS.toMicros(syncNanos));
+        }
+    }
+
+    protected void recordBatch(WriteBatch wb) {
+        HistogramStatisticImpl writeBatchSizeStatistic = journal.getWriteBatchSizeStatistic();
+        if (writeBatchSizeStatistic != null) {
+            writeBatchSizeStatistic.addValue(wb.writeCount);
+        }
+    }
+
     protected WriteBatch newWriteBatch(Journal.WriteCommand write, DataFile file) throws IOException {
         return new WriteBatch(file, file.getLength(), write);
     }
@@ -263,6 +342,7 @@ class DataFileAppender implements FileAppender {
                 synchronized (enqueueMutex) {
                     while (true) {
                         if (nextWriteBatch != null) {
+                            awaitGroupCommit();
                             wb = nextWriteBatch;
                             nextWriteBatch = null;
                             break;
@@ -340,8 +420,11 @@ class DataFileAppender implements FileAppender {
                 }
 
                 if (forceToDisk) {
+                    long start = System.nanoTime();
                     file.sync();
+                    recordSync(System.nanoTime() - start);
                 }
+                recordBatch(wb);
 
                 Journal.WriteCommand lastWrite = wb.writes.getTail();
                 journal.setLastAppendLocation(lastWrite.location);
@@ -46,6 +46,7 @@ import java.util.concurrent.atomic.AtomicReference;
 import java.util.zip.Adler32;
 import java.util.zip.Checksum;
 
+import org.apache.activemq.management.HistogramStatisticImpl;
 import org.apache.activemq.store.kahadb.disk.util.LinkedNode;
 import org.apache.activemq.store.kahadb.disk.util.LinkedNodeList;
 import org.apache.activemq.store.kahadb.disk.util.Sequence;
@@ -198,6 +199,7 @@ public class Journal {
     public static final int DEFAULT_MAX_FILE_LENGTH = 1024 * 1024 * 32;
     public static final int DEFAULT_CLEANUP_INTERVAL = 1000 * 30;
     public static final int DEFAULT_MAX_WRITE_BATCH_SIZE = 1024 * 1024 * 4;
+    public static final int DEFAULT_MAX_GROUP_COMMIT_DELAY = 1000;
 
     private static final Logger LOG = LoggerFactory.getLogger(Journal.class);
 
@@ -229,6 +231,11 @@ public class Journal {
     protected boolean checksum;
     protected boolean checkForCorruptionOnStartup;
     protected boolean enableAsyncDiskSync = true;
+    protected boolean enableMappedReads = false;
+    protected boolean adaptiveGroupCommit = false;
+    protected int maxGroupCommitDelay = DEFAULT_MAX_GROUP_COMMIT_DELAY;
+    private HistogramStatisticImpl writeBatchSizeStatistic;
+    private HistogramStatisticImpl syncTimeStatistic;
     private int nextDataFileId = 1;
     private Object dataFileIdLock = new Object();
     private final AtomicReference<DataFile> currentDataFile = new AtomicReference<>(null);
@@ -916,14 +923,17 @@ public class Journal {
             }
 
             // Load in location size and type.
-            DataFileAccessor reader = accessorPool.openDataFileAccessor(dataFile);
-            try {
-                reader.readLocationDetails(cur);
-            } catch (EOFException eof) {
-                LOG.trace("EOF on next: " + location + ", cur: " + cur);
-                throw eof;
-            } finally {
-                accessorPool.closeDataFileAccessor(reader);
+            if (!isMappedReadable(dataFile) || inflightWrites.containsKey(new WriteKey(cur))
+                    || !accessorPool.openMappedDataFileAccessor(dataFile).readLocationDetails(cur)) {
+                DataFileAccessor reader = accessorPool.openDataFileAccessor(dataFile);
+                try {
+                    reader.readLocationDetails(cur);
+                } catch (EOFException eof) {
+                    LOG.trace("EOF on next: " + location + ", cur: " + cur);
+                    throw eof;
+                } finally {
+                    accessorPool.closeDataFileAccessor(reader);
+                }
             }
 
             Sequence corruptedRange = dataFile.corruptedBlocks.get(cur.getOffset());
@@ -947,6 +957,12 @@ public class Journal {
 
     public ByteSequence read(Location location) throws IOException, IllegalStateException {
         DataFile dataFile = getDataFile(location);
+        if (isMappedReadable(dataFile) && !inflightWrites.containsKey(new WriteKey(location))) {
+            ByteSequence mapped = accessorPool.openMappedDataFileAccessor(dataFile).readRecord(location);
+            if (mapped != null) {
+                return mapped;
+            }
+        }
         DataFileAccessor reader = accessorPool.openDataFileAccessor(dataFile);
         ByteSequence rc = null;
         try {
@@ -957,6 +973,18 @@ public class Journal {
         return rc;
     }
 
+    /**
+     * Only data files that precede the current write file are read through a mapping, the
+     * current file and files reserved for compaction that are still being written are not.
+     */
+    private boolean isMappedReadable(DataFile dataFile) {
+        if (!enableMappedReads) {
+            return false;
+        }
+        DataFile current = currentDataFile.get();
+        return current != null && dataFile.getDataFileId() < current.getDataFileId();
+    }
+
     public Location write(ByteSequence data, boolean sync) throws IOException, IllegalStateException {
         Location loc = appender.storeItem(data, Location.USER_TYPE, sync);
         return loc;
@@ -1148,6 +1176,61 @@ public class Journal {
         return enableAsyncDiskSync;
     }
 
+    /**
+     * Read records of data files that are no longer written to through a read only
+     * memory mapping rather than a seek and read on a RandomAccessFile. Mapped data files
+     * cannot be deleted on some platforms, notably Windows, until the mapping is garbage
+     * collected.
+     */
+    public void setEnableMappedReads(boolean enableMappedReads) {
+        this.enableMappedReads = enableMappedReads;
+    }
+
+    public boolean isEnableMappedReads() {
+        return enableMappedReads;
+    }
+
+    /**
+     * Let the appender hold a batch that needs a disk sync open for a short while when
+     * more sync writes are expected, so that one sync serves more writers. The delay is
+     * derived from the observed sync latency and arrival rate and never exceeds
+     * maxGroupCommitDelay.
+     */
+    public void setAdaptiveGroupCommit(boolean adaptiveGroupCommit) {
+        this.adaptiveGroupCommit = adaptiveGroupCommit;
+    }
+
+    public boolean isAdaptiveGroupCommit() {
+        return adaptiveGroupCommit;
+    }
+
+    /**
+     * @param maxGroupCommitDelay upper bound, in microseconds, of the time a batch is held open
+     */
+    public void setMaxGroupCommitDelay(int maxGroupCommitDelay) {
+        this.maxGroupCommitDelay = maxGroupCommitDelay;
+    }
+
+    public int getMaxGroupCommitDelay() {
+        return maxGroupCommitDelay;
+    }
+
+    public HistogramStatisticImpl getWriteBatchSizeStatistic() {
+        return writeBatchSizeStatistic;
+    }
+
+    public void setWriteBatchSizeStatistic(HistogramStatisticImpl writeBatchSizeStatistic) {
+        this.writeBatchSizeStatistic = writeBatchSizeStatistic;
+    }
+
+    public HistogramStatisticImpl getSyncTimeStatistic() {
+        return syncTimeStatistic;
+    }
+
+    public void setSyncTimeStatistic(HistogramStatisticImpl syncTimeStatistic) {
+        this.syncTimeStatistic = syncTimeStatistic;
+    }
+
     public JournalDiskSyncStrategy getJournalDiskSyncStrategy() {
         return journalDiskSyncStrategy;
     }
@@ -0,0 +1,99 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb.disk.journal;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.activemq.util.ByteSequence;
+
+/**
+ * Reads records of a data file that is no longer appended to through a read only
+ * memory mapping of the file. Unlike the DataFileAccessor it does not need a seek and
+ * read system call per record and it is safe for concurrent use, so a single instance
+ * is shared by all readers of the data file.
+ *
+ * Reads that fall outside of the mapped region return null so that the caller can
+ * fall back to a DataFileAccessor.
+ */
+final class MappedDataFileAccessor {
+
+    private final DataFile dataFile;
+    private final MappedByteBuffer buffer;
+
+    public MappedDataFileAccessor(DataFile dataFile) throws IOException {
+        this.dataFile = dataFile;
+        try (RandomAccessFile file = new RandomAccessFile(dataFile.getFile(), "r")) {
+            FileChannel channel = file.getChannel();
+            long size = Math.min(dataFile.getLength(), channel.size());
+            // the mapping stays valid after the channel is closed
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    public DataFile getDataFile() {
+        return dataFile;
+    }
+
+    public int getMappedLength() {
+        return buffer.capacity();
+    }
+
+    public ByteSequence readRecord(Location location) throws IOException {
+        if (!location.isValid()) {
+            throw new IOException("Invalid location: " + location);
+        }
+
+        if (location.getSize() == Location.NOT_SET) {
+            if (!readLocationDetails(location)) {
+                return null;
+            }
+        }
+
+        long end = (long) location.getOffset() + location.getSize();
+        if (end > buffer.capacity()) {
+            return null;
+        }
+
+        try {
+            byte[] data = new byte[location.getSize() - Journal.RECORD_HEAD_SPACE];
+            ByteBuffer view = buffer.duplicate();
+            view.position(location.getOffset() + Journal.RECORD_HEAD_SPACE);
+            view.get(data);
+            return new ByteSequence(data, 0, data.length);
+        } catch (RuntimeException e) {
+            throw new IOException("Invalid location: " + location + " : " + e, e);
+        }
+    }
+
+    /**
+     * Fills in the size and type of the record at the given location.
+     *
+     * @return false if the record header is not covered by the mapping
+     */
+    public boolean readLocationDetails(Location location) {
+        if ((long) location.getOffset() + Journal.RECORD_HEAD_SPACE > buffer.capacity()) {
+            return false;
+        }
+        location.setSize(buffer.getInt(location.getOffset()));
+        location.setType(buffer.get(location.getOffset() + 4));
+        return true;
+    }
+}
@@ -0,0 +1,259 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb.disk.page;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A cache of raw page images kept in direct memory. It sits behind the on heap
+ * Page cache of the PageFile: pages that were evicted from the on heap cache can
+ * be reloaded from here without a disk read and without adding to the garbage
+ * collected heap.
+ *
+ * The capacity is split across a number of independently locked segments, each
+ * one backed by a single direct buffer with one fixed size slot per page. Slots
+ * are recycled using the CLOCK algorithm.
+ */
+class OffHeapPageCache {
+
+    // Keep a single segment's buffer comfortably inside the int addressable range.
+    private static final long MAX_SEGMENT_BYTES = 1024 * 1024 * 1024;
+
+    private final int pageSize;
+    private final Segment[] segments;
+
+    OffHeapPageCache(int pageSize, int capacity, int concurrency) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be > 0");
+        }
+        this.pageSize = pageSize;
+
+        long totalBytes = (long) capacity * pageSize;
+        int count = (int) Math.max(Math.max(1, concurrency), (totalBytes + MAX_SEGMENT_BYTES - 1) / MAX_SEGMENT_BYTES);
+        count = Math.min(count, capacity);
+
+        segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            int segmentCapacity = capacity / count + (i < capacity % count ? 1 : 0);
+            segments[i] = new Segment(pageSize, segmentCapacity);
+        }
+    }
+
+    /**
+     * Copies the start of the cached page image into the target array.
+     *
+     * @return false if the page is not cached
+     */
+    boolean get(long pageId, byte[] target) {
+        if (target.length > pageSize) {
+            return false;
+        }
+        return segmentFor(pageId).get(pageId, target);
+    }
+
+    /**
+     * Caches a copy of a full page image, replacing any previous image of the page.
+     */
+    void put(long pageId, byte[] data) {
+        if (data.length < pageSize) {
+            return;
+        }
+        segmentFor(pageId).put(pageId, data);
+    }
+
+    void remove(long pageId) {
+        segmentFor(pageId).remove(pageId);
+    }
+
+    void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    int getPageSize() {
+        return pageSize;
+    }
+
+    private Segment segmentFor(long pageId) {
+        return segments[(hash(pageId) >>> 16) % segments.length];
+    }
+
+    private static int hash(long pageId) {
+        long h = pageId * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & Integer.MAX_VALUE;
+    }
+
+    private static final class Segment {
+
+        private static final long EMPTY = -1;
+
+        private final int pageSize;
+        private final int capacity;
+        private final ByteBuffer memory;
+
+        // slot -> page id, EMPTY when the slot is free
+        private final long[] slotPageIds;
+        private final boolean[] referenced;
+        private final int[] freeSlots;
+        private int freeCount;
+        private int used;
+        private int hand;
+
+        // open addressing page id -> slot + 1, 0 marks an empty bucket
+        private final long[] tableKeys;
+        private final int[] tableSlots;
+        private final int mask;
+
+        Segment(int pageSize, int capacity) {
+            this.pageSize = pageSize;
+            this.capacity = capacity;
+            this.memory = ByteBuffer.allocateDirect(capacity * pageSize);
+            this.slotPageIds = new long[capacity];
+            this.referenced = new boolean[capacity];
+            this.freeSlots = new int[capacity];
+            Arrays.fill(slotPageIds, EMPTY);
+
+            int tableSize = Integer.highestOneBit(Math.max(2, capacity * 2 - 1)) << 1;
+            this.tableKeys = new long[tableSize];
+            this.tableSlots = new int[tableSize];
+            this.mask = tableSize - 1;
+        }
+
+        synchronized boolean get(long pageId, byte[] target) {
+            int bucket = find(pageId);
+            if (bucket < 0) {
+                return false;
+            }
+            int slot = tableSlots[bucket] - 1;
+            referenced[slot] = true;
+            memory.position(slot * pageSize);
+            memory.get(target, 0, target.length);
+            return true;
+        }
+
+        synchronized void put(long pageId, byte[] data) {
+            int slot;
+            int bucket = find(pageId);
+            if (bucket >= 0) {
+                slot = tableSlots[bucket] - 1;
+            } else {
+                slot = allocateSlot();
+                slotPageIds[slot] = pageId;
+                insert(pageId, slot);
+            }
+            referenced[slot] = false;
+            memory.position(slot * pageSize);
+            memory.put(data, 0, pageSize);
+        }
+
+        synchronized void remove(long pageId) {
+            int bucket = find(pageId);
+            if (bucket >= 0) {
+                int slot = tableSlots[bucket] - 1;
+                delete(bucket);
+                release(slot);
+            }
+        }
+
+        synchronized void clear() {
+            Arrays.fill(slotPageIds, EMPTY);
+            Arrays.fill(referenced, false);
+            Arrays.fill(tableSlots, 0);
+            freeCount = 0;
+            used = 0;
+            hand = 0;
+        }
+
+        synchronized int size() {
+            return used - freeCount;
+        }
+
+        private int allocateSlot() {
+            if (freeCount > 0) {
+                return freeSlots[--freeCount];
+            }
+            if (used < capacity) {
+                return used++;
+            }
+            // every slot is in use, evict the first one not referenced since the hand last passed it
+            while (referenced[hand]) {
+                referenced[hand] = false;
+                hand = (hand + 1) % capacity;
+            }
+            int slot = hand;
+            hand = (hand + 1) % capacity;
+            delete(find(slotPageIds[slot]));
+            return slot;
+        }
+
+        private void release(int slot) {
+            slotPageIds[slot] = EMPTY;
+            referenced[slot] = false;
+            freeSlots[freeCount++] = slot;
+        }
+
+        private int find(long pageId) {
+            int bucket = hash(pageId) & mask;
+            while (tableSlots[bucket] != 0) {
+                if (tableKeys[bucket] == pageId) {
+                    return bucket;
+                }
+                bucket = (bucket + 1) & mask;
+            }
+            return -1;
+        }
+
+        private void insert(long pageId, int slot) {
+            int bucket = hash(pageId) & mask;
+            while (tableSlots[bucket] != 0) {
+                bucket = (bucket + 1) & mask;
+            }
+            tableKeys[bucket] = pageId;
+            tableSlots[bucket] = slot + 1;
+        }
+
+        // backward shift deletion keeps the probe sequences intact without tombstones
+        private void delete(int bucket) {
+            tableSlots[bucket] = 0;
+            int next = bucket;
+            while (true) {
+                next = (next + 1) & mask;
+                if (tableSlots[next] == 0) {
+                    return;
+                }
+                int home = hash(tableKeys[next]) & mask;
+                boolean stays = bucket <= next ? (bucket < home && home <= next) : (bucket < home || home <= next);
+                if (!stays) {
+                    tableKeys[bucket] = tableKeys[next];
+                    tableSlots[bucket] = tableSlots[next];
+                    tableSlots[next] = 0;
+                    bucket = next;
+                }
+            }
+        }
+    }
+}
@@ -41,6 +41,7 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.zip.Adler32;
 import java.util.zip.Checksum;
 
@@ -58,7 +59,8 @@ import org.slf4j.LoggerFactory;
 
 /**
  * A PageFile provides you random access to fixed sized disk pages. This object is not thread safe and therefore access to it should
- * be externally synchronized.
+ * be externally synchronized. The exception is page allocation and freeing which are guarded internally so that transactions
+ * that touch disjoint sets of pages can be committed concurrently.
  * <p/>
  * The file has 3 parts:
  * Metadata Space: 4k : Reserved metadata area. Used to store persistent config about the file.
@@ -116,6 +118,9 @@ public class PageFile {
     private boolean enablePageCaching = true;
     // How many pages will we keep in the cache?
     private int pageCacheSize = DEFAULT_PAGE_CACHE_SIZE;
+    // Raw page images kept in direct memory behind the page cache, 0 disables it.
+    private int offHeapPageCacheSize = 0;
+    private volatile OffHeapPageCache offHeapPageCache;
 
     // Should first log the page write to the recovery buffer? Avoids partial
     // page write failures..
@@ -132,10 +137,15 @@ public class PageFile {
 
     // Keeps track of writes that are being written to disk.
     private final TreeMap<Long, PageWrite> writes = new TreeMap<Long, PageWrite>();
+    // Serializes write batches so that disk writes can run outside of the writes monitor.
+    private final ReentrantLock writeBatchLock = new ReentrantLock();
+    // Set when an update filled the write cache while another thread was writing a batch.
+    private final AtomicBoolean writeBatchRequested = new AtomicBoolean();
 
     // Keeps track of free pages.
     private final AtomicLong nextFreePageId = new AtomicLong();
     private SequenceSet freeList = new SequenceSet();
+    private final Object freeListMutex = new Object();
 
     private AtomicReference<SequenceSet> recoveredFreeList = new AtomicReference<SequenceSet>();
     private AtomicReference<SequenceSet> trackingFreeDuringRecovery = new AtomicReference<SequenceSet>();
@@ -430,6 +440,9 @@ public class PageFile {
             metaData.setCleanShutdown(false);
             storeMetaData();
             getFreeFile().delete();
+            if (offHeapPageCacheSize > 0) {
+                offHeapPageCache = new OffHeapPageCache(pageSize, offHeapPageCacheSize, Runtime.getRuntime().availableProcessors());
+            }
             startWriter();
             if (trackingFreeDuringRecovery.get() != null) {
                 asyncFreePageRecovery(nextFreePageId.get());
@@ -547,6 +560,10 @@ public class PageFile {
                 if (pageCache != null) {
                     pageCache = null;
                 }
+                if (offHeapPageCache != null) {
+                    offHeapPageCache.clear();
+                    offHeapPageCache = null;
+                }
                 synchronized (writes) {
                     writes.clear();
                 }
@@ -579,16 +596,18 @@ public class PageFile {
             throw new IOException("Page file already stopped: checkpointing is not allowed");
         }
 
-        SequenceSet recovered = recoveredFreeList.get();
-        if (recovered != null) {
-            recoveredFreeList.lazySet(null);
-            SequenceSet inUse = trackingFreeDuringRecovery.get();
-            recovered.remove(inUse);
-            freeList.merge(recovered);
+        synchronized (freeListMutex) {
+            SequenceSet recovered = recoveredFreeList.get();
+            if (recovered != null) {
+                recoveredFreeList.lazySet(null);
+                SequenceSet inUse = trackingFreeDuringRecovery.get();
+                recovered.remove(inUse);
+                freeList.merge(recovered);
 
-            // all set for clean shutdown
-            trackingFreeDuringRecovery.set(null);
-            inUse.clear();
+                // all set for clean shutdown
+                trackingFreeDuringRecovery.set(null);
+                inUse.clear();
+            }
         }
 
         // Setup a latch that gets notified when all buffered writes hits the disk.
@@ -604,10 +623,15 @@ public class PageFile {
                 checkpointLatch = this.checkpointLatch;
                 writes.notify();
             } else {
-                writeBatch();
-                return;
+                checkpointLatch = null;
             }
         }
+        if (checkpointLatch == null) {
+            // the batch captures every write pending at this point, updates made while it
+            // is written only replace the pending image of a page and go to the next batch
+            writeBatch();
+            return;
+        }
         try {
             checkpointLatch.await();
         } catch (InterruptedException e) {
@@ -823,6 +847,23 @@ public class PageFile {
         this.pageCacheSize = pageCacheSize;
     }
 
+    /**
+     * @return the maximum number of raw page images kept in direct memory.
+     */
+    public int getOffHeapPageCacheSize() {
+        return offHeapPageCacheSize;
+    }
+
+    /**
+     * @param offHeapPageCacheSize Sets the maximum number of raw page images kept in direct memory
+     *                             behind the read page cache, 0 disables the off heap cache. The JVM
+     *                             must allow for offHeapPageCacheSize * pageSize bytes of direct memory.
+     */
+    public void setOffHeapPageCacheSize(int offHeapPageCacheSize) {
+        assertNotLoaded();
+        this.offHeapPageCacheSize = offHeapPageCacheSize;
+    }
+
     public boolean isEnabledWriteThread() {
         return enabledWriteThread;
     }
@@ -837,7 +878,9 @@ public class PageFile {
     }
 
     public boolean isFreePage(long pageId) {
-        return freeList.contains(pageId);
+        synchronized (freeListMutex) {
+            return freeList.contains(pageId);
+        }
     }
     /**
      * @return the number of pages allocated in the PageFile
@@ -852,7 +895,9 @@ public class PageFile {
 
     public long getFreePageCount() {
         assertLoaded();
-        return freeList.rangeSize();
+        synchronized (freeListMutex) {
+            return freeList.rangeSize();
+        }
     }
 
     public void setRecoveryFileMinPageCount(int recoveryFileMinPageCount) {
@@ -926,7 +971,10 @@ public class PageFile {
             throw new IllegalArgumentException("The allocation count must be larger than zero");
         }
 
-        Sequence seq = freeList.removeFirstSequence(count);
+        Sequence seq;
+        synchronized (freeListMutex) {
+            seq = freeList.removeFirstSequence(count);
+        }
 
         // We may need to create new free pages...
         if (seq == null) {
@@ -967,19 +1015,31 @@ public class PageFile {
         return nextTxid.incrementAndGet();
     }
 
-    synchronized void readPage(long pageId, byte[] data) throws IOException {
-        readFile.seek(toOffset(pageId));
-        readFile.readFully(data);
+    void readPage(long pageId, byte[] data) throws IOException {
+        OffHeapPageCache offHeap = offHeapPageCache;
+        if (offHeap != null && offHeap.get(pageId, data)) {
+            return;
+        }
+        synchronized (this) {
+            readFile.seek(toOffset(pageId));
+            readFile.readFully(data);
+            if (offHeap != null) {
+                // only complete page images are cached, partial header reads are not
+                offHeap.put(pageId, data);
+            }
+        }
     }
 
     public void freePage(long pageId) {
-        freeList.add(pageId);
-        removeFromCache(pageId);
+        synchronized (freeListMutex) {
+            freeList.add(pageId);
 
-        SequenceSet trackFreeDuringRecovery = trackingFreeDuringRecovery.get();
-        if (trackFreeDuringRecovery != null) {
-            trackFreeDuringRecovery.add(pageId);
+            SequenceSet trackFreeDuringRecovery = trackingFreeDuringRecovery.get();
+            if (trackFreeDuringRecovery != null) {
+                trackFreeDuringRecovery.add(pageId);
+            }
         }
+        removeFromCache(pageId);
     }
 
     @SuppressWarnings("unchecked")
@@ -1006,6 +1066,7 @@ public class PageFile {
     }
 
     void write(Collection<Map.Entry<Long, PageWrite>> updates) throws IOException {
+        boolean startWriteBatch = false;
         synchronized (writes) {
             if (enabledWriteThread) {
                 while (writes.size() >= writeBatchSize && !stopWriter.get()) {
@@ -1044,10 +1105,13 @@ public class PageFile {
                 if (enabledWriteThread) {
                     writes.notify();
                 } else {
-                    writeBatch();
+                    startWriteBatch = true;
                 }
             }
         }
+        if (startWriteBatch) {
+            requestWriteBatch();
+        }
     }
 
     private boolean canStartWriteBatch() {
@@ -1091,6 +1155,10 @@ public class PageFile {
         if (enablePageCaching) {
             pageCache.remove(pageId);
         }
+        OffHeapPageCache offHeap = offHeapPageCache;
+        if (offHeap != null) {
+            offHeap.remove(pageId);
+        }
     }
 
     ///////////////////////////////////////////////////////////////////
@@ -1123,6 +1191,40 @@ public class PageFile {
     }
 
     private void writeBatch() throws IOException {
+        writeBatchLock.lock();
+        try {
+            writeNextBatch();
+        } finally {
+            writeBatchLock.unlock();
+        }
+        writeRequestedBatches();
+    }
+
+    /**
+     * Updates that fill the write cache never wait for a batch that is already on its way
+     * to disk, a checkpoint flush for instance, as they may hold the index lock. The thread
+     * writing that batch writes the overflow once it is done.
+     */
+    private void requestWriteBatch() throws IOException {
+        writeBatchRequested.set(true);
+        writeRequestedBatches();
+    }
+
+    private void writeRequestedBatches() throws IOException {
+        // every thread rechecks the request after releasing the lock, so a request made
+        // while the lock was held is never left behind
+        while (writeBatchRequested.get() && writeBatchLock.tryLock()) {
+            try {
+                while (writeBatchRequested.getAndSet(false)) {
+                    writeNextBatch();
+                }
+            } finally {
+                writeBatchLock.unlock();
+            }
+        }
+    }
+
+    private void writeNextBatch() throws IOException {
 
         CountDownLatch checkpointLatch;
         ArrayList<PageWrite> batch;
@@ -1187,9 +1289,18 @@ public class PageFile {
                 }
             }
 
+            OffHeapPageCache offHeap = offHeapPageCache;
             for (PageWrite w : batch) {
+                byte[] diskBound = w.getDiskBound(tmpFilesForRemoval);
                 writeFile.seek(toOffset(w.page.getPageId()));
-                writeFile.write(w.getDiskBound(tmpFilesForRemoval), 0, pageSize);
+                writeFile.write(diskBound, 0, pageSize);
+                if (offHeap != null) {
+                    // refresh the image under the read monitor so a concurrent miss
+                    // cannot cache the previous content after this write
+                    synchronized (this) {
+                        offHeap.put(w.page.getPageId(), diskBound);
+                    }
+                }
                 w.done();
             }
 
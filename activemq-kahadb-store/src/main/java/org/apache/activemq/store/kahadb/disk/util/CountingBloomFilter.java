@@ -0,0 +1,124 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb.disk.util;
+
+/**
+ * A Bloom filter over String keys that also supports removal. Each position holds a
+ * four bit counter instead of a single bit, so a key can be taken out again as long
+ * as it was added before. A counter that reaches its maximum stays there, which can
+ * only cause false positives, never false negatives.
+ *
+ * Sized for the given capacity at about one percent false positives; once more keys
+ * than that are held the false positive rate goes up and the owner should rebuild the
+ * filter with a larger capacity.
+ */
+public class CountingBloomFilter {
+
+    private static final int HASHES = 5;
+    private static final int COUNTERS_PER_KEY = 10;
+    private static final int COUNTERS_PER_WORD = 16;
+    private static final long MAX_COUNT = 0xF;
+
+    private final int capacity;
+    private final long[] words;
+    private final long mask;
+    private int size;
+
+    public CountingBloomFilter(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        long counters = Long.highestOneBit(Math.max(COUNTERS_PER_WORD, (long) this.capacity * COUNTERS_PER_KEY - 1)) << 1;
+        this.words = new long[(int) (counters / COUNTERS_PER_WORD)];
+        this.mask = counters - 1;
+    }
+
+    public synchronized void add(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < HASHES; i++) {
+            long counter = (h1 + (long) i * h2) & mask;
+            int word = (int) (counter / COUNTERS_PER_WORD);
+            int shift = (int) (counter % COUNTERS_PER_WORD) * 4;
+            if (((words[word] >>> shift) & MAX_COUNT) != MAX_COUNT) {
+                words[word] += 1L << shift;
+            }
+        }
+        size++;
+    }
+
+    /**
+     * Removes a key that was added before, removing any other key corrupts the filter.
+     */
+    public synchronized void remove(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < HASHES; i++) {
+            long counter = (h1 + (long) i * h2) & mask;
+            int word = (int) (counter / COUNTERS_PER_WORD);
+            int shift = (int) (counter % COUNTERS_PER_WORD) * 4;
+            long count = (words[word] >>> shift) & MAX_COUNT;
+            // a saturated counter may stand for more keys than it can tell, keep it
+            if (count != 0 && count != MAX_COUNT) {
+                words[word] -= 1L << shift;
+            }
+        }
+        size--;
+    }
+
+    /**
+     * @return false if the key was definitely not added, true if it may have been
+     */
+    public synchronized boolean mightContain(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < HASHES; i++) {
+            long counter = (h1 + (long) i * h2) & mask;
+            int word = (int) (counter / COUNTERS_PER_WORD);
+            int shift = (int) (counter % COUNTERS_PER_WORD) * 4;
+            if (((words[word] >>> shift) & MAX_COUNT) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private static long hash(String key) {
+        // 64 bit FNV-1a over the chars followed by a final avalanche, the two halves are the two hashes
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        // an even second hash would only ever probe half of the counters
+        return hash | (1L << 32);
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.broker.ConnectionContext;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.command.MessageAck;
+import org.apache.activemq.command.MessageId;
+import org.apache.activemq.store.MessageStore;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.Timeout;
+
+public class IndexLockStripingTest {
+
+    private static final int DESTINATIONS = 8;
+    private static final int MESSAGES = 200;
+
+    @Rule
+    public TemporaryFolder dataFileDir = new TemporaryFolder(new File("target"));
+
+    @Rule
+    public Timeout globalTimeout = new Timeout(60, TimeUnit.SECONDS);
+
+    private KahaDBStore store;
+
+    @After
+    public void after() throws Exception {
+        if (store != null) {
+            store.stop();
+        }
+    }
+
+    @Test
+    public void testConcurrentUpdatesAcrossDestinations() throws Exception {
+        store = createStore();
+        store.start();
+        assertEquals(16, store.getIndexLockStripes());
+
+        ExecutorService executor = Executors.newFixedThreadPool(DESTINATIONS);
+        try {
+            List<Future<Void>> results = new ArrayList<>();
+            for (int d = 0; d < DESTINATIONS; d++) {
+                final MessageStore messageStore = store.createQueueMessageStore(new ActiveMQQueue("test." + d));
+                messageStore.start();
+                final int destination = d;
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        for (int i = 0; i < MESSAGES; i++) {
+                            messageStore.addMessage(new ConnectionContext(), createMessage(destination, i));
+                        }
+                        // ack every other message
+                        for (int i = 0; i < MESSAGES; i += 2) {
+                            MessageAck ack = new MessageAck();
+                            ack.setLastMessageId(createMessageId(destination, i));
+                            messageStore.removeMessage(new ConnectionContext(), ack);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdownNow();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+
+        assertMessageCounts(MESSAGES / 2);
+
+        // the index must be consistent after a checkpoint and restart
+        store.checkpoint(true);
+        store.stop();
+        store = createStore();
+        store.start();
+
+        assertMessageCounts(MESSAGES / 2);
+    }
+
+    private void assertMessageCounts(int expected) throws Exception {
+        for (int d = 0; d < DESTINATIONS; d++) {
+            MessageStore messageStore = store.createQueueMessageStore(new ActiveMQQueue("test." + d));
+            messageStore.start();
+            assertEquals("count for test." + d, expected, messageStore.getMessageCount());
+        }
+    }
+
+    private KahaDBStore createStore() {
+        KahaDBStore store = new KahaDBStore();
+        store.setDirectory(dataFileDir.getRoot());
+        store.setJournalMaxFileLength(64 * 1024);
+        store.setIndexLockStripes(16);
+        return store;
+    }
+
+    private MessageId createMessageId(int destination, int num) {
+        MessageId messageId = new MessageId("ID:localhost-56913-1254499826208-" + destination + ":0:1:1:" + num);
+        messageId.setBrokerSequenceId(num);
+        return messageId;
+    }
+
+    private ActiveMQTextMessage createMessage(int destination, int num) throws Exception {
+        ActiveMQTextMessage message = new ActiveMQTextMessage();
+        message.setText("test" + num);
+        message.setMessageId(createMessageId(destination, num));
+        message.setDestination(new ActiveMQQueue("test." + destination));
+        return message;
+    }
+}
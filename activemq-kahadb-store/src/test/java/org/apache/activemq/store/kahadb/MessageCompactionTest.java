@@ -0,0 +1,134 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.broker.ConnectionContext;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.command.MessageAck;
+import org.apache.activemq.command.MessageId;
+import org.apache.activemq.store.MessageStore;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.Timeout;
+
+public class MessageCompactionTest {
+
+    private static final int MESSAGES = 300;
+    private static final int UNCONSUMED = 2;
+
+    @Rule
+    public TemporaryFolder dataFileDir = new TemporaryFolder(new File("target"));
+
+    @Rule
+    public Timeout globalTimeout = new Timeout(60, TimeUnit.SECONDS);
+
+    private KahaDBStore store;
+
+    @After
+    public void after() throws Exception {
+        if (store != null) {
+            store.stop();
+        }
+    }
+
+    @Test
+    public void testUnconsumedMessagesDontPinJournalFile() throws Exception {
+        store = createStore();
+        store.start();
+
+        MessageStore messageStore = store.createQueueMessageStore(new ActiveMQQueue("test"));
+        messageStore.start();
+        for (int i = 0; i < MESSAGES; i++) {
+            messageStore.addMessage(new ConnectionContext(), createMessage(i));
+        }
+        // consume everything but the first messages, which live in the first journal file
+        for (int i = UNCONSUMED; i < MESSAGES; i++) {
+            MessageAck ack = new MessageAck();
+            ack.setLastMessageId(createMessageId(i));
+            messageStore.removeMessage(new ConnectionContext(), ack);
+        }
+
+        int firstFile = store.getJournal().getFileMap().keySet().iterator().next();
+        store.checkpoint(true);
+        assertTrue("first file pinned", store.getJournal().getFileMap().containsKey(firstFile));
+
+        assertEquals(UNCONSUMED, store.compactMessages());
+        // nothing left to move
+        assertEquals(0, store.compactMessages());
+        store.checkpoint(true);
+        assertFalse("first file removed", store.getJournal().getFileMap().containsKey(firstFile));
+
+        assertMessages(messageStore);
+
+        store.stop();
+        store = createStore();
+        store.start();
+        MessageStore recovered = store.createQueueMessageStore(new ActiveMQQueue("test"));
+        recovered.start();
+        assertMessages(recovered);
+    }
+
+    private void assertMessages(MessageStore messageStore) throws Exception {
+        assertEquals(UNCONSUMED, messageStore.getMessageCount());
+        for (int i = 0; i < UNCONSUMED; i++) {
+            ActiveMQTextMessage message = (ActiveMQTextMessage) messageStore.getMessage(createMessageId(i));
+            assertEquals(payload(i), message.getText());
+        }
+    }
+
+    private KahaDBStore createStore() {
+        KahaDBStore store = new KahaDBStore();
+        store.setDirectory(dataFileDir.getRoot());
+        store.setJournalMaxFileLength(64 * 1024);
+        store.setCheckpointInterval(0);
+        store.setCleanupInterval(0);
+        store.setMessageCompactionThreshold(50);
+        return store;
+    }
+
+    private MessageId createMessageId(int num) {
+        MessageId messageId = new MessageId("ID:localhost-56913-1254499826208-1:0:1:1:" + num);
+        messageId.setBrokerSequenceId(num);
+        return messageId;
+    }
+
+    private String payload(int num) {
+        StringBuilder text = new StringBuilder("test" + num);
+        while (text.length() < 1024) {
+            text.append('x');
+        }
+        return text.toString();
+    }
+
+    private ActiveMQTextMessage createMessage(int num) throws Exception {
+        ActiveMQTextMessage message = new ActiveMQTextMessage();
+        message.setText(payload(num));
+        message.setMessageId(createMessageId(num));
+        message.setDestination(new ActiveMQQueue("test"));
+        return message;
+    }
+}
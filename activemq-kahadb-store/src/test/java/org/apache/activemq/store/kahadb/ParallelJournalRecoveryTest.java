@@ -0,0 +1,191 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.activemq.broker.ConnectionContext;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.command.MessageAck;
+import org.apache.activemq.command.MessageId;
+import org.apache.activemq.store.MessageStore;
+import org.apache.activemq.store.kahadb.data.KahaAddMessageCommand;
+import org.apache.activemq.store.kahadb.disk.journal.DataFile;
+import org.apache.activemq.store.kahadb.disk.journal.Location;
+import org.apache.activemq.store.kahadb.disk.page.Transaction;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.Timeout;
+
+public class ParallelJournalRecoveryTest {
+
+    private static final int DESTINATIONS = 10;
+    private static final int MESSAGES = 300;
+
+    @Rule
+    public TemporaryFolder dataFileDir = new TemporaryFolder(new File("target"));
+
+    @Rule
+    public Timeout globalTimeout = new Timeout(60, TimeUnit.SECONDS);
+
+    private KahaDBStore store;
+
+    @After
+    public void after() throws Exception {
+        if (store != null) {
+            store.stop();
+        }
+    }
+
+    @Test
+    public void testReplayWithoutIndex() throws Exception {
+        populateAndDropIndex();
+
+        store = createStore();
+        store.setJournalRecoveryThreads(4);
+        store.start();
+
+        for (int d = 0; d < DESTINATIONS; d++) {
+            MessageStore messageStore = store.createQueueMessageStore(new ActiveMQQueue("test." + d));
+            messageStore.start();
+            assertEquals("count for test." + d, MESSAGES - d * 10, messageStore.getMessageCount());
+            assertNotNull("unacked message recovered", messageStore.getMessage(createMessageId(d, MESSAGES - 1)));
+        }
+    }
+
+    @Test
+    public void testLaneFailureFailsRecovery() throws Exception {
+        populateAndDropIndex();
+
+        AtomicBoolean failed = new AtomicBoolean();
+        store = createLaneFailingStore(failed);
+        store.setJournalRecoveryThreads(4);
+        try {
+            store.start();
+            fail("recovery should fail");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().startsWith("Failed to recover data at position:"));
+        }
+        assertTrue("lane failure injected", failed.get());
+    }
+
+    @Test
+    public void testLaneFailureMarksLocationCorrupt() throws Exception {
+        populateAndDropIndex();
+
+        AtomicBoolean failed = new AtomicBoolean();
+        store = createLaneFailingStore(failed);
+        store.setJournalRecoveryThreads(4);
+        store.setIgnoreMissingJournalfiles(true);
+        store.start();
+        assertTrue("lane failure injected", failed.get());
+
+        boolean corrupt = false;
+        for (DataFile dataFile : store.getJournal().getFileMap().values()) {
+            corrupt |= !dataFile.getCorruptedBlocks().isEmpty();
+        }
+        assertTrue("failed location marked corrupt", corrupt);
+
+        // replay carried on past the failed update
+        MessageStore messageStore = store.createQueueMessageStore(new ActiveMQQueue("test." + (DESTINATIONS - 1)));
+        messageStore.start();
+        assertNotNull(messageStore.getMessage(createMessageId(DESTINATIONS - 1, MESSAGES - 1)));
+    }
+
+    private void populateAndDropIndex() throws Exception {
+        store = createStore();
+        store.start();
+
+        for (int d = 0; d < DESTINATIONS; d++) {
+            MessageStore messageStore = store.createQueueMessageStore(new ActiveMQQueue("test." + d));
+            messageStore.start();
+            for (int i = 0; i < MESSAGES; i++) {
+                messageStore.addMessage(new ConnectionContext(), createMessage(d, i));
+            }
+            // ack a destination dependent number of messages
+            for (int i = 0; i < d * 10; i++) {
+                MessageAck ack = new MessageAck();
+                ack.setLastMessageId(createMessageId(d, i));
+                messageStore.removeMessage(new ConnectionContext(), ack);
+            }
+        }
+        store.stop();
+
+        // drop the index so that the whole journal is replayed
+        assertTrue(new File(dataFileDir.getRoot(), "db.data").delete());
+        new File(dataFileDir.getRoot(), "db.redo").delete();
+
+    }
+
+    /**
+     * @return a store that fails the index update of one message added to the first
+     *         destination when it is replayed on a lane
+     */
+    private KahaDBStore createLaneFailingStore(final AtomicBoolean failed) {
+        final String failingId = createMessageId(0, MESSAGES / 2).toString();
+        KahaDBStore store = new KahaDBStore() {
+            @Override
+            long updateIndex(Transaction tx, KahaAddMessageCommand command, Location location) throws IOException {
+                if (command.getMessageId().equals(failingId)
+                        && Thread.currentThread().getName().startsWith("ActiveMQ Journal Recovery Index Updater")
+                        && failed.compareAndSet(false, true)) {
+                    throw new IOException("injected lane failure");
+                }
+                return super.updateIndex(tx, command, location);
+            }
+        };
+        configure(store);
+        return store;
+    }
+
+    private KahaDBStore createStore() {
+        KahaDBStore store = new KahaDBStore();
+        configure(store);
+        return store;
+    }
+
+    private void configure(KahaDBStore store) {
+        store.setDirectory(dataFileDir.getRoot());
+        store.setJournalMaxFileLength(64 * 1024);
+        store.setCheckpointInterval(0);
+    }
+
+    private MessageId createMessageId(int destination, int num) {
+        MessageId messageId = new MessageId("ID:localhost-56913-1254499826208-" + destination + ":0:1:1:" + num);
+        messageId.setBrokerSequenceId(num);
+        return messageId;
+    }
+
+    private ActiveMQTextMessage createMessage(int destination, int num) throws Exception {
+        ActiveMQTextMessage message = new ActiveMQTextMessage();
+        message.setText("test" + num);
+        message.setMessageId(createMessageId(destination, num));
+        message.setDestination(new ActiveMQQueue("test." + destination));
+        return message;
+    }
+}
@@ -31,6 +31,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.TreeMap;
 
 import org.apache.activemq.store.kahadb.disk.page.PageFile;
 import org.apache.activemq.store.kahadb.disk.page.Transaction;
@@ -436,6 +437,51 @@ public class BTreeIndexTest extends IndexTestSupport {
         tx.commit();
     }
 
+    @Test(timeout=60000)
+    public void testLongKeysMatchSortedMap() throws Exception {
+        pf = new PageFile(getDirectory(), getClass().getName());
+        pf.setPageSize(1024);
+        pf.load();
+        tx = pf.tx();
+        long id = tx.allocate().getPageId();
+
+        BTreeIndex<Long, Long> test = new BTreeIndex<Long, Long>(pf, id);
+        test.setKeyMarshaller(LongMarshaller.INSTANCE);
+        test.setValueMarshaller(LongMarshaller.INSTANCE);
+        test.load(tx);
+        tx.commit();
+
+        TreeMap<Long, Long> expected = new TreeMap<Long, Long>();
+        Random random = new Random(7);
+        tx = pf.tx();
+        for (int i = 0; i < 20000; i++) {
+            // include negative keys, unboxed comparison must keep the signed order
+            long key = random.nextInt(4000) - 1000;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), test.remove(tx, key));
+            } else {
+                assertEquals(expected.put(key, (long) i), test.put(tx, key, (long) i));
+            }
+        }
+        tx.commit();
+
+        tx = pf.tx();
+        for (long key = -1000; key < 3000; key++) {
+            assertEquals(expected.get(key), test.get(tx, key));
+            assertEquals(expected.containsKey(key), test.containsKey(tx, key));
+        }
+
+        Iterator<Map.Entry<Long, Long>> actual = test.iterator(tx, 500L);
+        for (Map.Entry<Long, Long> entry : expected.tailMap(500L).entrySet()) {
+            assertTrue(actual.hasNext());
+            Map.Entry<Long, Long> next = actual.next();
+            assertEquals(entry.getKey(), next.getKey());
+            assertEquals(entry.getValue(), next.getValue());
+        }
+        assertFalse(actual.hasNext());
+        tx.commit();
+    }
+
     public void exerciseAnotherIndex(Transaction tx) throws Exception {
         long id = tx.allocate().getPageId();
 
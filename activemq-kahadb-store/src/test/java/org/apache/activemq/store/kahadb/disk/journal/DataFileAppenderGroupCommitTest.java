@@ -0,0 +1,109 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb.disk.journal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.management.HistogramStatisticImpl;
+import org.apache.activemq.util.ByteSequence;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.Timeout;
+
+public class DataFileAppenderGroupCommitTest {
+
+    private static final int PRODUCERS = 16;
+    private static final int WRITES = 100;
+
+    @Rule
+    public TemporaryFolder dataFileDir = new TemporaryFolder(new File("target"));
+
+    @Rule
+    public Timeout globalTimeout = new Timeout(60, TimeUnit.SECONDS);
+
+    private Journal journal;
+
+    @After
+    public void after() throws Exception {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    @Test
+    public void testConcurrentSyncWritesShareBatches() throws Exception {
+        HistogramStatisticImpl batchSizes = new HistogramStatisticImpl("batchSize", "writes", "");
+        HistogramStatisticImpl syncTimes = new HistogramStatisticImpl("syncTime", "micros", "");
+
+        journal = new Journal();
+        journal.setDirectory(dataFileDir.getRoot());
+        journal.setAdaptiveGroupCommit(true);
+        journal.setMaxGroupCommitDelay(2000);
+        journal.setWriteBatchSizeStatistic(batchSizes);
+        journal.setSyncTimeStatistic(syncTimes);
+        journal.start();
+
+        assertTrue(((DataFileAppender) journal.appender).adaptiveGroupCommit);
+
+        ExecutorService executor = Executors.newFixedThreadPool(PRODUCERS);
+        try {
+            List<Future<List<Location>>> results = new ArrayList<>();
+            for (int p = 0; p < PRODUCERS; p++) {
+                final int producer = p;
+                results.add(executor.submit(new Callable<List<Location>>() {
+                    @Override
+                    public List<Location> call() throws Exception {
+                        List<Location> locations = new ArrayList<>();
+                        for (int i = 0; i < WRITES; i++) {
+                            locations.add(journal.write(new ByteSequence(data(producer, i)), true));
+                        }
+                        return locations;
+                    }
+                }));
+            }
+
+            for (int p = 0; p < PRODUCERS; p++) {
+                List<Location> locations = results.get(p).get();
+                for (int i = 0; i < WRITES; i++) {
+                    ByteSequence read = journal.read(locations.get(i));
+                    assertEquals(new String(data(p, i)), new String(read.getData(), read.getOffset(), read.getLength()));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(PRODUCERS * WRITES, batchSizes.getTotalValue());
+        assertEquals(batchSizes.getCount(), syncTimes.getCount());
+    }
+
+    private static byte[] data(int producer, int num) {
+        return ("DATA-" + producer + "-" + num).getBytes();
+    }
+}
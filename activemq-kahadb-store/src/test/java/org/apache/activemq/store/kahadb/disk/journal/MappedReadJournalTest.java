@@ -0,0 +1,53 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb.disk.journal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.activemq.util.ByteSequence;
+
+public class MappedReadJournalTest extends JournalTest {
+
+    @Override
+    protected void configure(Journal dataManager) {
+        dataManager.setMaxFileLength(16 * 1024);
+        dataManager.setEnableMappedReads(true);
+    }
+
+    public void testReadAcrossRolledDataFiles() throws Exception {
+        List<Location> locations = new ArrayList<Location>();
+        for (int i = 0; i < 500; i++) {
+            locations.add(dataManager.write(new ByteSequence(("DATA-" + i).getBytes()), true));
+        }
+        assertTrue("data files rolled", dataManager.getFileMap().size() > 1);
+
+        for (int i = 0; i < locations.size(); i++) {
+            ByteSequence read = dataManager.read(locations.get(i));
+            assertEquals("DATA-" + i, new String(read.getData(), read.getOffset(), read.getLength()));
+        }
+
+        // replay from the start must see every record, in order
+        int count = 0;
+        for (Location location = dataManager.getNextLocation(null); location != null; location = dataManager.getNextLocation(location)) {
+            ByteSequence read = dataManager.read(location);
+            assertEquals("DATA-" + count, new String(read.getData(), read.getOffset(), read.getLength()));
+            count++;
+        }
+        assertEquals(locations.size(), count);
+    }
+}
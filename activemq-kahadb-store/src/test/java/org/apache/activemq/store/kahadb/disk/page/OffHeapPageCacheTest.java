@@ -0,0 +1,133 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb.disk.page;
+
+import java.io.File;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import org.apache.activemq.store.kahadb.disk.util.StringMarshaller;
+
+public class OffHeapPageCacheTest extends TestCase {
+
+    private static final int PAGE_SIZE = 64;
+
+    public void testPutGetRemove() throws Exception {
+        OffHeapPageCache cache = new OffHeapPageCache(PAGE_SIZE, 16, 4);
+
+        cache.put(5, page(5));
+        byte[] read = new byte[PAGE_SIZE];
+        assertTrue(cache.get(5, read));
+        assertTrue(Arrays.equals(page(5), read));
+
+        // a partial read returns the start of the image
+        byte[] header = new byte[8];
+        assertTrue(cache.get(5, header));
+        assertTrue(Arrays.equals(Arrays.copyOf(page(5), 8), header));
+
+        // a new image replaces the old one
+        cache.put(5, page(6));
+        assertTrue(cache.get(5, read));
+        assertTrue(Arrays.equals(page(6), read));
+        assertEquals(1, cache.size());
+
+        cache.remove(5);
+        assertFalse(cache.get(5, read));
+        assertEquals(0, cache.size());
+    }
+
+    public void testEvictionKeepsCapacity() throws Exception {
+        OffHeapPageCache cache = new OffHeapPageCache(PAGE_SIZE, 32, 1);
+        byte[] read = new byte[PAGE_SIZE];
+
+        for (long pageId = 0; pageId < 1000; pageId++) {
+            cache.put(pageId, page(pageId));
+            // keep page 0 hot, it should survive the clock sweeps
+            assertTrue(cache.get(0, read));
+        }
+        assertEquals(32, cache.size());
+        assertTrue(Arrays.equals(page(0), read));
+        assertTrue(cache.get(999, read));
+        assertTrue(Arrays.equals(page(999), read));
+
+        int cached = 0;
+        for (long pageId = 0; pageId < 1000; pageId++) {
+            if (cache.get(pageId, read)) {
+                assertTrue("image of " + pageId, Arrays.equals(page(pageId), read));
+                cached++;
+            }
+        }
+        assertEquals(32, cached);
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertFalse(cache.get(0, read));
+    }
+
+    public void testPageFileReadsThroughOffHeapCache() throws Exception {
+        PageFile pf = new PageFile(new File("target/test-data"), getName());
+        pf.delete();
+        pf.setPageCacheSize(10);
+        pf.setOffHeapPageCacheSize(100);
+        pf.load();
+
+        Transaction tx = pf.tx();
+        long[] pageIds = new long[500];
+        for (int i = 0; i < pageIds.length; i++) {
+            Page<String> page = tx.allocate();
+            page.set("page:" + i);
+            tx.store(page, StringMarshaller.INSTANCE, false);
+            tx.commit();
+            pageIds[i] = page.getPageId();
+        }
+        pf.flush();
+
+        // update some pages so that stale images would show up
+        tx = pf.tx();
+        for (int i = 0; i < pageIds.length; i += 3) {
+            Page<String> page = tx.load(pageIds[i], StringMarshaller.INSTANCE);
+            page.set("updated:" + i);
+            tx.store(page, StringMarshaller.INSTANCE, false);
+        }
+        tx.commit();
+        pf.flush();
+
+        for (int pass = 0; pass < 2; pass++) {
+            tx = pf.tx();
+            for (int i = 0; i < pageIds.length; i++) {
+                Page<String> page = tx.load(pageIds[i], StringMarshaller.INSTANCE);
+                assertEquals((i % 3 == 0 ? "updated:" : "page:") + i, page.get());
+            }
+        }
+
+        pf.unload();
+        pf.load();
+        tx = pf.tx();
+        for (int i = 0; i < pageIds.length; i++) {
+            Page<String> page = tx.load(pageIds[i], StringMarshaller.INSTANCE);
+            assertEquals((i % 3 == 0 ? "updated:" : "page:") + i, page.get());
+        }
+        pf.unload();
+    }
+
+    private static byte[] page(long pageId) {
+        byte[] data = new byte[PAGE_SIZE];
+        Arrays.fill(data, (byte) pageId);
+        data[0] = (byte) (pageId >>> 8);
+        return data;
+    }
+}
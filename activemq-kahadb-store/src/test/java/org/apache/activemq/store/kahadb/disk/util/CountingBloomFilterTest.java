@@ -0,0 +1,92 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb.disk.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class CountingBloomFilterTest {
+
+    private static final int CAPACITY = 10000;
+
+    @Test
+    public void testNoFalseNegatives() {
+        CountingBloomFilter filter = new CountingBloomFilter(CAPACITY);
+        for (int i = 0; i < CAPACITY; i++) {
+            filter.add(id(i));
+        }
+        assertEquals(CAPACITY, filter.size());
+        for (int i = 0; i < CAPACITY; i++) {
+            assertTrue(filter.mightContain(id(i)));
+        }
+    }
+
+    @Test
+    public void testFalsePositiveRate() {
+        CountingBloomFilter filter = new CountingBloomFilter(CAPACITY);
+        for (int i = 0; i < CAPACITY; i++) {
+            filter.add(id(i));
+        }
+        int falsePositives = 0;
+        for (int i = CAPACITY; i < CAPACITY * 11; i++) {
+            if (filter.mightContain(id(i))) {
+                falsePositives++;
+            }
+        }
+        assertTrue("false positives: " + falsePositives, falsePositives < CAPACITY * 10 / 50);
+    }
+
+    @Test
+    public void testRemove() {
+        CountingBloomFilter filter = new CountingBloomFilter(CAPACITY);
+        for (int i = 0; i < CAPACITY; i++) {
+            filter.add(id(i));
+        }
+        for (int i = 0; i < CAPACITY; i += 2) {
+            filter.remove(id(i));
+        }
+        assertEquals(CAPACITY / 2, filter.size());
+
+        int stillPresent = 0;
+        for (int i = 0; i < CAPACITY; i++) {
+            if (i % 2 == 1) {
+                assertTrue(filter.mightContain(id(i)));
+            } else if (filter.mightContain(id(i))) {
+                stillPresent++;
+            }
+        }
+        assertTrue("removed but present: " + stillPresent, stillPresent < CAPACITY / 50);
+    }
+
+    @Test
+    public void testSaturatedCountersKeepKeys() {
+        CountingBloomFilter filter = new CountingBloomFilter(1);
+        // overfill a tiny filter so counters saturate
+        for (int i = 0; i < 1000; i++) {
+            filter.add(id(i));
+        }
+        for (int i = 0; i < 999; i++) {
+            filter.remove(id(i));
+        }
+        assertTrue(filter.mightContain(id(999)));
+    }
+
+    private static String id(int num) {
+        return "ID:localhost-56913-1254499826208-1:0:1:1:" + num;
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq;
+
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.apache.activemq.broker.BrokerRegistry;
+import org.apache.activemq.broker.region.RegionBroker;
+import org.apache.activemq.util.Wait;
+
+public class CoalescedAckTest extends TestSupport {
+
+    private ActiveMQConnection connection;
+    private RegionBroker regionBroker;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        connection = (ActiveMQConnection) createConnection();
+        ActiveMQPrefetchPolicy prefetchPolicy = new ActiveMQPrefetchPolicy();
+        prefetchPolicy.setAll(100);
+        connection.setPrefetchPolicy(prefetchPolicy);
+        connection.start();
+        regionBroker = (RegionBroker) BrokerRegistry.getInstance().findFirst().getRegionBroker();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        connection.close();
+        super.tearDown();
+    }
+
+    public void testAutoAcksCoalescedByCount() throws Exception {
+        connection.setAckCoalescingPolicy(createPolicy(5, 0));
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        Queue queue = session.createQueue("test.coalesced.count");
+        sendMessages(session, queue, 20);
+
+        MessageConsumer consumer = session.createConsumer(queue);
+        assertInflight(20);
+        for (int i = 0; i < 4; i++) {
+            assertNotNull(consumer.receive(4000));
+        }
+        assertEquals("acks are held back", 20, regionBroker.getDestinationStatistics().getInflight().getCount());
+
+        assertNotNull(consumer.receive(4000));
+        assertInflight(15);
+    }
+
+    public void testAutoAcksSentAfterDelay() throws Exception {
+        connection.setAckCoalescingPolicy(createPolicy(1000, 100));
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        Queue queue = session.createQueue("test.coalesced.delay");
+        sendMessages(session, queue, 10);
+
+        MessageConsumer consumer = session.createConsumer(queue);
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(consumer.receive(4000));
+        }
+        assertInflight(7);
+
+        // acks held back again once the first ones went out
+        for (int i = 0; i < 2; i++) {
+            assertNotNull(consumer.receive(4000));
+        }
+        assertInflight(5);
+    }
+
+    public void testHeldBackAcksSentOnClose() throws Exception {
+        connection.setAckCoalescingPolicy(createPolicy(1000, 0));
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        Queue queue = session.createQueue("test.coalesced.close");
+        sendMessages(session, queue, 10);
+
+        MessageConsumer consumer = session.createConsumer(queue);
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(consumer.receive(4000));
+        }
+        consumer.close();
+
+        assertTrue("consumed messages acknowledged", Wait.waitFor(new Wait.Condition() {
+            @Override
+            public boolean isSatisified() throws Exception {
+                return 7 == regionBroker.getDestinationStatistics().getMessages().getCount();
+            }
+        }));
+    }
+
+    public void testClientAcksCoalesced() throws Exception {
+        connection.setAckCoalescingPolicy(createPolicy(4, 0));
+        Session session = connection.createSession(false, Session.CLIENT_ACKNOWLEDGE);
+        Queue queue = session.createQueue("test.coalesced.client");
+        sendMessages(session, queue, 10);
+
+        MessageConsumer consumer = session.createConsumer(queue);
+        assertInflight(10);
+        for (int i = 0; i < 3; i++) {
+            consumer.receive(4000).acknowledge();
+        }
+        assertEquals("acks are held back", 10, regionBroker.getDestinationStatistics().getInflight().getCount());
+        consumer.receive(4000).acknowledge();
+        assertInflight(6);
+
+        consumer.receive(4000).acknowledge();
+        TextMessage unacknowledged = (TextMessage) consumer.receive(4000);
+        assertEquals("Hello5", unacknowledged.getText());
+
+        // the acknowledged message is not redelivered
+        session.recover();
+        Message redelivered = consumer.receive(4000);
+        assertEquals("Hello5", ((TextMessage) redelivered).getText());
+        assertTrue(redelivered.getJMSRedelivered());
+        assertInflight(5);
+    }
+
+    private AckCoalescingPolicy createPolicy(int maximumMessages, long maximumDelay) {
+        AckCoalescingPolicy policy = new AckCoalescingPolicy();
+        policy.setMaximumMessages(maximumMessages);
+        policy.setMaximumBytes(0);
+        policy.setMaximumDelay(maximumDelay);
+        return policy;
+    }
+
+    private void sendMessages(Session session, Queue queue, int count) throws Exception {
+        MessageProducer producer = session.createProducer(queue);
+        for (int i = 0; i < count; i++) {
+            producer.send(session.createTextMessage("Hello" + i));
+        }
+        producer.close();
+    }
+
+    private void assertInflight(final long expected) throws Exception {
+        assertTrue("inflight " + expected, Wait.waitFor(new Wait.Condition() {
+            @Override
+            public boolean isSatisified() throws Exception {
+                return expected == regionBroker.getDestinationStatistics().getInflight().getCount();
+            }
+        }));
+    }
+}
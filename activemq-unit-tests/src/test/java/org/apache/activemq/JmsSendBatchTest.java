@@ -0,0 +1,150 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Queue;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.apache.activemq.broker.Broker;
+import org.apache.activemq.broker.BrokerFilter;
+import org.apache.activemq.broker.BrokerPlugin;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.ProducerBrokerExchange;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JmsSendBatchTest {
+
+    private BrokerService broker;
+    private Connection connection;
+
+    @Before
+    public void setUp() throws Exception {
+        broker = new BrokerService();
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        broker.addConnector("tcp://localhost:0");
+        broker.setPlugins(new BrokerPlugin[] {new BrokerPlugin() {
+            @Override
+            public Broker installPlugin(Broker broker) throws Exception {
+                return new BrokerFilter(broker) {
+                    @Override
+                    public void send(ProducerBrokerExchange producerExchange, org.apache.activemq.command.Message messageSend) throws Exception {
+                        if (messageSend.getProperty("reject") != null) {
+                            throw new IllegalArgumentException("rejected " + messageSend.getProperty("reject"));
+                        }
+                        super.send(producerExchange, messageSend);
+                    }
+                };
+            }
+        }});
+        broker.start();
+        broker.waitUntilStarted();
+
+        connection = new ActiveMQConnectionFactory(broker.getTransportConnectors().get(0).getPublishableConnectString()).createConnection();
+        connection.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (connection != null) {
+            connection.close();
+        }
+        if (broker != null) {
+            broker.stop();
+            broker.waitUntilStopped();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testBatchSentInOrder() throws Exception {
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        Queue queue = session.createQueue("TEST.BATCH");
+        ActiveMQMessageProducer producer = (ActiveMQMessageProducer) session.createProducer(queue);
+        producer.setDeliveryMode(DeliveryMode.PERSISTENT);
+
+        List<Message> batch = new ArrayList<Message>();
+        for (int i = 0; i < 500; i++) {
+            batch.add(session.createTextMessage("message:" + i));
+        }
+        producer.send(batch);
+
+        assertEquals(500, broker.getDestination((org.apache.activemq.command.ActiveMQDestination) queue)
+            .getDestinationStatistics().getMessages().getCount());
+        MessageConsumer consumer = session.createConsumer(queue);
+        for (int i = 0; i < 500; i++) {
+            TextMessage message = (TextMessage) consumer.receive(5000);
+            assertNotNull(message);
+            assertEquals("message:" + i, message.getText());
+            assertEquals(batch.get(i).getJMSMessageID(), message.getJMSMessageID());
+        }
+        assertNull(consumer.receive(100));
+    }
+
+    @Test(timeout = 60000)
+    public void testOutcomePerMessage() throws Exception {
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        Queue queue = session.createQueue("TEST.BATCH.FAILURES");
+        ActiveMQMessageProducer producer = (ActiveMQMessageProducer) session.createProducer(queue);
+
+        List<Message> batch = new ArrayList<Message>();
+        for (int i = 0; i < 10; i++) {
+            TextMessage message = session.createTextMessage("message:" + i);
+            if (i == 2 || i == 9) {
+                message.setIntProperty("reject", i);
+            }
+            batch.add(message);
+        }
+        try {
+            producer.send(batch);
+            fail("two messages are rejected");
+        } catch (BatchSendException expected) {
+            assertEquals(2, expected.getFailureCount());
+            for (int i = 0; i < 10; i++) {
+                if (i == 2 || i == 9) {
+                    assertNotNull(expected.getFailure(i));
+                } else {
+                    assertNull(expected.getFailure(i));
+                }
+            }
+        }
+
+        MessageConsumer consumer = session.createConsumer(queue);
+        for (int i = 0; i < 10; i++) {
+            if (i != 2 && i != 9) {
+                TextMessage message = (TextMessage) consumer.receive(5000);
+                assertNotNull(message);
+                assertEquals("message:" + i, message.getText());
+            }
+        }
+        assertNull(consumer.receive(100));
+    }
+}
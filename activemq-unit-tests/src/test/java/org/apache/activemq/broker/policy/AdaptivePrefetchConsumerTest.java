@@ -0,0 +1,110 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.policy;
+
+import static org.junit.Assert.assertEquals;
+
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.activemq.ActiveMQConnection;
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.policy.AdaptivePrefetchPolicy;
+import org.apache.activemq.broker.region.policy.PolicyEntry;
+import org.apache.activemq.broker.region.policy.PolicyMap;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that a consumer whose adaptive prefetch window is shrunk by the
+ * broker is told about it, so that it acknowledges delivery of its messages
+ * in time for the broker to keep dispatching to it.
+ */
+public class AdaptivePrefetchConsumerTest {
+
+    private static final int PREFETCH = 1000;
+    private static final int MESSAGES = 2000;
+    private static final int ACK_BATCH = 50;
+
+    private final ActiveMQQueue queue = new ActiveMQQueue("TEST.ADAPTIVE");
+    private BrokerService broker;
+    private ActiveMQConnection connection;
+
+    @Before
+    public void setUp() throws Exception {
+        AdaptivePrefetchPolicy adaptivePrefetchPolicy = new AdaptivePrefetchPolicy();
+        adaptivePrefetchPolicy.setTargetInflightTime(100);
+        adaptivePrefetchPolicy.setSampleInterval(100);
+
+        PolicyEntry policy = new PolicyEntry();
+        policy.setAdaptivePrefetchPolicy(adaptivePrefetchPolicy);
+        PolicyMap policyMap = new PolicyMap();
+        policyMap.setDefaultEntry(policy);
+
+        broker = new BrokerService();
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        broker.setDestinationPolicy(policyMap);
+        broker.addConnector("tcp://localhost:0");
+        broker.start();
+        broker.waitUntilStarted();
+
+        ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory(
+            broker.getTransportConnectors().get(0).getPublishableConnectString());
+        factory.getPrefetchPolicy().setQueuePrefetch(PREFETCH);
+        connection = (ActiveMQConnection) factory.createConnection();
+        connection.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (connection != null) {
+            connection.close();
+        }
+        if (broker != null) {
+            broker.stop();
+            broker.waitUntilStopped();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testClientAckBatchesDoNotStall() throws Exception {
+        Session producerSession = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageProducer producer = producerSession.createProducer(queue);
+        for (int i = 0; i < MESSAGES; i++) {
+            producer.send(producerSession.createTextMessage("message " + i));
+        }
+
+        Session session = connection.createSession(false, Session.CLIENT_ACKNOWLEDGE);
+        MessageConsumer consumer = session.createConsumer(queue);
+        int received = 0;
+        Message message;
+        while (received < MESSAGES && (message = consumer.receive(5000)) != null) {
+            received++;
+            if (received % ACK_BATCH == 0) {
+                message.acknowledge();
+            }
+            Thread.sleep(1);
+        }
+        assertEquals(MESSAGES, received);
+    }
+}
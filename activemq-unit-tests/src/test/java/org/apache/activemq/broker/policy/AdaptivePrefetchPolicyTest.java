@@ -0,0 +1,95 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.policy;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.activemq.broker.region.policy.AdaptivePrefetchPolicy;
+import org.junit.Test;
+
+public class AdaptivePrefetchPolicyTest {
+
+    private static final int PREFETCH = 1000;
+
+    @Test
+    public void testStartsAtThePrefetch() {
+        AdaptivePrefetchPolicy.Window window = new AdaptivePrefetchPolicy().createWindow();
+        assertEquals(PREFETCH, window.getSize(PREFETCH));
+        assertEquals(-1, window.getAckRate(), 0);
+    }
+
+    @Test
+    public void testFollowsTheAckRate() {
+        AdaptivePrefetchPolicy.Window window = new AdaptivePrefetchPolicy().createWindow();
+        long now = 0;
+        window.acknowledged(0, 0, 0, 0, now);
+
+        // a fast consumer keeps the prefetch it asked for
+        window.acknowledged(5000, 5000, 5000, 100, now += 1000);
+        assertEquals(5000, window.getAckRate(), 0);
+        assertEquals(PREFETCH, window.getSize(PREFETCH));
+
+        // acks within the sample interval leave the window alone
+        window.acknowledged(1, 1, 1, 100, now += 500);
+        assertEquals(PREFETCH, window.getSize(PREFETCH));
+
+        // the rate is averaged over the samples
+        window.acknowledged(9, 9000, 9, 10, now += 500);
+        assertEquals(2505, window.getAckRate(), 0);
+
+        window.acknowledged(10, 10000, 10, 10, now += 1000);
+        window.acknowledged(10, 10000, 10, 10, now += 1000);
+        window.acknowledged(10, 10000, 10, 10, now += 1000);
+        window.acknowledged(10, 10000, 10, 10, now += 1000);
+        window.acknowledged(10, 10000, 10, 10, now += 1000);
+        assertEquals(88, window.getSize(PREFETCH));
+        for (int i = 0; i < 20; i++) {
+            window.acknowledged(10, 10000, 10, 10, now += 1000);
+        }
+        assertEquals(10, window.getSize(PREFETCH));
+    }
+
+    @Test
+    public void testShrinksWhenMessagesWait() {
+        AdaptivePrefetchPolicy.Window window = new AdaptivePrefetchPolicy().createWindow();
+        long now = 0;
+        window.acknowledged(0, 0, 0, 0, now);
+        window.acknowledged(10, 10000, 10, 10, now += 1000);
+        assertEquals(10, window.getSize(PREFETCH));
+
+        // the same rate, but each message waited five times the target
+        window.acknowledged(10, 50000, 10, 50, now += 1000);
+        assertEquals(2, window.getSize(PREFETCH));
+    }
+
+    @Test
+    public void testBounds() {
+        AdaptivePrefetchPolicy policy = new AdaptivePrefetchPolicy();
+        policy.setMinimumPrefetch(5);
+        policy.setMaximumPrefetch(100);
+        AdaptivePrefetchPolicy.Window window = policy.createWindow();
+        assertEquals(100, window.getSize(PREFETCH));
+        assertEquals(50, window.getSize(50));
+
+        long now = 0;
+        window.acknowledged(0, 0, 0, 0, now);
+        window.acknowledged(1, 1000, 1, 1, now += 1000);
+        assertEquals(5, window.getSize(PREFETCH));
+        // never beyond the prefetch of the consumer
+        assertEquals(3, window.getSize(3));
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.command.Message;
+import org.apache.activemq.command.MessageId;
+import org.apache.activemq.openwire.OpenWireFormat;
+import org.apache.activemq.usage.MemoryUsage;
+import org.junit.Test;
+
+public class CompactMessageReferenceTest {
+
+    @Test
+    public void testCompactOnHeap() throws Exception {
+        doTestCompact(false);
+    }
+
+    @Test
+    public void testCompactOffHeap() throws Exception {
+        doTestCompact(true);
+    }
+
+    private void doTestCompact(boolean offHeap) throws Exception {
+        MemoryUsage usage = new MemoryUsage();
+        ActiveMQTextMessage message = new ActiveMQTextMessage();
+        message.setMessageId(new MessageId("ID:producer-1:1:1:1"));
+        message.setDestination(new ActiveMQQueue("TEST.COMPACT"));
+        message.setText("hello");
+        message.setStringProperty("color", "red");
+        message.setPriority((byte) 7);
+        message.setGroupID("group");
+        message.setExpiration(1000);
+        message.setMemoryUsage(usage);
+        message.incrementReferenceCount();
+        int size = message.getSize();
+        assertEquals(size, usage.getUsage());
+
+        CompactMessageReference ref = new CompactMessageReference(message, new OpenWireFormat(), offHeap);
+        assertTrue(ref.isCompact());
+        assertEquals(0, message.getReferenceCount());
+        assertEquals(1, ref.getReferenceCount());
+        assertEquals(ref.getCompactSize(), usage.getUsage());
+        assertTrue(ref.getCompactSize() < size);
+
+        // dispatch headers without unmarshalling
+        assertEquals(message.getMessageId(), ref.getMessageId());
+        assertEquals(7, ref.getPriority());
+        assertEquals("group", ref.getGroupID());
+        assertEquals(1000, ref.getExpiration());
+        assertTrue(ref.isExpired());
+        assertEquals(size, ref.getSize());
+        assertTrue(ref.isCompact());
+
+        Message inflated = ref.getMessage();
+        assertFalse(ref.isCompact());
+        assertSame(inflated, ref.getMessage());
+        assertEquals("hello", ((ActiveMQTextMessage) inflated).getText());
+        assertEquals("red", inflated.getProperty("color"));
+        assertNull(inflated.getMemoryUsage());
+        assertEquals(size, usage.getUsage());
+
+        ref.incrementRedeliveryCounter();
+        assertTrue(ref.compact());
+        assertEquals(ref.getCompactSize(), usage.getUsage());
+        assertEquals(1, ref.getRedeliveryCounter());
+        assertEquals(1, ref.getMessage().getRedeliveryCounter());
+
+        // held by a subscription
+        assertTrue(ref.lock(LockOwner.HIGH_PRIORITY_LOCK_OWNER));
+        assertFalse(ref.compact());
+        ref.unlock();
+        assertTrue(ref.compact());
+
+        ref.drop();
+        assertEquals(0, ref.getReferenceCount());
+        assertEquals(0, usage.getUsage());
+    }
+}
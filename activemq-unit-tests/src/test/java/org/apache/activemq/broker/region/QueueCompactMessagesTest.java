@@ -0,0 +1,175 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import javax.jms.Connection;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.policy.PolicyEntry;
+import org.apache.activemq.broker.region.policy.PolicyMap;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.Message;
+import org.apache.activemq.store.kahadb.KahaDBPersistenceAdapter;
+import org.apache.activemq.usage.MemoryUsage;
+import org.apache.activemq.util.Wait;
+import org.junit.After;
+import org.junit.Test;
+
+public class QueueCompactMessagesTest {
+
+    private static final ActiveMQQueue QUEUE = new ActiveMQQueue("TEST.COMPACT");
+    private static final int MESSAGES = 100;
+
+    private BrokerService broker;
+    private Connection connection;
+
+    private void startBroker(boolean persistent, boolean compact) throws Exception {
+        broker = new BrokerService();
+        broker.setUseJmx(false);
+        if (persistent) {
+            File dataDir = new File("target/activemq-data/QueueCompactMessagesTest");
+            broker.setDataDirectoryFile(dataDir);
+            broker.setDeleteAllMessagesOnStartup(true);
+            KahaDBPersistenceAdapter persistenceAdapter = new KahaDBPersistenceAdapter();
+            persistenceAdapter.setDirectory(new File(dataDir, "kahadb"));
+            broker.setPersistenceAdapter(persistenceAdapter);
+        } else {
+            broker.setPersistent(false);
+        }
+
+        PolicyEntry policy = new PolicyEntry();
+        policy.setCompactPagedInMessages(compact);
+        PolicyMap policyMap = new PolicyMap();
+        policyMap.setDefaultEntry(policy);
+        broker.setDestinationPolicy(policyMap);
+
+        broker.start();
+        broker.waitUntilStarted();
+
+        connection = new ActiveMQConnectionFactory(broker.getVmConnectorURI()).createConnection();
+        connection.start();
+    }
+
+    private void stopBroker() throws Exception {
+        connection.close();
+        connection = null;
+        broker.stop();
+        broker.waitUntilStopped();
+        broker = null;
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (connection != null) {
+            connection.close();
+        }
+        if (broker != null) {
+            broker.stop();
+            broker.waitUntilStopped();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testSelectedMessagesAreIntact() throws Exception {
+        startBroker(true, true);
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        sendAndConsumeRed(session);
+
+        // the blue ones wait paged in, charged with their marshalled size
+        final MemoryUsage usage = broker.getDestination(QUEUE).getMemoryUsage();
+        assertTrue("compact", Wait.waitFor(new Wait.Condition() {
+            @Override
+            public boolean isSatisified() throws Exception {
+                return usage.getUsage() < MESSAGES / 2 * Message.DEFAULT_MINIMUM_MESSAGE_SIZE;
+            }
+        }));
+
+        MessageConsumer blue = session.createConsumer(QUEUE, "color = 'blue'");
+        for (int i = 1; i < MESSAGES; i += 2) {
+            TextMessage message = (TextMessage) blue.receive(5000);
+            assertNotNull(message);
+            assertEquals("message:" + i, message.getText());
+            assertEquals("blue", message.getStringProperty("color"));
+        }
+        final DestinationStatistics statistics = broker.getDestination(QUEUE).getDestinationStatistics();
+        assertTrue("all consumed", Wait.waitFor(new Wait.Condition() {
+            @Override
+            public boolean isSatisified() throws Exception {
+                return statistics.getMessages().getCount() == 0 && usage.getUsage() == 0;
+            }
+        }));
+    }
+
+    @Test(timeout = 60000)
+    public void testStoreRetainedMessagesAreNotCompacted() throws Exception {
+        // the memory store holds a count of every message, compacting them would charge the
+        // queue with the marshalled form on top of the message
+        startBroker(false, false);
+        long uncompacted = waitingUsage();
+        stopBroker();
+
+        startBroker(false, true);
+        assertEquals(uncompacted, waitingUsage());
+    }
+
+    private long waitingUsage() throws Exception {
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        sendAndConsumeRed(session);
+        session.close();
+        final DestinationStatistics statistics = broker.getDestination(QUEUE).getDestinationStatistics();
+        assertTrue("red acked", Wait.waitFor(new Wait.Condition() {
+            @Override
+            public boolean isSatisified() throws Exception {
+                return statistics.getMessages().getCount() == MESSAGES / 2 && statistics.getInflight().getCount() == 0;
+            }
+        }));
+        return broker.getDestination(QUEUE).getMemoryUsage().getUsage();
+    }
+
+    private void sendAndConsumeRed(Session session) throws Exception {
+        MessageConsumer red = session.createConsumer(QUEUE, "color = 'red'");
+
+        MessageProducer producer = session.createProducer(QUEUE);
+        for (int i = 0; i < MESSAGES; i++) {
+            TextMessage message = session.createTextMessage("message:" + i);
+            message.setStringProperty("color", i % 2 == 0 ? "red" : "blue");
+            message.setIntProperty("index", i);
+            producer.send(message);
+        }
+
+        for (int i = 0; i < MESSAGES; i += 2) {
+            TextMessage message = (TextMessage) red.receive(5000);
+            assertNotNull(message);
+            assertEquals("message:" + i, message.getText());
+            assertEquals(i, message.getIntProperty("index"));
+        }
+        assertNull(red.receive(500));
+        red.close();
+    }
+}
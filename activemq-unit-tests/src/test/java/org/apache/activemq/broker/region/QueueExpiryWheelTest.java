@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import javax.jms.Connection;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.policy.PolicyEntry;
+import org.apache.activemq.broker.region.policy.PolicyMap;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.util.Wait;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class QueueExpiryWheelTest {
+
+    private static final ActiveMQQueue QUEUE = new ActiveMQQueue("TEST.EXPIRY.WHEEL");
+    private static final int MESSAGES = 100;
+
+    private BrokerService broker;
+    private Connection connection;
+
+    @Before
+    public void setUp() throws Exception {
+        broker = new BrokerService();
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+
+        PolicyEntry policy = new PolicyEntry();
+        policy.setUseExpiryWheel(true);
+        // no expiry scan, the wheel alone has to expire the messages
+        policy.setExpireMessagesPeriod(0);
+        PolicyMap policyMap = new PolicyMap();
+        policyMap.setDefaultEntry(policy);
+        broker.setDestinationPolicy(policyMap);
+
+        broker.start();
+        broker.waitUntilStarted();
+
+        connection = new ActiveMQConnectionFactory(broker.getVmConnectorURI()).createConnection();
+        connection.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (connection != null) {
+            connection.close();
+        }
+        if (broker != null) {
+            broker.stop();
+            broker.waitUntilStopped();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testPagedInMessagesExpire() throws Exception {
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        // a consumer gets the messages paged in, its selector keeps them pending
+        session.createConsumer(QUEUE, "never = 'true'");
+
+        MessageProducer producer = session.createProducer(QUEUE);
+        producer.setTimeToLive(500);
+        for (int i = 0; i < MESSAGES; i++) {
+            producer.send(session.createTextMessage("message:" + i));
+        }
+        producer.setTimeToLive(0);
+        producer.send(session.createTextMessage("no expiry"));
+
+        final DestinationStatistics statistics = broker.getDestination(QUEUE).getDestinationStatistics();
+        assertTrue("all expired", Wait.waitFor(new Wait.Condition() {
+            @Override
+            public boolean isSatisified() throws Exception {
+                return statistics.getExpired().getCount() == MESSAGES;
+            }
+        }));
+        assertEquals(1, statistics.getMessages().getCount());
+        assertEquals(0, broker.getExpiryWheel().size());
+    }
+}
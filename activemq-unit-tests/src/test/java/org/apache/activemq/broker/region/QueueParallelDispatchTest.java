@@ -0,0 +1,173 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.policy.PolicyEntry;
+import org.apache.activemq.broker.region.policy.PolicyMap;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.util.Wait;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class QueueParallelDispatchTest {
+
+    private static final String QUEUE_NAME = "TEST.PARALLEL.DISPATCH";
+    private static final int MESSAGES = 4000;
+    private static final int GROUPS = 40;
+    private static final int CONSUMERS = 6;
+
+    private BrokerService broker;
+    private Connection connection;
+
+    @Before
+    public void setUp() throws Exception {
+        broker = new BrokerService();
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+
+        PolicyEntry policy = new PolicyEntry();
+        policy.setQueueDispatchWorkers(3);
+        PolicyMap policyMap = new PolicyMap();
+        policyMap.setDefaultEntry(policy);
+        broker.setDestinationPolicy(policyMap);
+
+        broker.start();
+        broker.waitUntilStarted();
+
+        connection = new ActiveMQConnectionFactory(broker.getVmConnectorURI()).createConnection();
+        connection.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (connection != null) {
+            connection.close();
+        }
+        if (broker != null) {
+            broker.stop();
+            broker.waitUntilStopped();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testGroupOrderKept() throws Exception {
+        final CountDownLatch received = new CountDownLatch(MESSAGES);
+        final Map<String, Integer> lastSequence = new HashMap<String, Integer>();
+        final AtomicInteger outOfOrder = new AtomicInteger();
+
+        for (int i = 0; i < CONSUMERS; i++) {
+            createConsumer().setMessageListener(new MessageListener() {
+                @Override
+                public void onMessage(Message message) {
+                    try {
+                        String group = message.getStringProperty("JMSXGroupID");
+                        int sequence = message.getIntProperty("sequence");
+                        synchronized (lastSequence) {
+                            Integer last = lastSequence.put(group, sequence);
+                            if (last != null && last >= sequence) {
+                                outOfOrder.incrementAndGet();
+                            }
+                        }
+                    } catch (JMSException e) {
+                        outOfOrder.incrementAndGet();
+                    }
+                    received.countDown();
+                }
+            });
+        }
+
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageProducer producer = session.createProducer(new ActiveMQQueue(QUEUE_NAME));
+        for (int i = 0; i < MESSAGES; i++) {
+            Message message = session.createTextMessage("message:" + i);
+            message.setStringProperty("JMSXGroupID", "group-" + (i % GROUPS));
+            message.setIntProperty("sequence", i);
+            producer.send(message);
+        }
+
+        assertTrue("all received", received.await(30, TimeUnit.SECONDS));
+        assertEquals(0, outOfOrder.get());
+        assertEquals(GROUPS, lastSequence.size());
+    }
+
+    @Test(timeout = 60000)
+    public void testAllReceivedWhenConsumerCloses() throws Exception {
+        final Set<String> received = Collections.synchronizedSet(new HashSet<String>());
+
+        List<MessageConsumer> consumers = new ArrayList<MessageConsumer>();
+        for (int i = 0; i < CONSUMERS; i++) {
+            MessageConsumer consumer = createConsumer();
+            consumer.setMessageListener(new MessageListener() {
+                @Override
+                public void onMessage(Message message) {
+                    try {
+                        received.add(((TextMessage) message).getText());
+                    } catch (JMSException e) {
+                    }
+                }
+            });
+            consumers.add(consumer);
+        }
+
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageProducer producer = session.createProducer(new ActiveMQQueue(QUEUE_NAME));
+        for (int i = 0; i < MESSAGES; i++) {
+            producer.send(session.createTextMessage("message:" + i));
+            if (i == MESSAGES / 2) {
+                consumers.get(0).close();
+            }
+        }
+
+        assertTrue("all received", Wait.waitFor(new Wait.Condition() {
+            @Override
+            public boolean isSatisified() throws Exception {
+                return received.size() == MESSAGES;
+            }
+        }));
+    }
+
+    private MessageConsumer createConsumer() throws Exception {
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        return session.createConsumer(new ActiveMQQueue(QUEUE_NAME + "?consumer.prefetchSize=50"));
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jms.Connection;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.ActiveMQMessageConsumer;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.util.Wait;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class QueueRoundRobinDispatchTest {
+
+    private static final String QUEUE_NAME = "TEST.ROUND.ROBIN";
+
+    private BrokerService broker;
+    private Connection connection;
+
+    @Before
+    public void setUp() throws Exception {
+        broker = new BrokerService();
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        broker.start();
+        broker.waitUntilStarted();
+
+        connection = new ActiveMQConnectionFactory(broker.getVmConnectorURI()).createConnection();
+        connection.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (connection != null) {
+            connection.close();
+        }
+        if (broker != null) {
+            broker.stop();
+            broker.waitUntilStopped();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testEqualPriorityConsumersShareEvenly() throws Exception {
+        List<ActiveMQMessageConsumer> consumers = new ArrayList<ActiveMQMessageConsumer>();
+        for (int i = 0; i < 4; i++) {
+            consumers.add(createConsumer("consumer.prefetchSize=1000"));
+        }
+
+        send(400);
+        waitForDispatch(consumers, 400);
+
+        for (ActiveMQMessageConsumer consumer : consumers) {
+            assertEquals(100, consumer.getMessageSize());
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testHigherPriorityConsumersFillFirst() throws Exception {
+        List<ActiveMQMessageConsumer> consumers = new ArrayList<ActiveMQMessageConsumer>();
+        consumers.add(createConsumer("consumer.prefetchSize=1000&consumer.priority=1"));
+        consumers.add(createConsumer("consumer.prefetchSize=10&consumer.priority=5"));
+        consumers.add(createConsumer("consumer.prefetchSize=1000&consumer.priority=1"));
+        consumers.add(createConsumer("consumer.prefetchSize=10&consumer.priority=5"));
+
+        send(100);
+        waitForDispatch(consumers, 100);
+
+        assertEquals(40, consumers.get(0).getMessageSize());
+        assertEquals(10, consumers.get(1).getMessageSize());
+        assertEquals(40, consumers.get(2).getMessageSize());
+        assertEquals(10, consumers.get(3).getMessageSize());
+    }
+
+    private ActiveMQMessageConsumer createConsumer(String options) throws Exception {
+        Session session = connection.createSession(false, Session.CLIENT_ACKNOWLEDGE);
+        return (ActiveMQMessageConsumer) session.createConsumer(new ActiveMQQueue(QUEUE_NAME + "?" + options));
+    }
+
+    private void send(int count) throws Exception {
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageProducer producer = session.createProducer(new ActiveMQQueue(QUEUE_NAME));
+        for (int i = 0; i < count; i++) {
+            producer.send(session.createTextMessage("message:" + i));
+        }
+        session.close();
+    }
+
+    private void waitForDispatch(final List<ActiveMQMessageConsumer> consumers, final int count) throws Exception {
+        assertTrue("all dispatched", Wait.waitFor(new Wait.Condition() {
+            @Override
+            public boolean isSatisified() throws Exception {
+                int dispatched = 0;
+                for (ActiveMQMessageConsumer consumer : consumers) {
+                    dispatched += consumer.getMessageSize();
+                }
+                return dispatched == count;
+            }
+        }));
+    }
+}
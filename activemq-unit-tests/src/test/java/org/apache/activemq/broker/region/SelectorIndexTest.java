@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.selector.SelectorParser;
+import org.apache.activemq.util.Wait;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SelectorIndexTest {
+
+    private static final String QUEUE_NAME = "TEST.SELECTOR.INDEX";
+    private static final int REGIONS = 20;
+
+    private BrokerService broker;
+    private Connection connection;
+
+    @Before
+    public void setUp() throws Exception {
+        broker = new BrokerService();
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        broker.start();
+        broker.waitUntilStarted();
+
+        connection = new ActiveMQConnectionFactory(broker.getVmConnectorURI()).createConnection();
+        connection.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (connection != null) {
+            connection.close();
+        }
+        if (broker != null) {
+            broker.stop();
+            broker.waitUntilStopped();
+        }
+    }
+
+    @Test
+    public void testConditions() throws Exception {
+        SelectorIndex.Condition condition = SelectorIndex.conditionOf(SelectorParser.parse("region = 'EU'"));
+        assertEquals("region", condition.property.getName());
+        assertEquals(new HashSet<String>(Arrays.asList("EU")), condition.values);
+
+        condition = SelectorIndex.conditionOf(SelectorParser.parse("'EU' = region"));
+        assertEquals("region", condition.property.getName());
+
+        condition = SelectorIndex.conditionOf(SelectorParser.parse("size > 10 AND region IN ('EU', 'US')"));
+        assertEquals("region", condition.property.getName());
+        assertEquals(new HashSet<String>(Arrays.asList("EU", "US")), condition.values);
+
+        assertNull(SelectorIndex.conditionOf(SelectorParser.parse("region = 'EU' OR size > 10")));
+        assertNull(SelectorIndex.conditionOf(SelectorParser.parse("region <> 'EU'")));
+        assertNull(SelectorIndex.conditionOf(SelectorParser.parse("region NOT IN ('EU', 'US')")));
+        assertNull(SelectorIndex.conditionOf(SelectorParser.parse("size = 10")));
+    }
+
+    @Test(timeout = 60000)
+    public void testDispatchToIndexedSelectors() throws Exception {
+        final List<String> mismatches = new CopyOnWriteArrayList<String>();
+        final List<Message> received = new CopyOnWriteArrayList<Message>();
+
+        for (int i = 0; i < REGIONS; i++) {
+            createConsumer("region = 'R" + i + "'", "R" + i, received, mismatches);
+        }
+        createConsumer("region IN ('X', 'Y') AND size > 0", "X Y", received, mismatches);
+        createConsumer("region = 'Z' OR size = 0", "Z", received, mismatches);
+
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageProducer producer = session.createProducer(new ActiveMQQueue(QUEUE_NAME));
+        int sent = 0;
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < REGIONS; i++) {
+                producer.send(createMessage(session, "R" + i));
+                sent++;
+            }
+            producer.send(createMessage(session, "X"));
+            producer.send(createMessage(session, "Y"));
+            producer.send(createMessage(session, "Z"));
+            sent += 3;
+        }
+
+        final int expected = sent;
+        assertTrue("all received", Wait.waitFor(new Wait.Condition() {
+            @Override
+            public boolean isSatisified() throws Exception {
+                return received.size() == expected;
+            }
+        }));
+        assertTrue(mismatches.toString(), mismatches.isEmpty());
+    }
+
+    private Message createMessage(Session session, String region) throws JMSException {
+        Message message = session.createTextMessage(region);
+        message.setStringProperty("region", region);
+        message.setIntProperty("size", 1);
+        return message;
+    }
+
+    private void createConsumer(String selector, final String regions, final List<Message> received, final List<String> mismatches) throws Exception {
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageConsumer consumer = session.createConsumer(new ActiveMQQueue(QUEUE_NAME), selector);
+        consumer.setMessageListener(new MessageListener() {
+            @Override
+            public void onMessage(Message message) {
+                try {
+                    String region = message.getStringProperty("region");
+                    if (!Arrays.asList(regions.split(" ")).contains(region)) {
+                        mismatches.add(region + " received by " + regions);
+                    }
+                } catch (JMSException e) {
+                    mismatches.add(e.toString());
+                }
+                received.add(message);
+            }
+        });
+    }
+}
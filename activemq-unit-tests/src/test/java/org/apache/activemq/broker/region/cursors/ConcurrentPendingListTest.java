@@ -0,0 +1,148 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region.cursors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.activemq.broker.region.MessageReference;
+import org.apache.activemq.broker.region.cursors.PrioritizedPendingListTest.TestMessageReference;
+import org.junit.Test;
+
+public class ConcurrentPendingListTest {
+
+    @Test
+    public void testOrder() {
+        ConcurrentPendingList list = new ConcurrentPendingList();
+
+        list.addMessageLast(new TestMessageReference(3));
+        list.addMessageFirst(new TestMessageReference(2));
+        list.addMessageLast(new TestMessageReference(4));
+        list.addMessageFirst(new TestMessageReference(1));
+        list.insertAtHead(Arrays.<MessageReference>asList(new TestMessageReference(-1), new TestMessageReference(0)));
+
+        assertEquals(6, list.size());
+        assertEquals(6, list.messageSize());
+
+        int expected = -1;
+        for (MessageReference ref : list) {
+            assertEquals(expected++, ref.getMessageId().getProducerSequenceId());
+        }
+    }
+
+    @Test
+    public void testRemove() {
+        ConcurrentPendingList list = new ConcurrentPendingList();
+        List<TestMessageReference> refs = new ArrayList<TestMessageReference>();
+        for (int i = 0; i < 10; i++) {
+            TestMessageReference ref = new TestMessageReference(i);
+            refs.add(ref);
+            list.addMessageLast(ref);
+        }
+
+        assertTrue(list.contains(refs.get(5)));
+        list.remove(refs.get(5));
+        assertFalse(list.contains(refs.get(5)));
+        assertNull(list.get(refs.get(5).getMessageId()));
+        assertNull(list.remove(refs.get(5)));
+        assertNull(list.remove(null));
+
+        Iterator<MessageReference> iter = list.iterator();
+        while (iter.hasNext()) {
+            if (iter.next().getMessageId().getProducerSequenceId() % 2 == 0) {
+                iter.remove();
+            }
+        }
+
+        assertEquals(4, list.size());
+        assertEquals(4, list.messageSize());
+        int expected = 1;
+        for (MessageReference ref : list) {
+            if (expected == 5) {
+                expected += 2;
+            }
+            assertEquals(expected, ref.getMessageId().getProducerSequenceId());
+            expected += 2;
+        }
+
+        list.clear();
+        assertTrue(list.isEmpty());
+        assertEquals(0, list.messageSize());
+        assertFalse(list.iterator().hasNext());
+    }
+
+    @Test(timeout = 60000)
+    public void testConcurrentAddAndRemove() throws Exception {
+        final ConcurrentPendingList list = new ConcurrentPendingList();
+        final int threads = 4;
+        final int perThread = 10000;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < perThread; i++) {
+                            TestMessageReference ref = new TestMessageReference(i);
+                            list.addMessageLast(ref);
+                            if (i % 2 == 0) {
+                                list.remove(ref);
+                            }
+                        }
+                    }
+                }));
+            }
+            // a dispatcher iterating all the while
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 100; i++) {
+                        for (MessageReference ref : list) {
+                            ref.getMessageId();
+                        }
+                    }
+                }
+            }));
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        int iterated = 0;
+        for (MessageReference ref : list) {
+            assertEquals(1, ref.getMessageId().getProducerSequenceId() % 2);
+            iterated++;
+        }
+        assertEquals(threads * perThread / 2, list.size());
+        assertEquals(list.size(), iterated);
+        assertEquals(list.size(), list.messageSize());
+    }
+}
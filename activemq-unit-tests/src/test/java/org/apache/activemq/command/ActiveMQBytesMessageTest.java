@@ -16,6 +16,9 @@
  */
 package org.apache.activemq.command;
 
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+
 import javax.jms.JMSException;
 import javax.jms.MessageFormatException;
 import javax.jms.MessageNotReadableException;
@@ -509,4 +512,82 @@ public class ActiveMQBytesMessageTest extends TestCase {
         } catch (MessageNotReadableException e) {
         }
     }
+
+    public void testGetBodyAsByteBuffer() throws JMSException {
+        ActiveMQBytesMessage message = new ActiveMQBytesMessage();
+        byte[] body = new byte[] {1, 2, 3, 4, 5, 6, 7, 8};
+        message.writeBytes(body);
+        message.reset();
+        assertEquals(1, message.readByte());
+
+        ByteBuffer buffer = message.getBodyAsByteBuffer();
+        assertEquals(body.length, buffer.remaining());
+        assertEquals(ByteBuffer.wrap(body), buffer);
+        assertTrue(buffer.isReadOnly());
+        try {
+            buffer.put((byte) 0);
+            fail("Should have thrown exception");
+        } catch (ReadOnlyBufferException e) {
+        }
+        // the buffer does not move the stream
+        assertEquals(2, message.readByte());
+
+        // nor is it a copy of the body
+        message.getContent().getData()[message.getContent().getOffset()] = 9;
+        assertEquals(9, message.getBodyAsByteBuffer().get(0));
+    }
+
+    public void testReadByteBuffer() throws JMSException {
+        ActiveMQBytesMessage message = new ActiveMQBytesMessage();
+        message.writeInt(3);
+        message.writeBytes(new byte[] {1, 2, 3});
+        message.writeInt(2);
+        message.writeBytes(new byte[] {4, 5});
+        message.reset();
+
+        ByteBuffer first = message.readByteBuffer(message.readInt());
+        assertEquals(ByteBuffer.wrap(new byte[] {1, 2, 3}), first);
+        assertEquals(0, first.position());
+        ByteBuffer second = message.readByteBuffer(message.readInt() + 10);
+        assertEquals(ByteBuffer.wrap(new byte[] {4, 5}), second);
+        assertEquals(0, message.readByteBuffer(0).remaining());
+        assertNull(message.readByteBuffer(1));
+        assertEquals(-1, message.readBytes(new byte[1]));
+
+        message.reset();
+        assertEquals(3, message.readInt());
+        assertEquals(ByteBuffer.wrap(new byte[] {1, 2, 3}), message.readByteBuffer(3));
+    }
+
+    public void testGetBodyAsByteBufferOfCompressedBody() throws Exception {
+        ActiveMQBytesMessage message = new ActiveMQBytesMessage();
+        byte[] body = new byte[64 * 1024];
+        for (int i = 0; i < body.length; i++) {
+            body[i] = (byte) (i % 7);
+        }
+        message.writeBytes(body);
+        message.storeContent();
+        message.doCompress();
+        assertTrue(message.getContent().getLength() < body.length);
+        message.reset();
+
+        assertEquals(body.length, message.getBodyLength());
+        assertEquals(ByteBuffer.wrap(body), message.getBodyAsByteBuffer());
+        assertEquals(ByteBuffer.wrap(body, 0, 100), message.readByteBuffer(100));
+    }
+
+    public void testByteBufferOfWriteOnlyBody() throws JMSException {
+        ActiveMQBytesMessage message = new ActiveMQBytesMessage();
+        message.writeInt(1);
+        try {
+            message.getBodyAsByteBuffer();
+            fail("Should have thrown exception");
+        } catch (MessageNotReadableException e) {
+        }
+        try {
+            message.readByteBuffer(1);
+            fail("Should have thrown exception");
+        } catch (MessageNotReadableException e) {
+        }
+    }
 }
@@ -0,0 +1,86 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.filter;
+
+import java.util.Set;
+
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.command.ActiveMQTempTopic;
+
+/**
+ * Runs the {@link DestinationMapTest} cases against the cached map, whose
+ * lookups are interleaved with the changes that must evict them.
+ */
+public class ConcurrentDestinationMapTest extends DestinationMapTest {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        map = new ConcurrentDestinationMap();
+    }
+
+    @SuppressWarnings("rawtypes")
+    public void testLookupsAreCached() throws Exception {
+        map.put(d1, v1);
+        Set matches = map.get(d1);
+        assertSame(matches, map.get(d1));
+        assertSame(matches, map.unsynchronizedGet(d1));
+
+        // a change to another destination leaves the matches alone
+        map.put(d2, v2);
+        assertSame(matches, map.get(d1));
+
+        map.put(d1, v3);
+        assertNotSame(matches, map.get(d1));
+        assertMapValue("TEST.D1", v1, v3);
+
+        try {
+            map.get(d1).add(v4);
+            fail("the matches are shared");
+        } catch (UnsupportedOperationException expected) {
+        }
+    }
+
+    public void testWildcardChangesEvictPlainLookups() throws Exception {
+        put("TEST.FOO", v1);
+        assertMapValue("TEST.FOO", v1);
+        assertMapValue("TEST.*", v1);
+
+        put("TEST.>", v2);
+        assertMapValue("TEST.FOO", v1, v2);
+        assertMapValue("TEST.*", v1, v2);
+
+        put("TEST.BAR", v3);
+        assertMapValue("TEST.*", v1, v2, v3);
+
+        remove("TEST.>", v2);
+        assertMapValue("TEST.FOO", v1);
+        assertMapValue("TEST.*", v1, v3);
+
+        map.reset();
+        assertMapValue("TEST.FOO", null);
+    }
+
+    @SuppressWarnings("rawtypes")
+    public void testTemporaryDestinationsAreNotCached() throws Exception {
+        ActiveMQDestination temp = new ActiveMQTempTopic("ID:temp:1:1");
+        map.put(temp, v1);
+        Set matches = map.get(temp);
+        assertEquals(1, matches.size());
+        assertNotSame(matches, map.get(temp));
+    }
+}
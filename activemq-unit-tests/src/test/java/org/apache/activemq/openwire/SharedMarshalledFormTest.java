@@ -0,0 +1,132 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.openwire;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.apache.activemq.command.ConnectionId;
+import org.apache.activemq.command.ConsumerId;
+import org.apache.activemq.command.MessageDispatch;
+import org.apache.activemq.command.MessageId;
+import org.apache.activemq.command.ProducerId;
+import org.apache.activemq.command.SessionId;
+import org.junit.Test;
+
+public class SharedMarshalledFormTest {
+
+    private static final ActiveMQTopic TOPIC = new ActiveMQTopic("TEST.SHARED");
+    private static final ProducerId PRODUCER = new ProducerId("ID:producer-1:1:1");
+
+    @Test
+    public void testSharedFormWithCache() throws Exception {
+        doTestSharedForm(true);
+    }
+
+    @Test
+    public void testSharedFormWithoutCache() throws Exception {
+        doTestSharedForm(false);
+    }
+
+    private void doTestSharedForm(boolean cacheEnabled) throws Exception {
+        OpenWireFormat sender1 = createWireFormat(cacheEnabled);
+        OpenWireFormat sender2 = createWireFormat(cacheEnabled);
+        OpenWireFormat receiver = createWireFormat(cacheEnabled);
+
+        ActiveMQTextMessage shared = createMessage(1, "shared");
+        shared.setShareMarshalledForm(true);
+        ActiveMQTextMessage other = createMessage(2, "other");
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        sender1.marshal(createDispatch(1, shared), out);
+        Object form = shared.getSharedMarshalledForm();
+        assertNotNull(form);
+        sender1.marshal(createDispatch(2, shared), out);
+        sender1.marshal(createDispatch(3, other), out);
+        assertSame(form, shared.getSharedMarshalledForm());
+        assertNull(other.getSharedMarshalledForm());
+
+        shared.setRedeliveryCounter(2);
+        sender1.marshal(createDispatch(4, shared), out);
+        assertNotSame(form, shared.getSharedMarshalledForm());
+        out.close();
+
+        // a connection with the same settings reuses the form
+        form = shared.getSharedMarshalledForm();
+        sender2.marshal(createDispatch(5, shared), new DataOutputStream(new ByteArrayOutputStream()));
+        assertSame(form, shared.getSharedMarshalledForm());
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(buffer.toByteArray()));
+        assertDispatch(receiver.unmarshal(in), 1, "shared", 0);
+        assertDispatch(receiver.unmarshal(in), 2, "shared", 0);
+        assertDispatch(receiver.unmarshal(in), 3, "other", 0);
+        assertDispatch(receiver.unmarshal(in), 4, "shared", 2);
+        assertEquals(0, in.available());
+    }
+
+    private void assertDispatch(Object command, int consumer, String text, int redeliveryCounter) throws Exception {
+        MessageDispatch dispatch = (MessageDispatch) command;
+        assertEquals(createConsumerId(consumer), dispatch.getConsumerId());
+        assertEquals(TOPIC, dispatch.getDestination());
+        ActiveMQTextMessage message = (ActiveMQTextMessage) dispatch.getMessage();
+        assertEquals(text, message.getText());
+        assertEquals(text, message.getStringProperty("name"));
+        assertEquals(TOPIC, message.getDestination());
+        assertEquals(PRODUCER, message.getProducerId());
+        assertEquals(redeliveryCounter, message.getRedeliveryCounter());
+    }
+
+    private ActiveMQTextMessage createMessage(long sequence, String text) throws Exception {
+        ActiveMQTextMessage message = new ActiveMQTextMessage();
+        message.setMessageId(new MessageId(PRODUCER, sequence));
+        message.setProducerId(PRODUCER);
+        message.setDestination(TOPIC);
+        message.setText(text);
+        message.setStringProperty("name", text);
+        return message;
+    }
+
+    private MessageDispatch createDispatch(int consumer, ActiveMQTextMessage message) {
+        MessageDispatch dispatch = new MessageDispatch();
+        dispatch.setConsumerId(createConsumerId(consumer));
+        dispatch.setDestination(TOPIC);
+        dispatch.setMessage(message);
+        return dispatch;
+    }
+
+    private ConsumerId createConsumerId(int consumer) {
+        return new ConsumerId(new SessionId(new ConnectionId("ID:consumer-1"), 1), consumer);
+    }
+
+    private OpenWireFormat createWireFormat(boolean cacheEnabled) {
+        OpenWireFormat wireFormat = new OpenWireFormat();
+        wireFormat.setCacheEnabled(cacheEnabled);
+        wireFormat.setTightEncodingEnabled(true);
+        return wireFormat;
+    }
+}
@@ -0,0 +1,175 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.command.Message;
+import org.apache.activemq.command.MessageId;
+import org.apache.activemq.command.ProducerId;
+import org.apache.activemq.store.MessageBatchRecoveryListener;
+import org.apache.activemq.store.RecoveredMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class KahaDBStoreBatchRecoveryTest {
+
+    private static final int MESSAGE_COUNT = 25;
+
+    KahaDBStore store;
+    KahaDBStore.KahaDBMessageStore underTest;
+    ActiveMQDestination destination = new ActiveMQQueue("Test");
+    ProducerId producerId = new ProducerId("1.1.1");
+
+    @Before
+    public void initStore() throws Exception {
+        store = new KahaDBStore();
+        store.setDeleteAllMessages(true);
+        store.start();
+        underTest = store.new KahaDBMessageStore(destination);
+        underTest.start();
+        for (int i = 1; i <= MESSAGE_COUNT; i++) {
+            ActiveMQTextMessage message = new ActiveMQTextMessage();
+            message.setDestination(destination);
+            message.setMessageId(new MessageId(producerId, i));
+            message.setText("message:" + i);
+            underTest.addMessage(null, message);
+        }
+    }
+
+    @After
+    public void destroyStore() throws Exception {
+        if (store != null) {
+            store.stop();
+        }
+    }
+
+    @Test
+    public void testBatchesInStoreOrder() throws Exception {
+        BatchListener listener = new BatchListener();
+        underTest.recoverNextMessageBatch(10, listener);
+        underTest.recoverNextMessageBatch(10, listener);
+        underTest.recoverNextMessageBatch(10, listener);
+
+        assertEquals(3, listener.batches);
+        assertEquals(MESSAGE_COUNT, listener.recovered.size());
+        assertEquals(0, listener.messages);
+
+        long last = -1;
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            RecoveredMessage recovered = listener.recovered.get(i);
+            assertFalse(recovered.isUnmarshalled());
+            assertTrue(recovered.getMarshalledSize() > 0);
+
+            Message message = recovered.getMessage();
+            assertTrue(recovered.isUnmarshalled());
+            assertEquals(new MessageId(producerId, i + 1), message.getMessageId());
+            assertEquals("message:" + (i + 1), ((ActiveMQTextMessage) message).getText());
+            assertEquals(recovered.getSequenceId(), message.getMessageId().getFutureOrSequenceLong());
+            assertTrue(recovered.getSequenceId() > last);
+            last = recovered.getSequenceId();
+        }
+    }
+
+    @Test
+    public void testStopsWhenListenerIsFull() throws Exception {
+        BatchListener listener = new BatchListener();
+        listener.memoryLimit = 1;
+        underTest.recoverNextMessageBatch(10, listener);
+        assertEquals(1, listener.recovered.size());
+        int messageSize = listener.recovered.get(0).getMarshalledSize();
+        assertEquals(1, listener.batchCount);
+        assertEquals(messageSize, listener.batchSize);
+
+        // the batch stops at the memory the listener has left
+        listener.memoryLimit = messageSize * 3;
+        underTest.recoverNextMessageBatch(10, listener);
+        int batchSize = 0;
+        for (RecoveredMessage recovered : listener.recovered.subList(1, listener.recovered.size())) {
+            batchSize += recovered.getMarshalledSize();
+        }
+        assertEquals(listener.recovered.size() - 1, listener.batchCount);
+        assertEquals(batchSize, listener.batchSize);
+        assertTrue(batchSize >= listener.memoryLimit);
+        assertTrue(batchSize - listener.recovered.get(listener.recovered.size() - 1).getMarshalledSize() < listener.memoryLimit);
+
+        // and the next batch carries on after the last message read
+        int read = listener.recovered.size();
+        listener.memoryLimit = Long.MAX_VALUE;
+        underTest.recoverNextMessageBatch(100, listener);
+        assertEquals(MESSAGE_COUNT, listener.recovered.size());
+        assertEquals(new MessageId(producerId, read + 1), listener.recovered.get(read).getMessage().getMessageId());
+    }
+
+    static class BatchListener implements MessageBatchRecoveryListener {
+
+        final List<RecoveredMessage> recovered = new ArrayList<RecoveredMessage>();
+        int batches;
+        int messages;
+        long memoryLimit = Long.MAX_VALUE;
+        int batchCount;
+        long batchSize;
+
+        @Override
+        public void recoverMessages(List<RecoveredMessage> batch) throws Exception {
+            batches++;
+            recovered.addAll(batch);
+        }
+
+        @Override
+        public boolean recoverMessage(Message message) throws Exception {
+            messages++;
+            return true;
+        }
+
+        @Override
+        public boolean recoverMessageReference(MessageId ref) throws Exception {
+            return false;
+        }
+
+        @Override
+        public boolean hasSpace() {
+            return true;
+        }
+
+        @Override
+        public boolean canRecoveryNextMessage() {
+            return true;
+        }
+
+        @Override
+        public boolean canRecoverMessages(int count, long batchSize) {
+            this.batchCount = count;
+            this.batchSize = batchSize;
+            return batchSize < memoryLimit;
+        }
+
+        @Override
+        public boolean isDuplicate(MessageId ref) {
+            return false;
+        }
+    }
+}